@@ -0,0 +1,107 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.brightcove.commons.xml.XalanUtils;
+
+/**
+ * <p>
+ *    Building one re-encode publisher-upload-manifest of titles entries,
+ *    ready to upload, the way VideoCloudReEncodeFromExistingSourceAdapter
+ *    used to (a DOM built with XalanUtils, pretty-printed with TrAX and
+ *    written to a temp file) against the way it does now (streamed with
+ *    StAX by PublisherManifestWriter into a buffer reused from manifest to
+ *    manifest).  Run with the GC profiler (as "ant benchmark" does) for the
+ *    allocation per manifest alongside the time.
+ * </p>
+ *
+ * <p>
+ *    Lives in the actors package, as PublisherManifestWriter is package
+ *    private.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+	private static final String PUBLISHER_ID = "123456789";
+	private static final String PREPARER     = "Benchmark";
+	private static final String NOTIFY_EMAIL = "benchmark@example.com";
+
+	@Param({"1", "100", "1000"})
+	public int titles;
+
+	private String[]                refIds;
+	private PublisherManifestWriter manifestWriter;
+
+	@Setup
+	public void setup(){
+		refIds = new String[titles];
+		for(int idx=0; idx<titles; idx++){
+			refIds[idx] = "reference-id-" + idx;
+		}
+		manifestWriter = new PublisherManifestWriter();
+	}
+
+	@Benchmark
+	public long domTrAXTempFile() throws Exception {
+		Document doc  = XalanUtils.createDocument("publisher-upload-manifest");
+		Element  root = doc.getDocumentElement();
+		root.setAttribute("publisher-id", PUBLISHER_ID);
+		root.setAttribute("preparer", PREPARER);
+		root.setAttribute("report-success", "TRUE");
+
+		Element notifyElem = XalanUtils.createSimpleElement(doc, "notify", null, root);
+		notifyElem.setAttribute("email", NOTIFY_EMAIL);
+
+		for(String refId : refIds){
+			Element reEncodeElem = XalanUtils.createSimpleElement(doc, "reencode-from-existing-source", null, root);
+			reEncodeElem.setAttribute("title-refid", refId);
+			reEncodeElem.setAttribute("encode-to", "MP4");
+			reEncodeElem.setAttribute("encode-multiple", "TRUE");
+			reEncodeElem.setAttribute("overwrite-images", "FALSE");
+			reEncodeElem.setAttribute("preserve-source-as-rendition", "FALSE");
+		}
+
+		File batchFile = File.createTempFile("ManifestBenchmark-", ".xml");
+		try{
+			FileUtils.writeStringToFile(batchFile, XalanUtils.prettyPrintWithTrAX(doc), "UTF-8");
+			return batchFile.length();
+		}
+		finally{
+			batchFile.delete();
+		}
+	}
+
+	@Benchmark
+	public int staxBuffer() throws Exception {
+		manifestWriter.start(PUBLISHER_ID, PREPARER, NOTIFY_EMAIL);
+		for(String refId : refIds){
+			manifestWriter.addReEncode(refId, false, false);
+		}
+		manifestWriter.finish();
+		return manifestWriter.size();
+	}
+}
@@ -0,0 +1,54 @@
+package com.brightcove.opensource.workflowengine.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Terminal actor for benchmarks - counts the records it is handed and
+ *    passes each to a JMH Blackhole, so nothing is optimized away.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class CountingActor extends Actor {
+	private Blackhole blackhole;
+	private long      count;
+
+	/**
+	 * <p>
+	 *    Default constructor
+	 * </p>
+	 *
+	 * @param workflow Workflow this actor is part of
+	 * @param blackhole Blackhole to hand records to
+	 */
+	public CountingActor(Workflow workflow, Blackhole blackhole){
+		super(workflow);
+		this.blackhole = blackhole;
+		this.count     = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecord(com.brightcove.opensource.workflowengine.record.Record)
+	 */
+	public void handleRecord(Record record){
+		count++;
+		blackhole.consume(record);
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of records handled so far
+	 * </p>
+	 *
+	 * @return Records handled
+	 */
+	public long getCount(){
+		return count;
+	}
+}
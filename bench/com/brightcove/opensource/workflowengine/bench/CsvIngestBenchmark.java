@@ -0,0 +1,108 @@
+package com.brightcove.opensource.workflowengine.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.actors.CSVInputAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Reading a whole generated CSV file through CSVInputAdapter into a
+ *    CountingActor, with each of its readers, for files from 1 MB to 1 GB.
+ * </p>
+ *
+ * <p>
+ *    The files are generated once into java.io.tmpdir (or the directory
+ *    given by the benchmark.dir system property) and kept there for later
+ *    runs, since writing a 1 GB file takes longer than reading it.  Each
+ *    row has an id, a name and a quoted description containing the
+ *    delimiter.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvIngestBenchmark {
+	@Param({"1", "64", "1024"})
+	public int sizeMb;
+
+	@Param({"default", "mmap", "parallel"})
+	public String reader;
+
+	private File inputFile;
+
+	@Setup
+	public void setup() throws IOException {
+		File dir  = new File(System.getProperty("benchmark.dir", System.getProperty("java.io.tmpdir")));
+		inputFile = new File(dir, "workflow-benchmark-" + sizeMb + "mb.csv");
+
+		long size = sizeMb * 1024l * 1024l;
+		if(inputFile.exists() && (inputFile.length() >= size)){
+			return;
+		}
+
+		Random random = new Random(sizeMb);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inputFile), "UTF-8"), 1 << 16);
+		try {
+			writer.write("id,name,description\n");
+			long written = 0;
+			for(long row=0; written<size; row++){
+				String line = row + ",name " + row + ",\"description, " + random.nextInt() + "\"\n";
+				writer.write(line);
+				written += line.length();
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@Benchmark
+	public long ingest(Blackhole blackhole){
+		Workflow        workflow = new Workflow();
+		CSVInputAdapter input    = new CSVInputAdapter(workflow);
+		CountingActor   sink     = new CountingActor(workflow, blackhole);
+
+		input.setName("input");
+		input.addProperty(new Property<String>("input-file", inputFile.getPath()));
+		input.addProperty(new Property<String>("has-header-row", "true"));
+		input.addProperty(new Property<String>("reader", reader));
+		input.addConsumer(sink);
+
+		sink.setName("sink");
+		sink.addProvider(input);
+
+		workflow.addActor(input);
+		workflow.addActor(sink);
+		workflow.run();
+
+		return sink.getCount();
+	}
+}
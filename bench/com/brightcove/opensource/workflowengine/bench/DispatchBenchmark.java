@@ -0,0 +1,69 @@
+package com.brightcove.opensource.workflowengine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Passing one record down a chain of depth pass-through actors (plain
+ *    Actor, which hands each record on to its consumers) into a
+ *    CountingActor - the per-record cost of Actor.handleRecord() dispatch,
+ *    failure isolation and metrics, per actor in the chain.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+	@Param({"1", "4", "16"})
+	public int depth;
+
+	private Actor  head;
+	private Record record;
+
+	@Setup
+	public void setup(Blackhole blackhole){
+		Workflow workflow = new Workflow();
+		Actor    consumer = new CountingActor(workflow, blackhole);
+		for(int idx=0; idx<depth; idx++){
+			Actor actor = new Actor(workflow);
+			actor.setName("pass-" + idx);
+			actor.addConsumer(consumer);
+			consumer.addProvider(actor);
+			consumer = actor;
+		}
+		head = consumer;
+
+		record = new Record();
+		record.addProperty(new Property<String>("id", "12345"));
+		record.addProperty(new Property<String>("name", "benchmark"));
+	}
+
+	@Benchmark
+	public void dispatch(){
+		head.handleRecord(record);
+	}
+}
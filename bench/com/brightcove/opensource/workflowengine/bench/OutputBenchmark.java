@@ -0,0 +1,96 @@
+package com.brightcove.opensource.workflowengine.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.actors.OutputAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Writing records through OutputAdapter in each of its formats, with
+ *    and without async-write.  Each iteration writes to a fresh temporary
+ *    file, which is closed and deleted at the end of the iteration
+ *    (outside the measurement - with async-write, that leaves out the
+ *    time the background thread takes to catch up).
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputBenchmark {
+	private static final int RECORDS = 1000;
+
+	@Param({"text", "csv", "jsonl"})
+	public String format;
+
+	@Param({"false", "true"})
+	public String asyncWrite;
+
+	private Record[]      records;
+	private File          outputFile;
+	private OutputAdapter output;
+
+	@Setup(Level.Trial)
+	public void setupRecords(){
+		records = new Record[RECORDS];
+		for(int idx=0; idx<RECORDS; idx++){
+			records[idx] = new Record();
+			records[idx].addProperty(new Property<String>("id", "" + idx));
+			records[idx].addProperty(new Property<String>("name", "name " + idx));
+			records[idx].addProperty(new Property<String>("description", "a \"quoted\", comma separated description " + idx));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void openOutput() throws IOException {
+		outputFile = File.createTempFile("workflow-benchmark-", "." + format);
+
+		Workflow workflow = new Workflow();
+		output = new OutputAdapter(workflow);
+		output.setName("output");
+		output.addProperty(new Property<String>("output-file", outputFile.getPath()));
+		output.addProperty(new Property<String>("format", format));
+		output.addProperty(new Property<String>("async-write", asyncWrite));
+		workflow.addActor(output);
+		output.run();
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeOutput(){
+		output.finalize();
+		outputFile.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public void write(){
+		for(Record record : records){
+			output.handleRecord(record);
+		}
+	}
+}
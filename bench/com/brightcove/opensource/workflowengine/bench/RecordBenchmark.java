@@ -0,0 +1,96 @@
+package com.brightcove.opensource.workflowengine.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+import com.brightcove.opensource.workflowengine.record.RecordSchema;
+import com.brightcove.opensource.workflowengine.record.SchemaRecord;
+
+/**
+ * <p>
+ *    Building records and looking properties up in them, for both the
+ *    generic Record and the SchemaRecord the CSV reader produces, at
+ *    several record widths.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordBenchmark {
+	@Param({"4", "16", "64"})
+	public int width;
+
+	private String[]     names;
+	private String[]     values;
+	private RecordSchema schema;
+	private Record       record;
+	private SchemaRecord schemaRecord;
+	private String       lastName;
+
+	@Setup
+	public void setup(){
+		names  = new String[width];
+		values = new String[width];
+		List<String> nameList = new ArrayList<String>();
+		for(int idx=0; idx<width; idx++){
+			names[idx]  = "column-" + idx;
+			values[idx] = "value " + idx;
+			nameList.add(names[idx]);
+		}
+		lastName = names[width - 1];
+
+		schema       = new RecordSchema(nameList);
+		record       = buildRecord();
+		schemaRecord = buildSchemaRecord();
+	}
+
+	@Benchmark
+	public Record buildRecord(){
+		Record built = new Record();
+		for(int idx=0; idx<width; idx++){
+			built.addProperty(new Property<String>(names[idx], values[idx]));
+		}
+		return built;
+	}
+
+	@Benchmark
+	public SchemaRecord buildSchemaRecord(){
+		return new SchemaRecord(schema, values.clone());
+	}
+
+	@Benchmark
+	public Object lookupRecord(){
+		return record.getFirstPropertyValue(lastName);
+	}
+
+	@Benchmark
+	public Object lookupSchemaRecord(){
+		return schemaRecord.getFirstPropertyValue(lastName);
+	}
+
+	@Benchmark
+	public List<Property<?>> allPropertiesSchemaRecord(){
+		return buildSchemaRecord().getAllProperties();
+	}
+}
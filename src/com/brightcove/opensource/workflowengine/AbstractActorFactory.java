@@ -0,0 +1,58 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *    Base for ActorFactory implementations - subclasses pass the alias,
+ *    actor class and properties to the constructor, and implement
+ *    createActor().
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public abstract class AbstractActorFactory implements ActorFactory {
+	private String              alias;
+	private String              actorClassName;
+	private List<ActorProperty> properties;
+
+	/**
+	 * <p>
+	 *    Creates a factory
+	 * </p>
+	 *
+	 * @param alias Short name of the actor class
+	 * @param actorClass Class of actor created
+	 * @param properties Configuration properties actors of the class honor
+	 */
+	protected AbstractActorFactory(String alias, Class<? extends Actor> actorClass, ActorProperty... properties){
+		this.alias          = alias;
+		this.actorClassName = actorClass.getName();
+		this.properties     = Collections.unmodifiableList(new ArrayList<ActorProperty>(Arrays.asList(properties)));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorFactory#getAlias()
+	 */
+	public String getAlias(){
+		return alias;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorFactory#getActorClassName()
+	 */
+	public String getActorClassName(){
+		return actorClassName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorFactory#getProperties()
+	 */
+	public List<ActorProperty> getProperties(){
+		return properties;
+	}
+}
@@ -1,7 +1,11 @@
 package com.brightcove.opensource.workflowengine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.brightcove.opensource.workflowengine.record.Property;
 import com.brightcove.opensource.workflowengine.record.Record;
@@ -35,15 +39,72 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *    tasks (e.g. reading a CSV file)
  * </p>
  * 
+ * <p>
+ *    Records are normally passed on to consumers one at a time.  If the
+ *    batch-size property is set (to more than 1), records passed on by the
+ *    actor are held back and handed to its consumers as a batch once
+ *    batch-size records have been collected, or once a record arrives more
+ *    than batch-timeout milliseconds after the oldest record of the batch.
+ *    Whatever is left over is passed on when the actor's providers are
+ *    exhausted (see flushRecords()).  Consumers that implement BatchConsumer
+ *    receive each batch in a single handleRecords() call.
+ * </p>
+ * 
+ * <p>
+ *    Actors take part in workflow checkpoints (see the checkpoint-file
+ *    workflow property).  Source actors call checkpointIfDue() as they
+ *    pass records on, and put their position into the state handed to
+ *    checkpoint(); on a resumed run, getResumeState() gives it back.
+ *    Actors that hold on to records (e.g. buffered output, or calls still
+ *    in flight) finish with them in checkpoint(), which acknowledges that
+ *    everything they were handed before the checkpoint is done with.
+ * </p>
+ * 
+ * <p>
+ *    A record an actor can't deal with is reported with failRecord(),
+ *    which sends it to the workflow's dead-letter-actor (or logs it) and
+ *    counts it against the workflow's max-failures and max-failure-rate,
+ *    rather than stopping the workflow with die().  A RuntimeException
+ *    thrown by handleRecord() is reported the same way, and the records
+ *    after it keep flowing.  die() is left for problems no record can get
+ *    past - bad configuration, unreadable input, etc.
+ * </p>
+ * 
+ * <p>
+ *    Every actor keeps ActorMetrics - records in and out, failures, and
+ *    the time spent in handleRecord() and run() - without subclasses
+ *    doing anything: records are counted and timed as providers pass them
+ *    in and as the actor passes them on.
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
-public class Actor implements Provider, Consumer {
-	private List<Provider>         providers;
-	private List<Consumer>         consumers;
-	private Boolean                started;
-	private List<Property<String>> properties;
-	private Workflow               workflow;
+public class Actor implements Provider, BatchConsumer {
+	/**
+	 * Configuration properties every actor honors (see ActorFactory)
+	 */
+	public static final List<ActorProperty> PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+		new ActorProperty("batch-size", Integer.class),
+		new ActorProperty("batch-timeout", Long.class),
+		new ActorProperty("log-sample-rate", Long.class)
+	));
+	
+	private List<Provider>                providers;
+	private List<Consumer>                consumers;
+	private Boolean                       started;
+	private Boolean                       entered;
+	private Map<String, Property<String>> properties;
+	private Workflow                      workflow;
+	private String                        name;
+	private Integer                       batchSize;
+	private Long                          batchTimeout;
+	private List<Record>                  pendingBatch;
+	private Long                          pendingBatchStarted;
+	private Long                          logSampleRate;
+	private long                          logSampleCount;
+	private long                          recordsSinceCheckpoint;
+	private ActorMetrics                  metrics;
 	
 	/**
 	 * 
@@ -55,14 +116,68 @@ public class Actor implements Provider, Consumer {
 	 * 
 	 */
 	public Actor(Workflow workflow){
-		providers    = new ArrayList<Provider>();
-		consumers    = new ArrayList<Consumer>();
-		properties   = new ArrayList<Property<String>>();
-		started      = false;
+		providers      = new ArrayList<Provider>();
+		consumers      = new ArrayList<Consumer>();
+		properties     = new LinkedHashMap<String, Property<String>>();
+		started        = false;
+		entered        = false;
+		name           = null;
+		batchSize      = null;
+		batchTimeout   = null;
+		pendingBatch   = new ArrayList<Record>();
+		logSampleRate  = null;
+		logSampleCount = 0;
+		
+		recordsSinceCheckpoint = 0;
+		metrics                = new ActorMetrics();
 		
 		this.workflow = workflow;
 	}
 	
+	/**
+	 * <p>
+	 *    Returns the name this actor was given in the workflow configuration
+	 * </p>
+	 * 
+	 * @return Name of this actor, or null if it was never named
+	 */
+	public String getName(){
+		return name;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the workflow this actor is part of
+	 * </p>
+	 * 
+	 * @return Workflow this actor is part of
+	 */
+	public Workflow getWorkflow(){
+		return workflow;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the counters and timings kept for this actor
+	 * </p>
+	 * 
+	 * @return This actor's metrics
+	 */
+	public ActorMetrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * <p>
+	 *    Sets the name of this actor
+	 * </p>
+	 * 
+	 * @param name Name of this actor
+	 */
+	public void setName(String name){
+		this.name = name;
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.brightcove.opensource.workflowengine.Provider#run()
 	 */
@@ -71,26 +186,421 @@ public class Actor implements Provider, Consumer {
 			started = true;
 			
 			for(Provider provider : providers){
-				provider.run();
+				if(provider instanceof Actor){
+					((Actor)provider).runTimed();
+				}
+				else{
+					provider.run();
+				}
 			}
 		}
 	}
 	
+	/**
+	 * <p>
+	 *    Calls run(), adding the time it took - less the time spent in
+	 *    other actors - to this actor's metrics
+	 * </p>
+	 */
+	void runTimed(){
+		ActorMetrics.Clock clock   = ActorMetrics.threadClock();
+		long               outside = clock.elsewhere;
+		long               start   = System.nanoTime();
+		entered = true;
+		try{
+			run();
+		}
+		finally{
+			metrics.addRunTime(clock.finish(outside, System.nanoTime() - start, false));
+		}
+	}
+	
 	public void finalize(){
 		
 	}
 	
+	/**
+	 * <p>
+	 *    Called in place of finalize() when the workflow has failed part way
+	 *    through and carries on in the same JVM (see
+	 *    Workflow.setExitOnDie()), so actors can let go of their files,
+	 *    threads, etc. without recording the run as complete (e.g. saving
+	 *    how far it got).  Calls finalize() by default.
+	 * </p>
+	 */
+	public void abort(){
+		finalize();
+	}
+	
+	/**
+	 * <p>
+	 *    Called while the workflow takes a checkpoint, once every record
+	 *    passed to this actor before the checkpoint has been handled (and on
+	 *    the thread that handles them).  Actors that hold on to records
+	 *    should finish with them - write them out, wait for calls in flight,
+	 *    etc. - before returning, and actors that read records from
+	 *    somewhere should put what they need to carry on from this point
+	 *    into the state given.  Does nothing by default.
+	 * </p>
+	 * 
+	 * @param state Map to put this actor's checkpoint state into
+	 */
+	public void checkpoint(Map<String, String> state){
+		
+	}
+	
+	/**
+	 * <p>
+	 *    Counts records a source actor has passed on, and has the workflow
+	 *    take a checkpoint once checkpoint-interval records have been passed
+	 *    on since the last one.  Must only be called where the actor's
+	 *    position covers exactly the records passed on so far.
+	 * </p>
+	 * 
+	 * @param records Number of records passed on since the last call
+	 */
+	protected void checkpointIfDue(Integer records){
+		if(! workflow.isCheckpointing()){
+			return;
+		}
+		
+		recordsSinceCheckpoint += records;
+		if(recordsSinceCheckpoint >= workflow.getCheckpointInterval()){
+			recordsSinceCheckpoint = 0;
+			workflow.checkpoint();
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the state this actor put into the checkpoint being resumed
+	 *    from (see checkpoint())
+	 * </p>
+	 * 
+	 * @return Checkpoint state, or null if the workflow isn't resuming or the actor saved none
+	 */
+	protected Map<String, String> getResumeState(){
+		return workflow.getResumeState(this);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.brightcove.opensource.workflowengine.Consumer#handleRecord(com.brightcove.opensource.workflowengine.Record)
 	 */
 	public void handleRecord(Record record){
 		// ToDo - what to do when records come in before we've "started" - is that possible?
 		
+		if(consumers.isEmpty()){
+			return;
+		}
+		metrics.countOut(1);
+		
+		if(getBatchSize() > 1){
+			addToBatch(record);
+			return;
+		}
+		
+		for(Consumer consumer : consumers){
+			deliver(consumer, record);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.BatchConsumer#handleRecords(java.util.List)
+	 */
+	public void handleRecords(List<Record> records){
+		for(Record record : records){
+			handleIsolated(record);
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Reports a record this actor couldn't deal with.  The workflow
+	 *    passes it to its dead-letter-actor, along with the name of this
+	 *    actor and the reason given, or logs it if there is none, and stops
+	 *    once this actor has failed more records than max-failures or
+	 *    max-failure-rate allow.  May be called from any thread.
+	 * </p>
+	 * 
+	 * @param record Record that failed
+	 * @param reason Why it failed
+	 */
+	public void failRecord(Record record, String reason){
+		metrics.countError();
+		workflow.recordFailed(this, record, reason, metrics.getErrors(), metrics.getRecordsIn());
+	}
+	
+	/**
+	 * <p>
+	 *    Hands a record passed on by a provider to handleRecord(), counting
+	 *    and timing it, and reporting it with failRecord() if handleRecord()
+	 *    throws.
+	 * </p>
+	 * 
+	 * @param record Record to handle
+	 */
+	void receiveRecord(Record record){
+		metrics.countIn(1);
+		
+		ActorMetrics.Clock clock   = ActorMetrics.threadClock();
+		Boolean            timed   = clock.begin(metrics.getSampleRate());
+		long               outside = clock.elsewhere;
+		long               start   = 0;
+		if(timed){
+			start = System.nanoTime();
+		}
+		
+		try{
+			handleIsolated(record);
+		}
+		finally{
+			if(timed){
+				metrics.addHandleTime(1, clock.finish(outside, System.nanoTime() - start, true), clock.weight);
+			}
+			else{
+				clock.end();
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Hands a batch of records passed on by a provider to
+	 *    handleRecords(), counting and timing them.  If handleRecords()
+	 *    throws, there's no telling which of the records were dealt with,
+	 *    so the whole batch is reported with failRecord().
+	 * </p>
+	 * 
+	 * @param records Records to handle
+	 */
+	void receiveRecords(List<Record> records){
+		metrics.countIn(records.size());
+		
+		ActorMetrics.Clock clock   = ActorMetrics.threadClock();
+		Boolean            timed   = clock.begin(metrics.getSampleRate());
+		long               outside = clock.elsewhere;
+		long               start   = 0;
+		if(timed){
+			start = System.nanoTime();
+		}
+		
+		try{
+			handleRecords(records);
+		}
+		catch(WorkflowException we){
+			// die() was called - not the fault of these records
+			throw we;
+		}
+		catch(RuntimeException re){
+			for(Record record : records){
+				failRecord(record, "" + re);
+			}
+		}
+		finally{
+			if(timed){
+				metrics.addHandleTime(records.size(), clock.finish(outside, System.nanoTime() - start, true), clock.weight);
+			}
+			else{
+				clock.end();
+			}
+		}
+	}
+	
+	private void handleIsolated(Record record){
+		try{
+			handleRecord(record);
+		}
+		catch(WorkflowException we){
+			throw we;
+		}
+		catch(RuntimeException re){
+			failRecord(record, "" + re);
+		}
+	}
+	
+	private void deliver(Consumer consumer, Record record){
+		if(consumer instanceof Actor){
+			((Actor)consumer).receiveRecord(record);
+		}
+		else{
+			passOutside(consumer, Collections.singletonList(record));
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Passes records to a consumer that isn't an actor (e.g. the worker
+	 *    queueing records for a pipelined actor), timing the call - mostly
+	 *    spent waiting for room in the queue - as time spent outside this
+	 *    actor when the records are being sampled.
+	 * </p>
+	 * 
+	 * @param consumer Consumer to pass the records to
+	 * @param records Records to pass, handed over as a batch if the consumer takes batches
+	 */
+	void passOutside(Consumer consumer, List<Record> records){
+		ActorMetrics.Clock clock   = ActorMetrics.threadClock();
+		Boolean            timed   = clock.begin(metrics.getSampleRate());
+		long               outside = clock.elsewhere;
+		long               start   = 0;
+		if(timed){
+			start = System.nanoTime();
+		}
+		
+		try{
+			if(consumer instanceof BatchConsumer){
+				((BatchConsumer)consumer).handleRecords(records);
+			}
+			else{
+				for(Record record : records){
+					consumer.handleRecord(record);
+				}
+			}
+		}
+		finally{
+			if(timed){
+				clock.finish(outside, System.nanoTime() - start, true);
+			}
+			else{
+				clock.end();
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Passes a batch of records on to this actor's consumers.  Meant for
+	 *    subclasses that override handleRecords() and want to pass the
+	 *    whole batch on, the way super.handleRecord() passes on one record.
+	 * </p>
+	 * 
+	 * @param records Records to pass on
+	 */
+	protected void forwardRecords(List<Record> records){
+		if(consumers.isEmpty()){
+			return;
+		}
+		metrics.countOut(records.size());
+		
+		if(getBatchSize() > 1){
+			for(Record record : records){
+				addToBatch(record);
+			}
+			return;
+		}
+		
+		deliverBatch(records);
+	}
+	
+	/**
+	 * <p>
+	 *    Passes any records held back for batching on to consumers.  Called
+	 *    by the workflow once this actor's providers are exhausted, before
+	 *    finalize().
+	 * </p>
+	 */
+	public void flushRecords(){
+		if(pendingBatch.isEmpty()){
+			return;
+		}
+		
+		// Consumers may queue the batch, so it can't be reused
+		List<Record> batch = pendingBatch;
+		pendingBatch = new ArrayList<Record>();
+		
+		deliverBatch(batch);
+	}
+	
+	/**
+	 * <p>
+	 *    Passes on the held back records if the oldest of them has waited
+	 *    longer than batch-timeout.
+	 * </p>
+	 */
+	void flushExpiredRecords(){
+		if(pendingBatch.isEmpty() || (getBatchTimeout() <= 0)){
+			return;
+		}
+		if((System.currentTimeMillis() - pendingBatchStarted) >= batchTimeout){
+			flushRecords();
+		}
+	}
+	
+	private void addToBatch(Record record){
+		if(pendingBatch.isEmpty()){
+			pendingBatchStarted = System.currentTimeMillis();
+		}
+		pendingBatch.add(record);
+		
+		if(pendingBatch.size() >= batchSize){
+			flushRecords();
+		}
+		else{
+			flushExpiredRecords();
+		}
+	}
+	
+	private void deliverBatch(List<Record> records){
 		for(Consumer consumer : consumers){
-			consumer.handleRecord(record);
+			if(consumer instanceof Actor){
+				((Actor)consumer).receiveRecords(records);
+			}
+			else{
+				passOutside(consumer, records);
+			}
 		}
 	}
 	
+	/**
+	 * <p>
+	 *    Returns the number of records batched together before they are
+	 *    passed on to consumers (the batch-size property, 1 if omitted).
+	 * </p>
+	 * 
+	 * @return Batch size
+	 */
+	Integer getBatchSize(){
+		if(batchSize == null){
+			batchSize = 1;
+			
+			String batchSizeProp = getFirstPropertyValue("batch-size");
+			if(batchSizeProp != null){
+				try{
+					batchSize = Integer.parseInt(batchSizeProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse batch-size '" + batchSizeProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+			}
+		}
+		return batchSize;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the longest time, in milliseconds, a record is held back for
+	 *    batching (the batch-timeout property, 0 - no limit - if omitted).
+	 * </p>
+	 * 
+	 * @return Batch timeout in milliseconds
+	 */
+	Long getBatchTimeout(){
+		if(batchTimeout == null){
+			batchTimeout = 0l;
+			
+			String batchTimeoutProp = getFirstPropertyValue("batch-timeout");
+			if(batchTimeoutProp != null){
+				try{
+					batchTimeout = Long.parseLong(batchTimeoutProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse batch-timeout '" + batchTimeoutProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+			}
+		}
+		return batchTimeout;
+	}
+	
 	/**
 	 * <p>
 	 *    Returns true if this actor has any consumers registered with it.
@@ -126,6 +636,29 @@ public class Actor implements Provider, Consumer {
 		this.consumers.add(consumer);
 	}
 	
+	/**
+	 * <p>
+	 *    Returns the live list of consumers registered with this actor.  Used
+	 *    by the workflow to rewire the actor graph for pipelined execution.
+	 * </p>
+	 * 
+	 * @return Consumers registered with this actor
+	 */
+	List<Consumer> getConsumers(){
+		return consumers;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the live list of providers registered with this actor
+	 * </p>
+	 * 
+	 * @return Providers registered with this actor
+	 */
+	List<Provider> getProviders(){
+		return providers;
+	}
+	
 	/**
 	 * <p>
 	 *    Adds a configuration parameter
@@ -134,7 +667,10 @@ public class Actor implements Provider, Consumer {
 	 * @param property Configuration key=value pair
 	 */
 	public void addProperty(Property<String> property){
-		this.properties.add(property);
+		// Only the first property of each name is ever looked up
+		if((property != null) && (property.getName() != null) && (! properties.containsKey(property.getName()))){
+			properties.put(property.getName(), property);
+		}
 	}
 	
 	/**
@@ -146,12 +682,7 @@ public class Actor implements Provider, Consumer {
 	 * @return First property found, or null if none is found
 	 */
 	public Property<String> getFirstProperty(String name){
-		for(Property<String> property : properties){
-			if((property != null) && (property.getName() != null) && property.getName().equals(name)){
-				return property;
-			}
-		}
-		return null;
+		return properties.get(name);
 	}
 	
 	/**
@@ -186,6 +717,20 @@ public class Actor implements Provider, Consumer {
 		return started;
 	}
 	
+	/**
+	 * <p>
+	 *    Returns true once the workflow (or a consumer) has called run(),
+	 *    even if run() hasn't got as far as hasStarted() being true - as
+	 *    with input adapters, which read everything before calling
+	 *    super.run()
+	 * </p>
+	 * 
+	 * @return True if run() has been entered
+	 */
+	Boolean hasEntered(){
+		return entered;
+	}
+	
 	/**
 	 * <p>
 	 *    Records a message via the workflow's logging mechanisms
@@ -197,6 +742,60 @@ public class Actor implements Provider, Consumer {
 		workflow.log(message);
 	}
 	
+	/**
+	 * <p>
+	 *    Records a message via the workflow's logging mechanisms, only
+	 *    building it if it will actually be logged
+	 * </p>
+	 * 
+	 * @param message Message to log
+	 */
+	public void log(LogMessage message){
+		workflow.log(message);
+	}
+	
+	/**
+	 * <p>
+	 *    Returns true if the workflow is logging informational messages
+	 * </p>
+	 * 
+	 * @return True if log() messages are logged
+	 */
+	public Boolean isLogEnabled(){
+		return workflow.isLogEnabled();
+	}
+	
+	/**
+	 * <p>
+	 *    Counts a record towards the actor's log sampling, and returns true
+	 *    if it is one that should be logged.  With the log-sample-rate
+	 *    property set to N, one record in every N is logged (the first, the
+	 *    N+1th, ...); otherwise every record is.
+	 * </p>
+	 * 
+	 * @return True if the record should be logged
+	 */
+	public Boolean sampleRecordForLog(){
+		if(logSampleRate == null){
+			logSampleRate = 1l;
+			
+			String logSampleRateProp = getFirstPropertyValue("log-sample-rate");
+			if(logSampleRateProp != null){
+				try{
+					logSampleRate = Long.parseLong(logSampleRateProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse log-sample-rate '" + logSampleRateProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+				if(logSampleRate < 1){
+					die("log-sample-rate must be at least 1 (was " + logSampleRate + ").");
+				}
+			}
+		}
+		
+		return (logSampleCount++ % logSampleRate) == 0;
+	}
+	
 	/**
 	 * <p>
 	 *    Records an error message viw the workflow's logging mechanism
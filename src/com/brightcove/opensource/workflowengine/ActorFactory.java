@@ -0,0 +1,65 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.List;
+
+/**
+ * <p>
+ *    Creates actors of one class for workflows loaded from XML, without
+ *    reflection.  Factories are found with java.util.ServiceLoader - list
+ *    the factory classes in
+ *    META-INF/services/com.brightcove.opensource.workflowengine.ActorFactory
+ *    - and an actor element's class attribute may give either the actor's
+ *    class name or the factory's alias (e.g. "csv-input").
+ * </p>
+ *
+ * <p>
+ *    The properties a factory lists are the only ones an actor of its
+ *    class may be configured with (besides the batch-size, batch-timeout
+ *    and log-sample-rate every actor honors, see Actor.PROPERTIES), and
+ *    their values are checked as the workflow is loaded.  Actor classes
+ *    without a factory are still created by reflection, and their
+ *    configuration isn't checked.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface ActorFactory {
+	/**
+	 * <p>
+	 *    Returns the short name actor elements may use in place of the
+	 *    actor's class name
+	 * </p>
+	 *
+	 * @return Alias of the actor class
+	 */
+	public String getAlias();
+
+	/**
+	 * <p>
+	 *    Returns the fully qualified name of the class of actor created
+	 * </p>
+	 *
+	 * @return Actor class name
+	 */
+	public String getActorClassName();
+
+	/**
+	 * <p>
+	 *    Returns the configuration properties actors of this class honor
+	 * </p>
+	 *
+	 * @return Properties honored
+	 */
+	public List<ActorProperty> getProperties();
+
+	/**
+	 * <p>
+	 *    Creates an actor
+	 * </p>
+	 *
+	 * @param workflow Workflow the actor will be part of
+	 * @return New actor
+	 */
+	public Actor createActor(Workflow workflow);
+}
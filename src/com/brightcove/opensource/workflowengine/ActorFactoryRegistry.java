@@ -0,0 +1,89 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * <p>
+ *    Looks up ActorFactory implementations by actor class name or alias.
+ *    The default registry holds every factory ServiceLoader finds on the
+ *    class path, and is what workflows loaded from XML use.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class ActorFactoryRegistry {
+	private static ActorFactoryRegistry defaultRegistry = null;
+
+	private List<ActorFactory>        factories;
+	private Map<String, ActorFactory> byName;
+
+	/**
+	 * <p>
+	 *    Creates an empty registry
+	 * </p>
+	 */
+	public ActorFactoryRegistry(){
+		factories = new ArrayList<ActorFactory>();
+		byName    = new HashMap<String, ActorFactory>();
+	}
+
+	/**
+	 * <p>
+	 *    Returns the registry of the factories found on the class path,
+	 *    loading them the first time it's called
+	 * </p>
+	 *
+	 * @return Default registry
+	 */
+	public static synchronized ActorFactoryRegistry getDefault(){
+		if(defaultRegistry == null){
+			defaultRegistry = new ActorFactoryRegistry();
+			for(ActorFactory factory : ServiceLoader.load(ActorFactory.class)){
+				defaultRegistry.register(factory);
+			}
+		}
+		return defaultRegistry;
+	}
+
+	/**
+	 * <p>
+	 *    Adds a factory, replacing any registered earlier with the same
+	 *    alias or actor class
+	 * </p>
+	 *
+	 * @param factory Factory to add
+	 */
+	public synchronized void register(ActorFactory factory){
+		factories.add(factory);
+		byName.put(factory.getAlias(), factory);
+		byName.put(factory.getActorClassName(), factory);
+	}
+
+	/**
+	 * <p>
+	 *    Finds the factory for an actor class
+	 * </p>
+	 *
+	 * @param name Actor class name or alias
+	 * @return Factory, or null if there is none
+	 */
+	public synchronized ActorFactory getFactory(String name){
+		return byName.get(name);
+	}
+
+	/**
+	 * <p>
+	 *    Returns every factory registered
+	 * </p>
+	 *
+	 * @return Factories, in the order they were registered
+	 */
+	public synchronized List<ActorFactory> getFactories(){
+		return new ArrayList<ActorFactory>(factories);
+	}
+}
@@ -0,0 +1,388 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ *    Counts the records one actor sees and the time it spends on them.
+ *    Every actor has one (see Actor.getMetrics()), kept up to date by the
+ *    actor as records are passed to it and by the workflow as it runs the
+ *    actor.
+ * </p>
+ *
+ * <p>
+ *    Time is measured "self time": whatever an actor spends in other
+ *    actors - its consumers handling records it passes on, its providers
+ *    running, or waiting for room in a pipelined consumer's queue - is
+ *    taken off its own.  Each thread keeps a running total of the time
+ *    spent in measured calls on it (see Clock), so a caller can tell how
+ *    much of its own call went elsewhere.
+ * </p>
+ *
+ * <p>
+ *    Reading the clock isn't free, so records are counted exactly but only
+ *    timed one in every sample-rate (the metrics-sample-rate workflow
+ *    property, 16 if omitted).  Each thread picks which records to time
+ *    where they enter it - as a source passes them on, or as a pipelined
+ *    actor takes them off its queue - and a record picked is timed all
+ *    the way through the actors it reaches on that thread.  Times are
+ *    scaled up by the sample rate, so totals are estimates; with a sample
+ *    rate of 1 every record is timed.
+ * </p>
+ *
+ * <p>
+ *    Counters are LongAdders and the latency histogram is an array of
+ *    them, so updating them from several threads at once doesn't contend.
+ *    The histogram has four buckets per power of two nanoseconds, which
+ *    puts percentiles within 25% of the true value.
+ * </p>
+ *
+ * <p>
+ *    While the workflow runs, each actor's metrics are registered with the
+ *    platform MBean server as
+ *    com.brightcove.opensource.workflowengine:type=ActorMetrics,workflow=&lt;id&gt;,actor=&lt;name&gt;
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class ActorMetrics implements ActorMetricsMBean {
+	public static final Integer DEFAULT_SAMPLE_RATE = 16;
+
+	private static final Integer SUB_BUCKET_BITS = 2;
+	private static final Integer BUCKETS         = 64 << SUB_BUCKET_BITS;
+
+	private static final ThreadLocal<Clock> CLOCK = new ThreadLocal<Clock>(){
+		protected Clock initialValue(){
+			return new Clock();
+		}
+	};
+
+	private LongAdder   recordsIn;
+	private LongAdder   recordsOut;
+	private LongAdder   errors;
+	private LongAdder   handleNanos;
+	private LongAdder   runNanos;
+	private LongAdder[] latency;
+	private ObjectName  objectName;
+	private int         sampleRate;
+
+	/**
+	 * <p>
+	 *    Creates empty metrics
+	 * </p>
+	 */
+	ActorMetrics(){
+		recordsIn   = new LongAdder();
+		recordsOut  = new LongAdder();
+		errors      = new LongAdder();
+		handleNanos = new LongAdder();
+		runNanos    = new LongAdder();
+		latency     = new LongAdder[BUCKETS];
+		for(int idx=0; idx<BUCKETS; idx++){
+			latency[idx] = new LongAdder();
+		}
+		objectName = null;
+		sampleRate = DEFAULT_SAMPLE_RATE;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the calling thread's clock
+	 * </p>
+	 *
+	 * @return Calling thread's clock
+	 */
+	static Clock threadClock(){
+		return CLOCK.get();
+	}
+
+	/**
+	 * <p>
+	 *    Sets how many records go by for each one timed
+	 * </p>
+	 *
+	 * @param sampleRate Sample rate (at least 1)
+	 */
+	void setSampleRate(Integer sampleRate){
+		this.sampleRate = sampleRate;
+	}
+
+	int getSampleRate(){
+		return sampleRate;
+	}
+
+	void countIn(Integer records){
+		recordsIn.add(records);
+	}
+
+	void countOut(Integer records){
+		recordsOut.add(records);
+	}
+
+	void countError(){
+		errors.increment();
+	}
+
+	/**
+	 * <p>
+	 *    Adds the self time taken to handle one or more sampled records,
+	 *    counting each towards the latency histogram at the average time per
+	 *    record
+	 * </p>
+	 *
+	 * @param records Number of records handled
+	 * @param nanos Self time taken, in nanoseconds
+	 * @param weight Number of records each sampled record stands for
+	 */
+	void addHandleTime(Integer records, long nanos, int weight){
+		if(nanos < 0){
+			nanos = 0;
+		}
+		handleNanos.add(nanos * weight);
+		latency[bucketFor(nanos / records)].add(records * weight);
+	}
+
+	void addRunTime(long nanos){
+		if(nanos > 0){
+			runNanos.add(nanos);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Registers these metrics with the platform MBean server, unless
+	 *    something is already registered under the same name
+	 * </p>
+	 *
+	 * @param workflowId Identifies the workflow the actor is part of
+	 * @param actorName Name of the actor
+	 */
+	void register(String workflowId, String actorName){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName  name   = new ObjectName("com.brightcove.opensource.workflowengine:type=ActorMetrics,workflow=" + workflowId + ",actor=" + ObjectName.quote("" + actorName));
+			if(! server.isRegistered(name)){
+				server.registerMBean(this, name);
+				objectName = name;
+			}
+		}
+		catch (JMException jme) {
+			// Monitoring only - the actor works without it
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Removes these metrics from the platform MBean server, if register()
+	 *    put them there
+	 * </p>
+	 */
+	void unregister(){
+		if(objectName == null){
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (JMException jme) {
+			// Already gone
+		}
+		objectName = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getRecordsIn()
+	 */
+	public Long getRecordsIn(){
+		return recordsIn.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getRecordsOut()
+	 */
+	public Long getRecordsOut(){
+		return recordsOut.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getErrors()
+	 */
+	public Long getErrors(){
+		return errors.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getHandleTimeMillis()
+	 */
+	public Long getHandleTimeMillis(){
+		return handleNanos.sum() / 1000000;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getRunTimeMillis()
+	 */
+	public Long getRunTimeMillis(){
+		return runNanos.sum() / 1000000;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getMeanLatencyMicros()
+	 */
+	public Double getMeanLatencyMicros(){
+		long handled = 0;
+		for(LongAdder bucket : latency){
+			handled += bucket.sum();
+		}
+		if(handled == 0){
+			return 0d;
+		}
+		return handleNanos.sum() / 1000d / handled;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getMedianLatencyMicros()
+	 */
+	public Double getMedianLatencyMicros(){
+		return getLatencyPercentile(0.5);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.ActorMetricsMBean#getP99LatencyMicros()
+	 */
+	public Double getP99LatencyMicros(){
+		return getLatencyPercentile(0.99);
+	}
+
+	/**
+	 * <p>
+	 *    Returns the time the actor spent handling a record that the
+	 *    fraction of records given took no longer than - the upper bound of
+	 *    the histogram bucket that fraction of records falls in
+	 * </p>
+	 *
+	 * @param fraction Fraction of records (0 to 1)
+	 * @return Latency in microseconds, 0 if no records have been handled
+	 */
+	public Double getLatencyPercentile(Double fraction){
+		long[] counts  = new long[BUCKETS];
+		long   handled = 0;
+		for(int idx=0; idx<BUCKETS; idx++){
+			counts[idx]  = latency[idx].sum();
+			handled     += counts[idx];
+		}
+		if(handled == 0){
+			return 0d;
+		}
+
+		long target = (long)Math.ceil(handled * fraction);
+		long seen   = 0;
+		for(int idx=0; idx<BUCKETS; idx++){
+			seen += counts[idx];
+			if((seen >= target) && (counts[idx] > 0)){
+				return bucketStart(idx + 1) / 1000d;
+			}
+		}
+		return bucketStart(BUCKETS) / 1000d;
+	}
+
+	private static int bucketFor(long nanos){
+		if(nanos < (1 << SUB_BUCKET_BITS)){
+			return (int)nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub      = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+	}
+
+	private static double bucketStart(int bucket){
+		if(bucket < (1 << SUB_BUCKET_BITS)){
+			return bucket;
+		}
+		int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		int sub      = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+		return Math.scalb((double)((1 << SUB_BUCKET_BITS) + sub), exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * <p>
+	 *    Per-thread bookkeeping for timing calls into actors.  elsewhere is
+	 *    the time (in nanoseconds) spent in timed calls on the thread so
+	 *    far: a timed call notes it before it starts, takes off its own time
+	 *    whatever it grew by meanwhile, and then adds its own whole duration
+	 *    for its caller.  Calls carrying records also go through begin() and
+	 *    end(), which decide which records are timed.
+	 * </p>
+	 */
+	static class Clock {
+		long            elsewhere = 0;
+		int             weight    = 1;
+		private int     depth     = 0;
+		private int     countdown = 0;
+		private boolean sampled   = false;
+
+		/**
+		 * <p>
+		 *    Starts a call carrying records.  The outermost such call on the
+		 *    thread decides whether the records are timed; calls nested in
+		 *    it go along with that.  Must be matched by end() or finish().
+		 * </p>
+		 *
+		 * @param sampleRate Sample rate of the actor called
+		 * @return True if the call should be timed
+		 */
+		boolean begin(int sampleRate){
+			depth++;
+			if(depth > 1){
+				return sampled;
+			}
+			if(--countdown > 0){
+				sampled = false;
+				return false;
+			}
+			countdown = sampleRate;
+			weight    = sampleRate;
+			sampled   = true;
+			return true;
+		}
+
+		/**
+		 * <p>
+		 *    Ends a call begin() said not to time
+		 * </p>
+		 */
+		void end(){
+			depth--;
+		}
+
+		/**
+		 * <p>
+		 *    Ends a timed call (started with begin(), or a call to run()
+		 *    when depth is 0), and returns its self time.  The outermost
+		 *    timed call of a sample adds its duration scaled up by the
+		 *    sample rate, standing in for the records that weren't timed.
+		 * </p>
+		 *
+		 * @param outside Value of elsewhere when the call started
+		 * @param elapsed Duration of the call, in nanoseconds
+		 * @param records True if the call went through begin()
+		 * @return Self time of the call, in nanoseconds
+		 */
+		long finish(long outside, long elapsed, Boolean records){
+			long self = elapsed - (elsewhere - outside);
+			if(records){
+				if(depth == 1){
+					elapsed *= weight;
+				}
+				depth--;
+			}
+			elsewhere = outside + elapsed;
+			return self;
+		}
+	}
+}
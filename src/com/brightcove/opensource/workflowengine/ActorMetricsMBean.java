@@ -0,0 +1,94 @@
+package com.brightcove.opensource.workflowengine;
+
+/**
+ * <p>
+ *    JMX view of an ActorMetrics - how many records one actor has seen and
+ *    where its time has gone.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface ActorMetricsMBean {
+	/**
+	 * <p>
+	 *    Returns the number of records the actor has been passed by its
+	 *    providers
+	 * </p>
+	 *
+	 * @return Records in
+	 */
+	public Long getRecordsIn();
+
+	/**
+	 * <p>
+	 *    Returns the number of records the actor has passed on to its
+	 *    consumers
+	 * </p>
+	 *
+	 * @return Records out
+	 */
+	public Long getRecordsOut();
+
+	/**
+	 * <p>
+	 *    Returns the number of records the actor has failed (see
+	 *    Actor.failRecord())
+	 * </p>
+	 *
+	 * @return Records failed
+	 */
+	public Long getErrors();
+
+	/**
+	 * <p>
+	 *    Returns the time spent inside the actor handling records, not
+	 *    counting time spent in the actors it passed them on to
+	 * </p>
+	 *
+	 * @return Handling time in milliseconds
+	 */
+	public Long getHandleTimeMillis();
+
+	/**
+	 * <p>
+	 *    Returns the time spent inside the actor's run(), not counting time
+	 *    spent in its providers or the actors it passed records on to (for
+	 *    a source actor, the time spent reading records)
+	 * </p>
+	 *
+	 * @return Run time in milliseconds
+	 */
+	public Long getRunTimeMillis();
+
+	/**
+	 * <p>
+	 *    Returns the mean time the actor spent handling a record, not
+	 *    counting downstream time
+	 * </p>
+	 *
+	 * @return Mean latency in microseconds
+	 */
+	public Double getMeanLatencyMicros();
+
+	/**
+	 * <p>
+	 *    Returns the median time the actor spent handling a record, not
+	 *    counting downstream time (accurate to within 25%)
+	 * </p>
+	 *
+	 * @return Median latency in microseconds
+	 */
+	public Double getMedianLatencyMicros();
+
+	/**
+	 * <p>
+	 *    Returns the time the actor spent handling a record that 99% of
+	 *    records took no longer than, not counting downstream time
+	 *    (accurate to within 25%)
+	 * </p>
+	 *
+	 * @return 99th percentile latency in microseconds
+	 */
+	public Double getP99LatencyMicros();
+}
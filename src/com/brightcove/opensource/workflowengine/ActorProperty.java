@@ -0,0 +1,144 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ *    Describes a configuration property an actor honors - its name, and the
+ *    values it takes - so the workflow can check an actor's configuration
+ *    when it is loaded (see ActorFactory) rather than part way through a
+ *    run.
+ * </p>
+ *
+ * <p>
+ *    A property is either typed (String, Integer, Long, Double or Boolean)
+ *    or takes one of a fixed set of choices, compared ignoring case.
+ *    Numbers may have white space around them; booleans are "true" or
+ *    "false", ignoring case.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class ActorProperty {
+	private String       name;
+	private Class<?>     type;
+	private List<String> choices;
+
+	/**
+	 * <p>
+	 *    Describes a property taking any string
+	 * </p>
+	 *
+	 * @param name Name of the property
+	 */
+	public ActorProperty(String name){
+		this(name, String.class);
+	}
+
+	/**
+	 * <p>
+	 *    Describes a property of the type given
+	 * </p>
+	 *
+	 * @param name Name of the property
+	 * @param type String, Integer, Long, Double or Boolean
+	 */
+	public ActorProperty(String name, Class<?> type){
+		this.name    = name;
+		this.type    = type;
+		this.choices = null;
+	}
+
+	/**
+	 * <p>
+	 *    Describes a property taking one of the choices given
+	 * </p>
+	 *
+	 * @param name Name of the property
+	 * @param choices Values the property may take
+	 */
+	public ActorProperty(String name, String... choices){
+		this.name    = name;
+		this.type    = String.class;
+		this.choices = new ArrayList<String>(Arrays.asList(choices));
+	}
+
+	/**
+	 * <p>
+	 *    Returns the name of the property
+	 * </p>
+	 *
+	 * @return Name of the property
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the type of the property's values
+	 * </p>
+	 *
+	 * @return String, Integer, Long, Double or Boolean
+	 */
+	public Class<?> getType(){
+		return type;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the values the property may take
+	 * </p>
+	 *
+	 * @return Choices, or null if the property isn't limited to a set of
+	 *         choices
+	 */
+	public List<String> getChoices(){
+		return choices;
+	}
+
+	/**
+	 * <p>
+	 *    Checks a value given for the property
+	 * </p>
+	 *
+	 * @param value Value to check
+	 * @return What is wrong with the value, or null if it's fine
+	 */
+	public String validate(String value){
+		if(value == null){
+			return null;
+		}
+
+		if(choices != null){
+			for(String choice : choices){
+				if(choice.equalsIgnoreCase(value.trim())){
+					return null;
+				}
+			}
+			return "must be one of " + choices + " (was '" + value + "')";
+		}
+
+		try{
+			if(type == Integer.class){
+				Integer.parseInt(value.trim());
+			}
+			else if(type == Long.class){
+				Long.parseLong(value.trim());
+			}
+			else if(type == Double.class){
+				Double.parseDouble(value.trim());
+			}
+			else if((type == Boolean.class) && (! "true".equalsIgnoreCase(value.trim())) && (! "false".equalsIgnoreCase(value.trim()))){
+				return "must be true or false (was '" + value + "')";
+			}
+		}
+		catch(NumberFormatException nfe){
+			return "must be " + ((type == Double.class) ? "a number" : "a whole number") + " (was '" + value + "')";
+		}
+		return null;
+	}
+}
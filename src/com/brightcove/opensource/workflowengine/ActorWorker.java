@@ -0,0 +1,249 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Runs a single actor on its own thread for pipelined workflows.
+ * </p>
+ *
+ * <p>
+ *    The worker sits between an actor and its providers.  Providers hand
+ *    records (or batches of records) to the worker, which is registered with
+ *    them as a Consumer in place of the actor.  The worker places them in a
+ *    bounded queue, and the worker thread takes them off the queue and
+ *    passes them to the actor.  A full queue blocks the provider, so a slow
+ *    actor throttles everything upstream of it rather than letting records
+ *    pile up in memory.
+ * </p>
+ *
+ * <p>
+ *    Records are handed to the actor in the order they were queued.  Once
+ *    the queue is finished, the actor's held back batch is flushed from the
+ *    worker thread; while the queue is idle, the worker also flushes batches
+ *    that have outlived the actor's batch-timeout.  A record the actor
+ *    throws on is reported with Actor.failRecord(), and the worker carries
+ *    on with the next one.  If the actor fails anywhere else (e.g. while
+ *    flushing or checkpointing), the failure is kept and every remaining
+ *    record is discarded (but still taken off the queue, so providers never
+ *    block on a dead worker).
+ * </p>
+ *
+ * <p>
+ *    A checkpoint is queued like any other record, so the worker thread
+ *    only reaches it once every record queued before it has been handled.
+ *    It then flushes the actor's held back batch and calls checkpoint() on
+ *    the actor, from the worker thread.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class ActorWorker implements BatchConsumer, Runnable {
+	private static final List<Record> END_OF_STREAM = new ArrayList<Record>(0);
+	private static final List<Record> CHECKPOINT    = new ArrayList<Record>(0);
+
+	private Actor                       actor;
+	private BlockingQueue<List<Record>> inbox;
+	private Thread                      thread;
+	private volatile Throwable          failure;
+	private Map<String, String>         checkpointState;
+	private CountDownLatch              checkpointDone;
+
+	/**
+	 * <p>
+	 *    Creates a worker for the actor specified
+	 * </p>
+	 *
+	 * @param actor Actor to run
+	 * @param queueSize Maximum number of records (or batches) waiting to be handled
+	 */
+	ActorWorker(Actor actor, Integer queueSize){
+		this.actor   = actor;
+		this.inbox   = new ArrayBlockingQueue<List<Record>>(queueSize);
+		this.failure = null;
+
+		String threadName = "workflow-actor";
+		if(actor.getName() != null){
+			threadName += "-" + actor.getName();
+		}
+		this.thread = new Thread(this, threadName);
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * <p>
+	 *    Returns the actor this worker runs
+	 * </p>
+	 *
+	 * @return Actor run by this worker
+	 */
+	Actor getActor(){
+		return actor;
+	}
+
+	/**
+	 * <p>
+	 *    Starts the worker thread
+	 * </p>
+	 */
+	void start(){
+		thread.start();
+	}
+
+	/**
+	 * <p>
+	 *    Signals that no more records will be queued, and waits for the worker
+	 *    to hand every record already queued to the actor.
+	 * </p>
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	void finish() throws InterruptedException {
+		inbox.put(END_OF_STREAM);
+		thread.join();
+	}
+
+	/**
+	 * <p>
+	 *    Waits for the worker to handle every record queued so far, then has
+	 *    the actor checkpoint itself on the worker thread.  Only one
+	 *    checkpoint may be in progress at a time.
+	 * </p>
+	 *
+	 * @param state Map for the actor to put its checkpoint state into
+	 * @return False if the actor has failed, and so has no consistent state
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	Boolean checkpoint(Map<String, String> state) throws InterruptedException {
+		checkpointState = state;
+		checkpointDone  = new CountDownLatch(1);
+		inbox.put(CHECKPOINT);
+		checkpointDone.await();
+		return failure == null;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the first error thrown by the actor, if any
+	 * </p>
+	 *
+	 * @return Error thrown by the actor, or null if it never failed
+	 */
+	Throwable getFailure(){
+		return failure;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Consumer#handleRecord(com.brightcove.opensource.workflowengine.record.Record)
+	 */
+	public void handleRecord(Record record){
+		enqueue(Collections.singletonList(record));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.BatchConsumer#handleRecords(java.util.List)
+	 */
+	public void handleRecords(List<Record> records){
+		if(! records.isEmpty()){
+			enqueue(records);
+		}
+	}
+
+	private void enqueue(List<Record> records){
+		try {
+			inbox.put(records);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing record for actor '" + actor.getName() + "'.", ie);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		Long batchTimeout = 0l;
+		if(actor.getBatchSize() > 1){
+			batchTimeout = actor.getBatchTimeout();
+		}
+
+		while(true){
+			List<Record> records = null;
+			try {
+				if(batchTimeout > 0){
+					records = inbox.poll(batchTimeout, TimeUnit.MILLISECONDS);
+				}
+				else{
+					records = inbox.take();
+				}
+			}
+			catch (InterruptedException ie) {
+				if(failure == null){
+					failure = ie;
+				}
+				return;
+			}
+
+			if(records == END_OF_STREAM){
+				if(failure == null){
+					try {
+						actor.flushRecords();
+					}
+					catch (Throwable t) {
+						fail(t);
+					}
+				}
+				return;
+			}
+
+			if(records == CHECKPOINT){
+				if(failure == null){
+					try {
+						actor.flushRecords();
+						actor.checkpoint(checkpointState);
+					}
+					catch (Throwable t) {
+						fail(t);
+					}
+				}
+				checkpointDone.countDown();
+				continue;
+			}
+
+			if(failure != null){
+				continue;
+			}
+
+			try {
+				if(records == null){
+					actor.flushExpiredRecords();
+				}
+				else if(records.size() == 1){
+					actor.receiveRecord(records.get(0));
+				}
+				else{
+					actor.receiveRecords(records);
+				}
+			}
+			catch (Throwable t) {
+				fail(t);
+			}
+		}
+	}
+
+	private void fail(Throwable t){
+		failure = t;
+		actor.logError("Actor '" + actor.getName() + "' failed, discarding remaining records.  Exception caught: '" + t + "'.");
+	}
+}
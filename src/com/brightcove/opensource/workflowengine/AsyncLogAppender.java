@@ -0,0 +1,171 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ *    Hands log messages to a background thread that passes them on to a
+ *    Logger, so actors don't wait on the logger's handlers (console, files)
+ *    for every message.
+ * </p>
+ *
+ * <p>
+ *    Messages are held in a ring buffer allocated up front - a pair of
+ *    arrays for the levels and messages, indexed by a running sequence
+ *    number - so queueing a message creates no garbage of its own.  When
+ *    the ring is full the caller waits for the background thread to make
+ *    room rather than dropping messages.  The background thread takes every
+ *    waiting message in one go and logs them outside the lock.  Messages
+ *    are logged in the order they were appended.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class AsyncLogAppender implements Runnable {
+	private Logger        logger;
+	private Level[]       levels;
+	private String[]      messages;
+	private int           mask;
+	private long          head;
+	private long          tail;
+	private boolean       closed;
+	private ReentrantLock lock;
+	private Condition     notEmpty;
+	private Condition     notFull;
+	private Thread        thread;
+
+	/**
+	 * <p>
+	 *    Creates an appender for the logger specified and starts its thread
+	 * </p>
+	 *
+	 * @param logger Logger to pass messages on to
+	 * @param capacity Number of messages the ring holds (rounded up to a power of 2)
+	 */
+	AsyncLogAppender(Logger logger, Integer capacity){
+		int size = 1;
+		while(size < capacity){
+			size <<= 1;
+		}
+
+		this.logger   = logger;
+		this.levels   = new Level[size];
+		this.messages = new String[size];
+		this.mask     = size - 1;
+		this.head     = 0;
+		this.tail     = 0;
+		this.closed   = false;
+		this.lock     = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		this.notFull  = lock.newCondition();
+
+		this.thread = new Thread(this, "workflow-logger");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * <p>
+	 *    Queues a message to be logged.  Once the appender is closed,
+	 *    messages are logged straight away on the calling thread.
+	 * </p>
+	 *
+	 * @param level Level to log at
+	 * @param message Message to log
+	 */
+	void append(Level level, String message){
+		lock.lock();
+		try {
+			while((! closed) && (tail - head > mask)){
+				notFull.awaitUninterruptibly();
+			}
+			if(! closed){
+				int slot = (int)(tail & mask);
+				levels[slot]   = level;
+				messages[slot] = message;
+				tail++;
+				notEmpty.signal();
+				return;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+
+		logger.log(level, message);
+	}
+
+	/**
+	 * <p>
+	 *    Logs every queued message and stops the background thread.  Safe to
+	 *    call more than once.
+	 * </p>
+	 */
+	void close(){
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+
+		if(Thread.currentThread() != thread){
+			try {
+				thread.join();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		Level[]  levelBatch   = new Level[levels.length];
+		String[] messageBatch = new String[messages.length];
+
+		while(true){
+			int     count    = 0;
+			boolean finished = false;
+
+			lock.lock();
+			try {
+				while((! closed) && (head == tail)){
+					notEmpty.awaitUninterruptibly();
+				}
+				for(; head<tail; head++){
+					int slot = (int)(head & mask);
+					levelBatch[count]   = levels[slot];
+					messageBatch[count] = messages[slot];
+					levels[slot]        = null;
+					messages[slot]      = null;
+					count++;
+				}
+				finished = closed;
+				notFull.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			for(int idx=0; idx<count; idx++){
+				logger.log(levelBatch[idx], messageBatch[idx]);
+				levelBatch[idx]   = null;
+				messageBatch[idx] = null;
+			}
+
+			if(finished){
+				return;
+			}
+		}
+	}
+}
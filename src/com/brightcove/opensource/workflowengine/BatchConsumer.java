@@ -0,0 +1,36 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    A Consumer that can also receive several records from a Provider in a
+ *    single call.
+ * </p>
+ *
+ * <p>
+ *    Providers that have accumulated a batch of records hand the whole batch
+ *    to consumers implementing this interface, and fall back to one
+ *    handleRecord() call per record for plain Consumers.  Actor implements
+ *    this interface by handing each record of a batch to handleRecord(), so
+ *    actors only need to override handleRecords() if they can do better with
+ *    a whole batch (e.g. a single write or API call).
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface BatchConsumer extends Consumer {
+	/**
+	 * <p>
+	 *    Called by a Provider to pass a batch of records to this Consumer.
+	 *    Records are in the order the provider produced them.  The list must
+	 *    not be modified or kept after the call returns.
+	 * </p>
+	 *
+	 * @param records Data passed by provider
+	 */
+	public void handleRecords(List<Record> records);
+}
@@ -0,0 +1,207 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ *    A cron schedule - minute, hour, day of month, month and day of week,
+ *    as in a crontab.  Each field is *, a number, a range (1-5), a list
+ *    (1,15,30) or any of those with a step (*&#47;15, 0-30/10).  Months and
+ *    days of the week can also be given by name (JAN, MON), and Sunday is
+ *    either 0 or 7.  As in cron, when both the day of month and the day of
+ *    week are restricted, a day matching either matches.  @yearly,
+ *    @monthly, @weekly, @daily and @hourly are accepted too.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class CronExpression {
+	private static final String[]            MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+	private static final String[]            DAY_NAMES   = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+	private static final Map<String, String> MACROS      = new HashMap<String, String>();
+	static {
+		MACROS.put("@yearly",   "0 0 1 1 *");
+		MACROS.put("@annually", "0 0 1 1 *");
+		MACROS.put("@monthly",  "0 0 1 * *");
+		MACROS.put("@weekly",   "0 0 * * 0");
+		MACROS.put("@daily",    "0 0 * * *");
+		MACROS.put("@midnight", "0 0 * * *");
+		MACROS.put("@hourly",   "0 * * * *");
+	}
+
+	// Far enough ahead for any date that can match (e.g. 29 February) to
+	// come round
+	private static final int MAX_YEARS = 8;
+
+	private String   expression;
+	private TimeZone timeZone;
+	private BitSet   minutes;
+	private BitSet   hours;
+	private BitSet   daysOfMonth;
+	private BitSet   months;
+	private BitSet   daysOfWeek;
+	private boolean  anyDayOfMonth;
+	private boolean  anyDayOfWeek;
+
+	/**
+	 * <p>
+	 *    Parses a cron expression
+	 * </p>
+	 *
+	 * @param expression Cron expression
+	 * @param timeZone Time zone the expression is in
+	 * @throws IllegalArgumentException If the expression can't be parsed,
+	 *         or matches no time at all (e.g. 30 February)
+	 */
+	CronExpression(String expression, TimeZone timeZone){
+		this.expression = expression;
+		this.timeZone   = timeZone;
+
+		String trimmed = expression.trim();
+		if(MACROS.containsKey(trimmed.toLowerCase())){
+			trimmed = MACROS.get(trimmed.toLowerCase());
+		}
+
+		String[] fields = trimmed.split("\\s+");
+		if(fields.length != 5){
+			throw new IllegalArgumentException("Cron expression '" + expression + "' should have 5 fields (minute hour day-of-month month day-of-week).");
+		}
+
+		minutes       = parseField(fields[0], "minute", 0, 59, null);
+		hours         = parseField(fields[1], "hour", 0, 23, null);
+		daysOfMonth   = parseField(fields[2], "day-of-month", 1, 31, null);
+		months        = parseField(fields[3], "month", 1, 12, MONTH_NAMES);
+		daysOfWeek    = parseField(fields[4], "day-of-week", 0, 7, DAY_NAMES);
+		anyDayOfMonth = fields[2].startsWith("*");
+		anyDayOfWeek  = fields[4].startsWith("*");
+		if(daysOfWeek.get(7)){
+			daysOfWeek.set(0);
+		}
+
+		if(next(System.currentTimeMillis()) == null){
+			throw new IllegalArgumentException("Cron expression '" + expression + "' never matches.");
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Finds the first time the expression matches after the time given
+	 * </p>
+	 *
+	 * @param after Time in milliseconds since the epoch
+	 * @return First matching time (on a whole minute) later than after, or
+	 *         null if there is none
+	 */
+	Long next(long after){
+		Calendar calendar = Calendar.getInstance(timeZone);
+		calendar.setTimeInMillis(after);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.MINUTE, 1);
+
+		int lastYear = calendar.get(Calendar.YEAR) + MAX_YEARS;
+		while(calendar.get(Calendar.YEAR) <= lastYear){
+			if(! months.get(calendar.get(Calendar.MONTH) + 1)){
+				calendar.set(Calendar.DAY_OF_MONTH, 1);
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.MONTH, 1);
+			}
+			else if(! dayMatches(calendar)){
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+			}
+			else if(! hours.get(calendar.get(Calendar.HOUR_OF_DAY))){
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.HOUR_OF_DAY, 1);
+			}
+			else if(! minutes.get(calendar.get(Calendar.MINUTE))){
+				calendar.add(Calendar.MINUTE, 1);
+			}
+			else{
+				return calendar.getTimeInMillis();
+			}
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return expression;
+	}
+
+	private boolean dayMatches(Calendar calendar){
+		boolean dayOfMonth = daysOfMonth.get(calendar.get(Calendar.DAY_OF_MONTH));
+		boolean dayOfWeek  = daysOfWeek.get(calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+		if(anyDayOfMonth || anyDayOfWeek){
+			return dayOfMonth && dayOfWeek;
+		}
+		return dayOfMonth || dayOfWeek;
+	}
+
+	private BitSet parseField(String field, String fieldName, int min, int max, String[] names){
+		BitSet values = new BitSet(max + 1);
+		for(String part : field.split(",")){
+			int    step  = 1;
+			String range = part;
+			int    slash = part.indexOf('/');
+			if(slash >= 0){
+				step  = parseValue(part.substring(slash + 1), fieldName, 1, max, null);
+				range = part.substring(0, slash);
+			}
+
+			int low  = min;
+			int high = max;
+			if(! "*".equals(range)){
+				int dash = range.indexOf('-');
+				if(dash >= 0){
+					low  = parseValue(range.substring(0, dash), fieldName, min, max, names);
+					high = parseValue(range.substring(dash + 1), fieldName, min, max, names);
+				}
+				else{
+					low  = parseValue(range, fieldName, min, max, names);
+					high = (slash >= 0) ? max : low;
+				}
+				if(low > high){
+					throw new IllegalArgumentException("Cron expression '" + expression + "' has backwards " + fieldName + " range '" + range + "'.");
+				}
+			}
+
+			for(int value=low; value<=high; value+=step){
+				values.set(value);
+			}
+		}
+		return values;
+	}
+
+	private int parseValue(String value, String fieldName, int min, int max, String[] names){
+		if(names != null){
+			for(int idx=0; idx<names.length; idx++){
+				if(names[idx].equalsIgnoreCase(value)){
+					// Months are numbered from 1, days of the week from 0
+					return idx + min;
+				}
+			}
+		}
+
+		int parsed;
+		try{
+			parsed = Integer.parseInt(value);
+		}
+		catch(NumberFormatException nfe){
+			throw new IllegalArgumentException("Cron expression '" + expression + "' has bad " + fieldName + " '" + value + "'.");
+		}
+		if((parsed < min) || (parsed > max)){
+			throw new IllegalArgumentException("Cron expression '" + expression + "' has " + fieldName + " " + parsed + ", which isn't between " + min + " and " + max + ".");
+		}
+		return parsed;
+	}
+}
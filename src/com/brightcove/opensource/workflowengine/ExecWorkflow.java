@@ -1,9 +1,14 @@
 package com.brightcove.opensource.workflowengine;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import com.brightcove.commons.system.commandLine.CommandLineProgram;
 import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.record.Property;
 
 /**
  * <p>
@@ -11,10 +16,33 @@ import com.brightcove.opensource.workflowengine.Workflow;
  *    and then begin execution.
  * </p>
  * 
+ * <p>
+ *    Adding --resume to the command line carries on from the checkpoint
+ *    left by an earlier run of the workflow that didn't complete (see the
+ *    checkpoint-file workflow property).
+ * </p>
+ * 
+ * <p>
+ *    With --workflow-cache &lt;path&gt;, what is read from the XML file is
+ *    kept in a binary cache file, and later runs of the same (unchanged)
+ *    XML file load that instead of parsing the XML.
+ * </p>
+ * 
+ * <p>
+ *    Adding --load-test runs the workflow as a load test instead (see
+ *    LoadTest), with its source actors replaced by generators.  Generator
+ *    properties are given as --load-&lt;property&gt; &lt;value&gt; - e.g.
+ *    --load-record-count 5000000 --load-records-per-second 200000 (see
+ *    LoadGeneratorInputAdapter).
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class ExecWorkflow extends CommandLineProgram {
+	private Boolean                resume              = false;
+	private Boolean                loadTest            = false;
+	private List<Property<String>> generatorProperties = new ArrayList<Property<String>>();
 	
 	/**
 	 * <p>
@@ -24,22 +52,130 @@ public class ExecWorkflow extends CommandLineProgram {
 	 * @param args Command line arguments
 	 */
 	public static void main(String[] args){
+		List<String> argList = new ArrayList<String>(Arrays.asList(args));
+		if(argList.contains("--daemon")){
+			runDaemon(argList);
+			return;
+		}
+		if(argList.contains("--schedule")){
+			runScheduler(argList);
+			return;
+		}
+		
 		ExecWorkflow test = new ExecWorkflow();
 		
 		test.allowNormalArgument("workflow-file", "--workflow-file <path>", "--workflow-file <path>: Path to workflow XML config file", true);
+		test.allowNormalArgument("workflow-cache", "--workflow-cache <path>", "--workflow-cache <path>: Path to binary cache of the workflow, to skip parsing its XML on later runs", false);
+		
+		// --resume and --load-test take no value, and the --load-<property>
+		// names aren't known up front, which CommandLineProgram can't parse
+		test.resume   = argList.remove("--resume");
+		test.loadTest = argList.remove("--load-test");
+		for(int idx=0; idx<argList.size(); ){
+			if(argList.get(idx).startsWith("--load-") && ((idx + 1) < argList.size())){
+				test.generatorProperties.add(new Property<String>(argList.remove(idx).substring("--load-".length()), argList.remove(idx)));
+			}
+			else{
+				idx++;
+			}
+		}
+		args = argList.toArray(new String[argList.size()]);
 		
 		test.parseArguments(args);
 		test.run(args);
 	}
 	
+	// --daemon runs without a --workflow-file, which CommandLineProgram
+	// requires, so its arguments are read here
+	private static void runDaemon(List<String> argList){
+		String  spoolDir = null;
+		Integer threads  = Runtime.getRuntime().availableProcessors();
+		for(int idx=0; idx<argList.size(); idx++){
+			String arg = argList.get(idx);
+			if((idx + 1) >= argList.size()){
+				System.err.println("No value given for '" + arg + "'.");
+				System.exit(1);
+			}
+			if("--daemon".equals(arg)){
+				spoolDir = argList.get(++idx);
+			}
+			else if("--daemon-threads".equals(arg)){
+				try{
+					threads = Integer.parseInt(argList.get(++idx).trim());
+				}
+				catch(NumberFormatException nfe){
+					System.err.println("Couldn't parse --daemon-threads '" + argList.get(idx) + "'.");
+					System.exit(1);
+				}
+			}
+			else{
+				System.err.println("Unknown argument '" + arg + "' - --daemon takes only --daemon-threads <n>.");
+				System.exit(1);
+			}
+		}
+		
+		try {
+			new WorkflowDaemon(new File(spoolDir), threads).run();
+		}
+		catch (Exception e) {
+			System.err.println("Workflow daemon failed.  Exception caught: '" + e + "'.");
+			System.exit(1);
+		}
+	}
+	
+	private static void runScheduler(List<String> argList){
+		if((argList.size() != 2) || (! "--schedule".equals(argList.get(0)))){
+			System.err.println("--schedule takes the path to a schedule XML file, and no other arguments.");
+			System.exit(1);
+		}
+		
+		final WorkflowScheduler scheduler = new WorkflowScheduler();
+		final CountDownLatch    stopped   = new CountDownLatch(1);
+		try {
+			scheduler.fromXML(new File(argList.get(1)));
+			
+			// Ctrl-C or a kill lets the workflows already running end,
+			// rather than cutting them off part way through
+			Runtime.getRuntime().addShutdownHook(new Thread("workflow-scheduler-shutdown"){
+				public void run(){
+					scheduler.stop();
+					try {
+						stopped.await();
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			
+			try {
+				scheduler.run();
+			}
+			finally {
+				stopped.countDown();
+			}
+		}
+		catch (Exception e) {
+			System.err.println("Workflow scheduler failed.  Exception caught: '" + e + "'.");
+			System.exit(1);
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.brightcove.commons.system.commandLine.CommandLineProgram#run(java.lang.String[])
 	 */
 	public void run(String[] args){
 		File configFile = new File(getNormalArgument("workflow-file"));
 		try {
-			Workflow workflow = new Workflow().fromXML(configFile);
-			workflow.run();
+			File     cacheFile = (getNormalArgument("workflow-cache") == null) ? null : new File(getNormalArgument("workflow-cache"));
+			Workflow workflow  = new Workflow().fromXML(configFile, cacheFile);
+			workflow.setResume(resume);
+			if(loadTest){
+				new LoadTest(workflow, generatorProperties).run();
+			}
+			else{
+				workflow.run();
+			}
 		}
 		catch (Exception e) {
 			usage(e);
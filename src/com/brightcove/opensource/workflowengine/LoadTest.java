@@ -0,0 +1,218 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.actors.LoadGeneratorInputAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Runs a workflow with its source actors replaced by
+ *    LoadGeneratorInputAdapters, and logs how the workflow held up -
+ *    sustained throughput, each actor's latency percentiles, heap usage and
+ *    garbage collection.
+ * </p>
+ *
+ * <p>
+ *    Source actors are the ones with consumers but no providers.  Each is
+ *    replaced by a generator taking over its name, its consumers and the
+ *    generator properties given (record-count, records-per-second, etc.,
+ *    see LoadGeneratorInputAdapter).  Everything downstream of the sources
+ *    runs as configured - sinks included, so a workflow ending in an actor
+ *    that calls the Video Cloud APIs will call them for every generated
+ *    record.  Load test against a copy of the workflow whose sinks are safe
+ *    to flood (e.g. an OutputAdapter writing to /dev/null).
+ * </p>
+ *
+ * <p>
+ *    Heap usage is sampled every SAMPLE_INTERVAL_MILLIS milliseconds while
+ *    the workflow runs, so the peak reported is the highest sample rather
+ *    than the exact high-water mark.  Throughput is also reported for each
+ *    second of the run (slowest, median and fastest), which shows up stalls
+ *    the overall average hides.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class LoadTest {
+	public static final Long SAMPLE_INTERVAL_MILLIS = 100l;
+
+	private Workflow               workflow;
+	private List<Property<String>> generatorProperties;
+	private List<Actor>            generators;
+	private List<Double>           secondRates;
+	private volatile long          peakHeapUsed;
+
+	/**
+	 * <p>
+	 *    Creates a load test of the workflow given
+	 * </p>
+	 *
+	 * @param workflow Workflow to load test
+	 * @param generatorProperties Properties given to every generator
+	 */
+	public LoadTest(Workflow workflow, List<Property<String>> generatorProperties){
+		this.workflow            = workflow;
+		this.generatorProperties = generatorProperties;
+		this.generators          = new ArrayList<Actor>();
+		this.secondRates         = new ArrayList<Double>();
+		this.peakHeapUsed        = 0;
+	}
+
+	/**
+	 * <p>
+	 *    Replaces the workflow's sources with generators, runs it and logs
+	 *    the results
+	 * </p>
+	 */
+	public void run(){
+		replaceSources();
+
+		long gcCount = 0;
+		long gcTime  = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+			gcCount -= Math.max(0, collector.getCollectionCount());
+			gcTime  -= Math.max(0, collector.getCollectionTime());
+		}
+
+		Thread sampler = new Thread(new Runnable(){
+			public void run(){
+				sample();
+			}
+		}, "load-test-sampler");
+		sampler.setDaemon(true);
+
+		long start = System.nanoTime();
+		sampler.start();
+		try{
+			workflow.run();
+		}
+		finally{
+			sampler.interrupt();
+			try{
+				sampler.join();
+			}
+			catch(InterruptedException ie){
+				Thread.currentThread().interrupt();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+			gcCount += Math.max(0, collector.getCollectionCount());
+			gcTime  += Math.max(0, collector.getCollectionTime());
+		}
+
+		report(elapsed, gcCount, gcTime);
+	}
+
+	private void replaceSources(){
+		List<Actor> sources = new ArrayList<Actor>();
+		List<Actor> actors  = workflow.getActorsInFlowOrder();
+		for(Actor actor : actors){
+			if(isInstance(actor, actors)){
+				continue;
+			}
+
+			// A partitioned actor's instances hold its providers and consumers
+			Actor wired = actor;
+			if(actor instanceof PartitionedActor){
+				wired = ((PartitionedActor)actor).getInstances().get(0);
+			}
+			if(wired.getProviders().isEmpty() && wired.hasConsumers()){
+				sources.add(actor);
+			}
+		}
+		if(sources.isEmpty()){
+			workflow.die("Load test found no source actors (actors with consumers but no providers) to replace.");
+		}
+
+		for(Actor source : sources){
+			Actor generator = new LoadGeneratorInputAdapter(workflow);
+			for(Property<String> property : generatorProperties){
+				generator.addProperty(property);
+			}
+			workflow.replaceActor(source, generator);
+			generators.add(generator);
+			workflow.log("Load test replaced source actor '" + source.getName() + "' (" + source.getClass().getSimpleName() + ") with a generator.");
+		}
+	}
+
+	private Boolean isInstance(Actor actor, List<Actor> actors){
+		for(Actor other : actors){
+			if((other instanceof PartitionedActor) && ((PartitionedActor)other).getInstances().contains(actor)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void sample(){
+		MemoryMXBean memory      = ManagementFactory.getMemoryMXBean();
+		long         secondStart = System.nanoTime();
+		long         secondCount = 0;
+		try{
+			while(true){
+				peakHeapUsed = Math.max(peakHeapUsed, memory.getHeapMemoryUsage().getUsed());
+
+				long now = System.nanoTime();
+				if((now - secondStart) >= 1000000000l){
+					long count = generated();
+					synchronized(secondRates){
+						secondRates.add((count - secondCount) * 1000000000d / (now - secondStart));
+					}
+					secondStart = now;
+					secondCount = count;
+				}
+
+				Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+			}
+		}
+		catch(InterruptedException ie){
+			// Workflow finished
+		}
+	}
+
+	private long generated(){
+		long count = 0;
+		for(Actor generator : generators){
+			count += generator.getMetrics().getRecordsOut();
+		}
+		return count;
+	}
+
+	private void report(long elapsed, long gcCount, long gcTime){
+		long   records = generated();
+		double seconds = elapsed / 1000000000d;
+
+		workflow.log(String.format("Load test generated %d records in %.1f s - %.0f records/second sustained.", records, seconds, records / seconds));
+
+		List<Double> rates = null;
+		synchronized(secondRates){
+			rates = new ArrayList<Double>(secondRates);
+		}
+		if(! rates.isEmpty()){
+			Collections.sort(rates);
+			workflow.log(String.format("Load test records/second over %d whole second(s): slowest %.0f, median %.0f, fastest %.0f.", rates.size(), rates.get(0), rates.get(rates.size() / 2), rates.get(rates.size() - 1)));
+		}
+
+		long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+		workflow.log(String.format("Load test peak heap used %d MB of %s, %d garbage collection(s) taking %d ms.", peakHeapUsed >> 20, (maxHeap < 0) ? "no maximum" : ((maxHeap >> 20) + " MB"), gcCount, gcTime));
+
+		String format = "%-24s %12s %10s %10s %10s";
+		workflow.log(String.format(format, "Actor", "Records in", "p50 us", "p99 us", "p99.9 us"));
+		for(Actor actor : workflow.getActorsInFlowOrder()){
+			if(generators.contains(actor)){
+				continue;
+			}
+			ActorMetrics metrics = actor.getMetrics();
+			workflow.log(String.format(format, actor.getName(), metrics.getRecordsIn(), String.format("%.1f", metrics.getLatencyPercentile(0.5)), String.format("%.1f", metrics.getLatencyPercentile(0.99)), String.format("%.1f", metrics.getLatencyPercentile(0.999))));
+		}
+	}
+}
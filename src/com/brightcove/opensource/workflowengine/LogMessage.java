@@ -0,0 +1,29 @@
+package com.brightcove.opensource.workflowengine;
+
+/**
+ * <p>
+ *    A log message that is only built if it is actually going to be logged.
+ * </p>
+ *
+ * <p>
+ *    Passing a LogMessage to Workflow.log() (or Actor.log()) rather than a
+ *    String defers building the message until after the workflow has
+ *    checked that the log level is enabled, so expensive messages (e.g. a
+ *    whole record) cost nothing when logging is turned down.  The message is
+ *    built on the calling thread, so it may safely read the record or actor
+ *    it describes.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface LogMessage {
+	/**
+	 * <p>
+	 *    Builds the message to be logged
+	 * </p>
+	 *
+	 * @return Message text
+	 */
+	public String getMessage();
+}
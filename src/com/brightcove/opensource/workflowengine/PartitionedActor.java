@@ -0,0 +1,161 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Stands in for an actor that has been split into several parallel
+ *    instances (the parallelism and partition-by attributes of an actor in
+ *    the workflow XML).
+ * </p>
+ *
+ * <p>
+ *    Providers and consumers wired to this actor are wired to every
+ *    instance instead, and each record this actor receives is routed to a
+ *    single instance, chosen by hashing the value of the record's
+ *    partition-by property.  Records with the same value always go to the
+ *    same instance, so their order is kept.  Records without the property
+ *    all go to the first instance.  If no partition-by property is given,
+ *    records are handed out to the instances in turn, with no ordering
+ *    guarantee.
+ * </p>
+ *
+ * <p>
+ *    Every instance runs on its own thread (workflows with partitioned
+ *    actors always run pipelined), and the records the instances pass on
+ *    are merged into their consumers' queues.  Each instance is a separate
+ *    actor of the workflow, so each is finalized once.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class PartitionedActor extends Actor {
+	private List<Actor> instances;
+	private String      partitionBy;
+	private Integer     nextInstance;
+
+	/**
+	 * <p>
+	 *    Creates a partitioned actor routing to the instances provided
+	 * </p>
+	 *
+	 * @param workflow Workflow this actor is part of
+	 * @param partitionBy Name of the record property to partition by, or null to hand records out in turn
+	 * @param instances Instances records are routed to
+	 */
+	public PartitionedActor(Workflow workflow, String partitionBy, List<Actor> instances){
+		super(workflow);
+
+		this.instances    = new ArrayList<Actor>(instances);
+		this.partitionBy  = partitionBy;
+		this.nextInstance = 0;
+
+		for(Actor instance : instances){
+			super.addConsumer(instance);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Returns the instances records are routed to
+	 * </p>
+	 *
+	 * @return Instances of the partitioned actor
+	 */
+	public List<Actor> getInstances(){
+		return instances;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#run()
+	 */
+	public void run(){
+		super.run();
+
+		for(Actor instance : instances){
+			instance.runTimed();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecord(com.brightcove.opensource.workflowengine.record.Record)
+	 */
+	public void handleRecord(Record record){
+		getMetrics().countOut(1);
+		passOutside(getConsumers().get(getPartition(record)), Collections.singletonList(record));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecords(java.util.List)
+	 */
+	public void handleRecords(List<Record> records){
+		List<List<Record>> partitions = new ArrayList<List<Record>>();
+		for(int idx=0; idx<instances.size(); idx++){
+			partitions.add(new ArrayList<Record>());
+		}
+
+		for(Record record : records){
+			partitions.get(getPartition(record)).add(record);
+		}
+
+		getMetrics().countOut(records.size());
+
+		List<Consumer> consumers = getConsumers();
+		for(int idx=0; idx<partitions.size(); idx++){
+			List<Record> partition = partitions.get(idx);
+			if(partition.isEmpty()){
+				continue;
+			}
+
+			passOutside(consumers.get(idx), partition);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#addProvider(com.brightcove.opensource.workflowengine.Provider)
+	 */
+	public void addProvider(Provider provider){
+		for(Actor instance : instances){
+			instance.addProvider(provider);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#addConsumer(com.brightcove.opensource.workflowengine.Consumer)
+	 */
+	public void addConsumer(Consumer consumer){
+		for(Actor instance : instances){
+			instance.addConsumer(consumer);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#addProperty(com.brightcove.opensource.workflowengine.record.Property)
+	 */
+	public void addProperty(Property<String> property){
+		for(Actor instance : instances){
+			instance.addProperty(property);
+		}
+	}
+
+	private Integer getPartition(Record record){
+		if(partitionBy == null){
+			Integer partition = nextInstance;
+			nextInstance = (nextInstance + 1) % instances.size();
+			return partition;
+		}
+
+		Property<?> property = record.getFirstProperty(partitionBy);
+		if((property == null) || (property.getValue() == null)){
+			return 0;
+		}
+
+		return (property.getValue().hashCode() & Integer.MAX_VALUE) % instances.size();
+	}
+}
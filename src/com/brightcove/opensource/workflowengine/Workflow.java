@@ -1,26 +1,39 @@
 package com.brightcove.opensource.workflowengine;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.brightcove.commons.misc.logging.LogUtils;
-import com.brightcove.commons.xml.XalanUtils;
+import com.brightcove.opensource.workflowengine.WorkflowDefinition.ActorDefinition;
 import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
 
 /**
  * <p>
@@ -38,6 +51,13 @@ import com.brightcove.opensource.workflowengine.record.Property;
  * </p>
  * 
  * <p>
+ *    Once all actors are complete, finalize() is called on every actor,
+ *    consumers before their providers - so an actor being finalized can
+ *    rely on everything it passed on having been handled (e.g. to record
+ *    how far it got).
+ * </p>
+ * 
+ * <p>
  *    The primary use case is a single threaded workflow for now.  I.e. while
  *    the structure of the workflow allows a provider to feed multiple
  *    consumers, the behavior of this isn't yet well tested (e.g. what happens
@@ -45,12 +65,124 @@ import com.brightcove.opensource.workflowengine.record.Property;
  *    That use case is at your own risk for now.
  * </p>
  * 
+ * <p>
+ *    Setting the workflow property execution-mode to "pipelined" runs each
+ *    actor that has providers on its own thread, with a bounded queue
+ *    (queue-size records, 1000 if omitted) between it and its providers.
+ *    Records from any one provider reach a consumer in the order they were
+ *    sent, but records from different providers may be interleaved.  Once
+ *    the terminal actors return from run(), each queue is drained (and each
+ *    actor's held back batch flushed) in provider-before-consumer order, and
+ *    only then is finalize() called on the actors - from the thread that
+ *    called run() on the workflow.
+ * </p>
+ * 
+ * <p>
+ *    An actor can be split into several instances with the parallelism and
+ *    partition-by attributes of its actor element (see PartitionedActor).
+ *    Since each instance runs on its own thread, a workflow with partitioned
+ *    actors always runs pipelined.
+ * </p>
+ * 
+ * <p>
+ *    The following workflow properties will be honored:<ul>
+ *        <li>execution-mode - "sequential" (default) or "pipelined"</li>
+ *        <li>queue-size - Maximum records queued for each actor in
+ *            pipelined mode</li>
+ *        <li>log-mode - "sync" (default) to log on the calling thread, or
+ *            "async" to hand messages logged while the workflow runs to a
+ *            background thread (see AsyncLogAppender)</li>
+ *        <li>log-buffer-size - Number of messages the async log buffer
+ *            holds before callers wait for it (8192 if omitted)</li>
+ *        <li>checkpoint-file - File to keep the workflow's latest
+ *            checkpoint in (no checkpoints are taken if omitted)</li>
+ *        <li>checkpoint-interval - Number of records a source actor passes
+ *            on between checkpoints (100000 if omitted)</li>
+ *        <li>dead-letter-actor - Name of the actor failed records are
+ *            passed to (failed records are logged if omitted)</li>
+ *        <li>max-failures - Number of failed records any one actor may
+ *            have - the workflow is stopped at the next one (no limit if
+ *            omitted)</li>
+ *        <li>max-failure-rate - Fraction (0 to 1) of the records any one
+ *            actor is passed that may fail before the workflow is stopped
+ *            (no limit if omitted)</li>
+ *        <li>failure-rate-min-records - Number of records an actor must
+ *            have been passed before max-failure-rate applies to it (100
+ *            if omitted)</li>
+ *        <li>metrics-sample-rate - Time one record in this many for the
+ *            actors' metrics (16 if omitted, see ActorMetrics)</li>
+ *    </ul>
+ * </p>
+ * 
+ * <p>
+ *    With checkpoint-file set, source actors have the workflow take a
+ *    checkpoint every checkpoint-interval records (see
+ *    Actor.checkpointIfDue()).  The records already passed on are pushed
+ *    through the whole workflow first - held back batches are flushed and,
+ *    when pipelined, every queue is drained - and then each actor, in flow
+ *    order, is asked for its checkpoint state (see Actor.checkpoint()).
+ *    The states are written to checkpoint-file together, replacing the
+ *    previous checkpoint in one step.  A run that dies leaves its last
+ *    checkpoint behind; a run that completes deletes it.  Calling
+ *    setResume() (the --resume command line flag) before run() has the
+ *    actors carry on from that checkpoint.  Records passed on after the
+ *    checkpoint are passed on again, so actors without a checkpoint of
+ *    their own (e.g. ones calling an API) may see a few records twice.
+ *    Without resuming, an old checkpoint is thrown away.
+ * </p>
+ * 
+ * <p>
+ *    Records that fail (see Actor.failRecord()) don't stop the workflow
+ *    until an actor goes over max-failures or max-failure-rate.  Each one
+ *    is passed to the dead-letter-actor, if there is one, with
+ *    failed-actor and failure-reason properties added - e.g. an
+ *    OutputAdapter writing them to a file of their own.  The
+ *    dead-letter-actor mustn't be wired to any provider or consumer.  It
+ *    is started before the other actors, handed failed records from
+ *    whichever thread they fail on (one at a time), checkpointed after
+ *    them and finalized after them.
+ * </p>
+ * 
+ * <p>
+ *    While run() is going, every actor's ActorMetrics are published over
+ *    JMX, and once the workflow completes they are logged as a table -
+ *    records in and out, failures, time spent in each actor (less the
+ *    time spent in other actors) and per-record latencies.
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class Workflow {
-	private List<Actor> actors;
-	private Logger      logger;
+	public static final String  EXECUTION_MODE_SEQUENTIAL   = "sequential";
+	public static final String  EXECUTION_MODE_PIPELINED    = "pipelined";
+	public static final Integer DEFAULT_QUEUE_SIZE          = 1000;
+	public static final String  LOG_MODE_SYNC               = "sync";
+	public static final String  LOG_MODE_ASYNC              = "async";
+	public static final Integer DEFAULT_LOG_BUFFER_SIZE     = 8192;
+	public static final Long    DEFAULT_CHECKPOINT_INTERVAL = 100000l;
+	public static final Long    DEFAULT_FAILURE_RATE_MIN    = 100l;
+	public static final String  FAILED_ACTOR_PROPERTY       = "failed-actor";
+	public static final String  FAILURE_REASON_PROPERTY     = "failure-reason";
+	
+	private static Logger sharedLogger = null;
+	
+	private List<Actor>             actors;
+	private List<Property<String>>  properties;
+	private Logger                  logger;
+	private AsyncLogAppender        appender;
+	private Boolean                 resume;
+	private File                    checkpointFile;
+	private Long                    checkpointInterval;
+	private Properties              resumeState;
+	private Map<Actor, ActorWorker> workers;
+	private Actor                   deadLetterActor;
+	private Object                  deadLetterLock;
+	private Boolean                 deadLettersFinalized;
+	private Long                    maxFailures;
+	private Double                  maxFailureRate;
+	private Long                    failureRateMin;
+	private Boolean                 exitOnDie;
 	
 	/**
 	 * <p>
@@ -59,12 +191,38 @@ public class Workflow {
 	 * 
 	 */
 	public Workflow(){
+		logger    = getSharedLogger();
+		exitOnDie = true;
 		init();
 	}
 	
+	// Set up once - LogUtils replaces a logger's handlers each time it's
+	// asked for it, which would drop or double the messages of workflows
+	// already running in the same JVM
+	private static synchronized Logger getSharedLogger(){
+		if(sharedLogger == null){
+			sharedLogger = LogUtils.getLogger(Workflow.class.getCanonicalName());
+		}
+		return sharedLogger;
+	}
+	
 	private void init(){
-		actors = new ArrayList<Actor>();
-		logger = LogUtils.getLogger(this.getClass().getCanonicalName());
+		actors     = new ArrayList<Actor>();
+		properties = new ArrayList<Property<String>>();
+		appender   = null;
+		
+		resume             = false;
+		checkpointFile     = null;
+		checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+		resumeState        = null;
+		workers            = null;
+		
+		deadLetterActor      = null;
+		deadLetterLock       = new Object();
+		deadLettersFinalized = false;
+		maxFailures          = null;
+		maxFailureRate       = null;
+		failureRateMin       = DEFAULT_FAILURE_RATE_MIN;
 	}
 	
 	/**
@@ -78,6 +236,76 @@ public class Workflow {
 		this.actors.add(actor);
 	}
 	
+	/**
+	 * <p>
+	 *    Adds a workflow-level configuration parameter
+	 * </p>
+	 * 
+	 * @param property Configuration key=value pair
+	 */
+	public void addProperty(Property<String> property){
+		this.properties.add(property);
+	}
+	
+	/**
+	 * <p>
+	 *    Gets the value of the first workflow-level config property found
+	 *    with the name specified.
+	 * </p>
+	 * 
+	 * @param name Name of property to search for
+	 * @return Value of property if found, otherwise null
+	 */
+	public String getFirstPropertyValue(String name){
+		for(Property<String> property : properties){
+			if((property != null) && (property.getName() != null) && property.getName().equals(name)){
+				return property.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>
+	 *    Sets whether run() should carry on from the checkpoint left by an
+	 *    earlier run that didn't complete, rather than start over
+	 * </p>
+	 * 
+	 * @param resume True to resume from the last checkpoint
+	 */
+	public void setResume(Boolean resume){
+		this.resume = resume;
+	}
+	
+	/**
+	 * <p>
+	 *    Sets the logger the workflow (and its actors) write to, in place of
+	 *    the shared one for the class - e.g. to give each of several
+	 *    workflows run in the same JVM a log of its own
+	 * </p>
+	 * 
+	 * @param logger Logger to write to
+	 */
+	public void setLogger(Logger logger){
+		this.logger = logger;
+	}
+	
+	/**
+	 * <p>
+	 *    Sets whether die() ends the JVM (the default), or only this
+	 *    workflow, by throwing a WorkflowException out of run() - for
+	 *    callers that run more than one workflow in the same JVM.  Every
+	 *    actor that had started is aborted (see Actor.abort()) before the
+	 *    exception leaves run(), so its files and threads aren't left
+	 *    behind.
+	 * </p>
+	 * 
+	 * @param exitOnDie False to throw a WorkflowException instead of exiting
+	 */
+	public void setExitOnDie(Boolean exitOnDie){
+		this.exitOnDie = exitOnDie;
+	}
+	
 	/**
 	 * <p>
 	 *    Starts the workflow.  All of the terminal actors will be run, which
@@ -85,15 +313,650 @@ public class Workflow {
 	 * </p>
 	 */
 	public void run(){
+		startLogAppender();
+		try{
+			// A bad metrics-sample-rate dies here, so it's inside the try
+			// for the appender to be flushed on the way out
+			registerMetrics();
+			startCheckpoints();
+			startFailureHandling();
+			runActors();
+			logMetrics();
+			
+			// Completed - there's nothing left to resume
+			if((checkpointFile != null) && checkpointFile.exists() && (! checkpointFile.delete())){
+				logError("Couldn't delete checkpoint file '" + checkpointFile + "'.");
+			}
+		}
+		finally{
+			unregisterMetrics();
+			stopLogAppender();
+		}
+	}
+	
+	private void runActors(){
+		String executionMode = getFirstPropertyValue("execution-mode");
+		for(Actor actor : actors){
+			if((actor instanceof PartitionedActor) && (! EXECUTION_MODE_PIPELINED.equalsIgnoreCase(executionMode))){
+				// Parallel instances need threads of their own
+				log("Workflow has partitioned actor '" + actor.getName() + "', running pipelined.");
+				executionMode = EXECUTION_MODE_PIPELINED;
+			}
+		}
+		
+		if(deadLetterActor != null){
+			// Ready before anything can fail
+			deadLettersFinalized = false;
+			deadLetterActor.run();
+		}
+		
+		try{
+			if((executionMode == null) || EXECUTION_MODE_SEQUENTIAL.equalsIgnoreCase(executionMode)){
+				runTerminalActors();
+				
+				for(Actor actor : getActorsInFlowOrder()){
+					actor.flushRecords();
+				}
+			}
+			else if(EXECUTION_MODE_PIPELINED.equalsIgnoreCase(executionMode)){
+				runPipelined();
+			}
+			else{
+				die("Unknown execution-mode '" + executionMode + "'.  Expected '" + EXECUTION_MODE_SEQUENTIAL + "' or '" + EXECUTION_MODE_PIPELINED + "'.");
+			}
+		}
+		catch(RuntimeException re){
+			// Only reached when die() doesn't exit, so the JVM carries on and
+			// the files, threads and pools the actors hold must be let go
+			finalizeActors(true);
+			throw re;
+		}
+		
+		finalizeActors(false);
+	}
+	
+	private void finalizeActors(Boolean failed){
+		// Consumers are finalized before their providers, so by the time a
+		// provider is finalized everything it passed on has been dealt with,
+		// and the dead-letter actor goes last, as any of them may fail records
+		List<Actor> flowOrder = getActorsInFlowOrder();
+		for(int idx=flowOrder.size()-1; idx>=0; idx--){
+			if(flowOrder.get(idx) != deadLetterActor){
+				finalizeActor(flowOrder.get(idx), failed);
+			}
+		}
+		finalizeDeadLetters(failed);
+	}
+	
+	// Once only - recordFailed() finalizes the dead-letter actor itself
+	// before stopping the workflow, which may then finalize it again
+	private void finalizeDeadLetters(Boolean failed){
+		if(deadLetterActor == null){
+			return;
+		}
+		synchronized(deadLetterLock){
+			if(! deadLettersFinalized){
+				deadLettersFinalized = true;
+				finalizeActor(deadLetterActor, failed);
+			}
+		}
+	}
+	
+	private void finalizeActor(Actor actor, Boolean failed){
+		if(! failed){
+			actor.finalize();
+			return;
+		}
+		
+		// After a failure every actor that has been run gets its chance to
+		// clean up, whatever the others throw
+		if(actor.hasStarted() || actor.hasEntered()){
+			try{
+				actor.abort();
+			}
+			catch(WorkflowException we){
+				// Already logged by die()
+			}
+			catch(RuntimeException re){
+				logError("Couldn't finalize actor '" + actor.getName() + "' after the workflow failed.  Exception caught: '" + re + "'.");
+			}
+		}
+	}
+	
+	private void runTerminalActors(){
 		// Start all the end points, and let them start their providers
 		for(Actor actor : actors){
 			if(! actor.hasConsumers()){
-				actor.run();
+				actor.runTimed();
+			}
+		}
+	}
+	
+	private void runPipelined(){
+		Integer queueSize     = DEFAULT_QUEUE_SIZE;
+		String  queueSizeProp = getFirstPropertyValue("queue-size");
+		if(queueSizeProp != null){
+			try{
+				queueSize = Integer.parseInt(queueSizeProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse queue-size '" + queueSizeProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(queueSize < 1){
+				die("queue-size must be at least 1 (was " + queueSize + ").");
+			}
+		}
+		
+		List<Actor> flowOrder = getActorsInFlowOrder();
+		workers = new HashMap<Actor, ActorWorker>();
+		for(Actor actor : flowOrder){
+			for(Consumer consumer : actor.getConsumers()){
+				if((consumer instanceof Actor) && (! workers.containsKey(consumer))){
+					workers.put((Actor)consumer, new ActorWorker((Actor)consumer, queueSize));
+				}
+			}
+		}
+		
+		// Providers hand records to the consumer's worker rather than to the consumer
+		for(Actor actor : flowOrder){
+			List<Consumer> consumers = actor.getConsumers();
+			for(int idx=0; idx<consumers.size(); idx++){
+				ActorWorker worker = workers.get(consumers.get(idx));
+				if(worker != null){
+					consumers.set(idx, worker);
+				}
+			}
+		}
+		
+		for(ActorWorker worker : workers.values()){
+			worker.start();
+		}
+		
+		try{
+			runTerminalActors();
+		}
+		finally{
+			// Providers are drained before their consumers, so once a worker is
+			// told it's finished nothing else can be queued to it
+			for(Actor actor : flowOrder){
+				ActorWorker worker = workers.get(actor);
+				if(worker == null){
+					actor.flushRecords();
+				}
+				else{
+					try {
+						worker.finish();
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						die("Interrupted while waiting for actor '" + actor.getName() + "' to finish.");
+					}
+				}
+			}
+			
+			for(Actor actor : flowOrder){
+				List<Consumer> consumers = actor.getConsumers();
+				for(int idx=0; idx<consumers.size(); idx++){
+					if(consumers.get(idx) instanceof ActorWorker){
+						consumers.set(idx, ((ActorWorker)consumers.get(idx)).getActor());
+					}
+				}
+			}
+		}
+		
+		Map<Actor, ActorWorker> finished = workers;
+		workers = null;
+		for(Actor actor : flowOrder){
+			ActorWorker worker = finished.get(actor);
+			if((worker != null) && (worker.getFailure() instanceof WorkflowException)){
+				// Stopped by die(), which has already said why
+				throw (WorkflowException)worker.getFailure();
+			}
+			if((worker != null) && (worker.getFailure() != null)){
+				throw new RuntimeException("Actor '" + actor.getName() + "' failed in pipelined workflow.", worker.getFailure());
+			}
+		}
+	}
+	
+	private void registerMetrics(){
+		Integer sampleRate     = ActorMetrics.DEFAULT_SAMPLE_RATE;
+		String  sampleRateProp = getFirstPropertyValue("metrics-sample-rate");
+		if(sampleRateProp != null){
+			try{
+				sampleRate = Integer.parseInt(sampleRateProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse metrics-sample-rate '" + sampleRateProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(sampleRate < 1){
+				die("metrics-sample-rate must be at least 1 (was " + sampleRate + ").");
 			}
 		}
 		
+		String workflowId = Integer.toHexString(System.identityHashCode(this));
 		for(Actor actor : actors){
-			actor.finalize();
+			actor.getMetrics().setSampleRate(sampleRate);
+			actor.getMetrics().register(workflowId, actor.getName());
+		}
+	}
+	
+	private void unregisterMetrics(){
+		for(Actor actor : actors){
+			actor.getMetrics().unregister();
+		}
+	}
+	
+	private void logMetrics(){
+		if(! isLogEnabled()){
+			return;
+		}
+		
+		String format = "%-24s %12s %12s %8s %10s %10s %10s %10s";
+		log(String.format(format, "Actor", "Records in", "Records out", "Failed", "Handle ms", "Run ms", "p50 us", "p99 us"));
+		for(Actor actor : getActorsInFlowOrder()){
+			ActorMetrics metrics = actor.getMetrics();
+			log(String.format(format, actor.getName(), metrics.getRecordsIn(), metrics.getRecordsOut(), metrics.getErrors(), metrics.getHandleTimeMillis(), metrics.getRunTimeMillis(), String.format("%.1f", metrics.getMedianLatencyMicros()), String.format("%.1f", metrics.getP99LatencyMicros())));
+		}
+	}
+	
+	private void startCheckpoints(){
+		String checkpointFileProp = getFirstPropertyValue("checkpoint-file");
+		if(checkpointFileProp == null){
+			if(resume){
+				die("Can't resume a workflow without a checkpoint-file property.");
+			}
+			return;
+		}
+		checkpointFile = new File(checkpointFileProp);
+		
+		String checkpointIntervalProp = getFirstPropertyValue("checkpoint-interval");
+		if(checkpointIntervalProp != null){
+			try{
+				checkpointInterval = Long.parseLong(checkpointIntervalProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse checkpoint-interval '" + checkpointIntervalProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(checkpointInterval < 1){
+				die("checkpoint-interval must be at least 1 (was " + checkpointInterval + ").");
+			}
+		}
+		
+		if(! checkpointFile.exists()){
+			if(resume){
+				log("No checkpoint found in '" + checkpointFile + "', starting from the beginning.");
+			}
+			return;
+		}
+		
+		if(! resume){
+			// A fresh run - an old checkpoint doesn't match anything it writes
+			log("Discarding old checkpoint '" + checkpointFile + "'.");
+			if(! checkpointFile.delete()){
+				die("Couldn't delete old checkpoint file '" + checkpointFile + "'.");
+			}
+			return;
+		}
+		
+		resumeState = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(checkpointFile);
+			resumeState.load(in);
+		}
+		catch (IOException ioe) {
+			die("Couldn't read checkpoint file '" + checkpointFile + "'.  Exception caught: '" + ioe + "'.");
+		}
+		finally {
+			if(in != null){
+				try {
+					in.close();
+				}
+				catch (IOException ioe) {
+					// Already read
+				}
+			}
+		}
+		log("Resuming from checkpoint taken " + new Date(Long.parseLong(resumeState.getProperty("checkpoint-time", "0"))) + ".");
+	}
+	
+	private void startFailureHandling(){
+		String deadLetterProp = getFirstPropertyValue("dead-letter-actor");
+		if(deadLetterProp != null){
+			for(Actor actor : actors){
+				if(deadLetterProp.equals(actor.getName())){
+					deadLetterActor = actor;
+				}
+			}
+			if(deadLetterActor == null){
+				die("dead-letter-actor '" + deadLetterProp + "' isn't an actor in the workflow.");
+			}
+			if(deadLetterActor.hasConsumers()){
+				die("dead-letter-actor '" + deadLetterProp + "' can't have consumers.");
+			}
+			for(Actor actor : actors){
+				if(actor.getConsumers().contains(deadLetterActor)){
+					die("dead-letter-actor '" + deadLetterProp + "' can't be a consumer of actor '" + actor.getName() + "'.");
+				}
+			}
+		}
+		
+		String maxFailuresProp = getFirstPropertyValue("max-failures");
+		if(maxFailuresProp != null){
+			try{
+				maxFailures = Long.parseLong(maxFailuresProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse max-failures '" + maxFailuresProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(maxFailures < 0){
+				die("max-failures can't be negative (was " + maxFailures + ").");
+			}
+		}
+		
+		String maxFailureRateProp = getFirstPropertyValue("max-failure-rate");
+		if(maxFailureRateProp != null){
+			try{
+				maxFailureRate = Double.parseDouble(maxFailureRateProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse max-failure-rate '" + maxFailureRateProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if((maxFailureRate < 0) || (maxFailureRate > 1)){
+				die("max-failure-rate must be between 0 and 1 (was " + maxFailureRate + ").");
+			}
+		}
+		
+		String failureRateMinProp = getFirstPropertyValue("failure-rate-min-records");
+		if(failureRateMinProp != null){
+			try{
+				failureRateMin = Long.parseLong(failureRateMinProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse failure-rate-min-records '" + failureRateMinProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Deals with a record an actor has failed (see Actor.failRecord()):
+	 *    passes it to the dead-letter-actor, or logs it, and stops the
+	 *    workflow if the actor has now failed too many records.
+	 * </p>
+	 * 
+	 * @param actor Actor the record failed in
+	 * @param record Record that failed
+	 * @param reason Why it failed
+	 * @param failures Number of records the actor has failed, this one included
+	 * @param received Number of records the actor has been passed
+	 */
+	void recordFailed(Actor actor, Record record, String reason, Long failures, Long received){
+		if(deadLetterActor == null){
+			logError("Actor '" + actor.getName() + "' failed record (" + reason + "): '" + record + "'.");
+		}
+		else{
+			Record failed = new Record();
+			if(record != null){
+				for(Property<?> property : record.getAllProperties()){
+					failed.addProperty(property);
+				}
+			}
+			failed.addProperty(new Property<String>(FAILED_ACTOR_PROPERTY, actor.getName()));
+			failed.addProperty(new Property<String>(FAILURE_REASON_PROPERTY, reason));
+			
+			synchronized(deadLetterLock){
+				deadLetterActor.handleRecord(failed);
+			}
+		}
+		
+		String tooMany = null;
+		if((maxFailures != null) && (failures > maxFailures)){
+			tooMany = "max-failures is " + maxFailures;
+		}
+		else if((maxFailureRate != null) && (received >= failureRateMin) && (failures > (maxFailureRate * received))){
+			tooMany = "max-failure-rate is " + maxFailureRate;
+		}
+		if(tooMany != null){
+			// Keep what made it to the dead letters, even if die() exits
+			finalizeDeadLetters(false);
+			die("Actor '" + actor.getName() + "' has failed " + failures + " of " + received + " record(s) (" + tooMany + "), stopping workflow.");
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Returns true if the workflow takes checkpoints
+	 * </p>
+	 * 
+	 * @return True if checkpoint-file is set
+	 */
+	public Boolean isCheckpointing(){
+		return checkpointFile != null;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the number of records a source actor passes on between
+	 *    checkpoints
+	 * </p>
+	 * 
+	 * @return Checkpoint interval in records
+	 */
+	public Long getCheckpointInterval(){
+		return checkpointInterval;
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the state the actor specified put into the checkpoint being
+	 *    resumed from
+	 * </p>
+	 * 
+	 * @param actor Actor to get the state of
+	 * @return Actor's checkpoint state, or null if not resuming or the actor saved none
+	 */
+	public Map<String, String> getResumeState(Actor actor){
+		if((resumeState == null) || (actor.getName() == null)){
+			return null;
+		}
+		
+		String              prefix = actor.getName() + ".";
+		Map<String, String> state  = new HashMap<String, String>();
+		for(String key : resumeState.stringPropertyNames()){
+			if(key.startsWith(prefix)){
+				state.put(key.substring(prefix.length()), resumeState.getProperty(key));
+			}
+		}
+		if(state.isEmpty()){
+			return null;
+		}
+		return state;
+	}
+	
+	/**
+	 * <p>
+	 *    Takes a checkpoint: pushes every record passed on so far through the
+	 *    workflow, gathers each actor's checkpoint state and saves it to
+	 *    checkpoint-file.  Called by source actors (see
+	 *    Actor.checkpointIfDue()), between records.
+	 * </p>
+	 */
+	public synchronized void checkpoint(){
+		if(checkpointFile == null){
+			return;
+		}
+		
+		// Records failed while the others checkpoint belong in this checkpoint
+		List<Actor> flowOrder = getActorsInFlowOrder();
+		if(deadLetterActor != null){
+			flowOrder.remove(deadLetterActor);
+			flowOrder.add(deadLetterActor);
+		}
+		
+		Properties state = new Properties();
+		for(Actor actor : flowOrder){
+			Map<String, String> actorState = new HashMap<String, String>();
+			ActorWorker         worker     = null;
+			if(workers != null){
+				worker = workers.get(actor);
+			}
+			
+			if(actor == deadLetterActor){
+				synchronized(deadLetterLock){
+					actor.checkpoint(actorState);
+				}
+			}
+			else if(worker == null){
+				actor.flushRecords();
+				actor.checkpoint(actorState);
+			}
+			else{
+				try {
+					if(! worker.checkpoint(actorState)){
+						logError("Actor '" + actor.getName() + "' has failed, checkpoint not taken.");
+						return;
+					}
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					die("Interrupted while waiting for actor '" + actor.getName() + "' to checkpoint.");
+				}
+			}
+			
+			if(actorState.isEmpty()){
+				continue;
+			}
+			if(actor.getName() == null){
+				die("Only named actors can be checkpointed.");
+			}
+			for(Map.Entry<String, String> entry : actorState.entrySet()){
+				state.setProperty(actor.getName() + "." + entry.getKey(), entry.getValue());
+			}
+		}
+		state.setProperty("checkpoint-time", "" + System.currentTimeMillis());
+		
+		// Written alongside and then moved into place, so a crash leaves
+		// either the old checkpoint or the new one
+		File         tempFile = null;
+		OutputStream out      = null;
+		try {
+			tempFile = File.createTempFile(checkpointFile.getName() + ".", ".tmp", checkpointFile.getAbsoluteFile().getParentFile());
+			out      = new FileOutputStream(tempFile);
+			state.store(out, "Workflow checkpoint");
+			out.close();
+			out = null;
+			
+			try {
+				Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse) {
+				Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException ioe) {
+			die("Couldn't write checkpoint file '" + checkpointFile + "'.  Exception caught: '" + ioe + "'.");
+		}
+		finally {
+			if(out != null){
+				try {
+					out.close();
+				}
+				catch (IOException ioe) {
+					// Already failed
+				}
+			}
+			if(tempFile != null){
+				// Left behind only if it wasn't moved into place
+				tempFile.delete();
+			}
+		}
+		log("Checkpoint saved to '" + checkpointFile + "'.");
+	}
+	
+	/**
+	 * <p>
+	 *    Returns all actors ordered so that every actor comes before the
+	 *    actors it passes records to.  Cycles are broken arbitrarily.
+	 * </p>
+	 * 
+	 * @return Actors in the order records flow through them
+	 */
+	List<Actor> getActorsInFlowOrder(){
+		List<Actor> postOrder = new ArrayList<Actor>();
+		Set<Actor>  visited   = new HashSet<Actor>();
+		for(Actor actor : actors){
+			visitInFlowOrder(actor, visited, postOrder);
+		}
+		
+		List<Actor> ordered = new ArrayList<Actor>();
+		for(int idx=postOrder.size()-1; idx>=0; idx--){
+			ordered.add(postOrder.get(idx));
+		}
+		return ordered;
+	}
+	
+	private void visitInFlowOrder(Actor actor, Set<Actor> visited, List<Actor> postOrder){
+		if(! visited.add(actor)){
+			return;
+		}
+		for(Consumer consumer : actor.getConsumers()){
+			if(consumer instanceof Actor){
+				visitInFlowOrder((Actor)consumer, visited, postOrder);
+			}
+			else if(consumer instanceof ActorWorker){
+				visitInFlowOrder(((ActorWorker)consumer).getActor(), visited, postOrder);
+			}
+		}
+		postOrder.add(actor);
+	}
+	
+	/**
+	 * <p>
+	 *    Puts an actor in place of another before the workflow is run.  The
+	 *    replacement takes over the name, providers and consumers of the
+	 *    actor it replaces.  A partitioned actor is replaced along with its
+	 *    instances, the replacement passing records straight on to the
+	 *    consumers of the instances.
+	 * </p>
+	 * 
+	 * @param actor Actor to replace
+	 * @param replacement Actor to put in its place
+	 */
+	void replaceActor(Actor actor, Actor replacement){
+		List<Actor>    replaced  = new ArrayList<Actor>();
+		List<Provider> providers = actor.getProviders();
+		List<Consumer> consumers = new ArrayList<Consumer>();
+		replaced.add(actor);
+		if(actor instanceof PartitionedActor){
+			// The instances hold the providers and consumers
+			providers = ((PartitionedActor)actor).getInstances().get(0).getProviders();
+			for(Actor instance : ((PartitionedActor)actor).getInstances()){
+				replaced.add(instance);
+				for(Consumer consumer : instance.getConsumers()){
+					if(! consumers.contains(consumer)){
+						consumers.add(consumer);
+					}
+				}
+			}
+		}
+		else{
+			consumers.addAll(actor.getConsumers());
+		}
+	
+		replacement.setName(actor.getName());
+		for(Provider provider : providers){
+			replacement.addProvider(provider);
+		}
+		for(Consumer consumer : consumers){
+			replacement.addConsumer(consumer);
+		}
+	
+		actors.set(actors.indexOf(actor), replacement);
+		actors.removeAll(replaced);
+		for(Actor other : actors){
+			Collections.replaceAll(other.getProviders(), actor, replacement);
+			Collections.replaceAll(other.getConsumers(), actor, replacement);
 		}
 	}
 	
@@ -102,12 +965,44 @@ public class Workflow {
 	 *    Creates a new workflow from an XML configuration file.
 	 * <p>
 	 * 
+	 * <p>
+	 *    The file is read in a single streaming pass.  Provider and consumer
+	 *    references are wired up once the whole file has been read, so they
+	 *    may name actors further down the file.  Actors with an ActorFactory
+	 *    (looked up by class name or alias) are created by it, and have
+	 *    their configuration checked against the properties it lists; other
+	 *    actor classes are created by reflection.
+	 * </p>
+	 * 
+	 * @param xmlFile XML configuration file
+	 * @return Workflow object
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws InstantiationException
+	 * @throws IllegalAccessException
+	 * @throws SecurityException
+	 * @throws NoSuchMethodException
+	 * @throws IllegalArgumentException
+	 * @throws InvocationTargetException
+	 */
+	public Workflow fromXML(File xmlFile) throws XMLStreamException, IOException, ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException, IllegalArgumentException, InvocationTargetException {
+		return fromXML(xmlFile, null);
+	}
+	
+	/**
+	 * <p>
+	 *    Creates a new workflow from an XML configuration file, as
+	 *    fromXML(File) does, keeping what was read from it in a binary cache
+	 *    file.  Later calls for the same XML file (unchanged) load the cache
+	 *    instead, skipping the XML parsing and configuration checks.
+	 * </p>
+	 * 
 	 * @param xmlFile XML configuration file
+	 * @param cacheFile Cache file (none is kept if null)
 	 * @return Workflow object
-	 * @throws ParserConfigurationException
-	 * @throws SAXException
+	 * @throws XMLStreamException
 	 * @throws IOException
-	 * @throws TransformerException
 	 * @throws ClassNotFoundException
 	 * @throws InstantiationException
 	 * @throws IllegalAccessException
@@ -116,77 +1011,383 @@ public class Workflow {
 	 * @throws IllegalArgumentException
 	 * @throws InvocationTargetException
 	 */
-	public Workflow fromXML(File xmlFile) throws ParserConfigurationException, SAXException, IOException, TransformerException, ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException, IllegalArgumentException, InvocationTargetException {
+	public Workflow fromXML(File xmlFile, File cacheFile) throws XMLStreamException, IOException, ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException, IllegalArgumentException, InvocationTargetException {
 		init();
 		
-		Document   doc        = XalanUtils.parseXml(xmlFile, false);
-		Element    root       = doc.getDocumentElement();
-		List<Node> actorNodes = XalanUtils.getNodesFromXPath(root, "/workflow/actor");
-		
-		Map<String, Actor> actorsMap = new HashMap<String, Actor>();
-		for(Node actorNode : actorNodes){
-			String         actorClassName = XalanUtils.getStringFromXPath(actorNode, "@class");
-			String         actorName      = XalanUtils.getStringFromXPath(actorNode, "@name");
-			Constructor<?> constructor    = Class.forName(actorClassName).getConstructor(Workflow.class);			
-			Actor          actor          = null;
-			
+		WorkflowDefinition definition = null;
+		if(cacheFile != null){
 			try{
-				actor = (Actor)constructor.newInstance(this);
+				definition = WorkflowCache.read(cacheFile, xmlFile);
 			}
-			catch(InvocationTargetException ite){
-				die("Couldn't create actor '" + actorClassName + "' (" + actorClassName + ").  InvocationTargetException caught: '" + ite + "' (" + ite.getCause() + ").");
+			catch(IOException ioe){
+				logError("Couldn't read workflow cache '" + cacheFile + "', reading '" + xmlFile + "' instead.  Exception caught: '" + ioe + "'.");
 			}
+		}
+		
+		if(definition == null){
+			definition = readCheckedDefinition(xmlFile);
 			
-			// Class<?> actorClass     = Class.forName(actorClassName);
-			// Actor    actor          = (Actor)actorClass.newInstance(this);
-			
-			actorsMap.put(actorName, actor);
-			
-			List<Node> propertyNodes = XalanUtils.getNodesFromXPath(actorNode, "property");
-			for(Node propertyNode : propertyNodes){
-				String           propName = XalanUtils.getStringFromXPath(propertyNode, "@name");
-				String           propVal  = XalanUtils.getStringFromXPath(propertyNode, ".");
-				Property<String> prop     = new Property<String>(propName, propVal);
-				actor.addProperty(prop);
+			if(cacheFile != null){
+				try{
+					WorkflowCache.write(cacheFile, xmlFile, definition);
+				}
+				catch(IOException ioe){
+					logError("Couldn't write workflow cache '" + cacheFile + "'.  Exception caught: '" + ioe + "'.");
+				}
+			}
+		}
+		
+		buildDefinition(definition);
+		return this;
+	}
+	
+	/**
+	 * <p>
+	 *    Reads and checks an XML configuration file without building the
+	 *    workflow, so the definition can be built into more than one
+	 *    Workflow (see fromDefinition())
+	 * </p>
+	 * 
+	 * @param xmlFile XML configuration file
+	 * @return Definition read from the file
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	WorkflowDefinition readCheckedDefinition(File xmlFile) throws XMLStreamException, IOException {
+		WorkflowDefinition definition = readDefinition(xmlFile);
+		checkDefinition(definition);
+		return definition;
+	}
+	
+	/**
+	 * <p>
+	 *    Populates a Workflow from a definition read earlier with
+	 *    readCheckedDefinition(), creating new actors for it
+	 * </p>
+	 * 
+	 * @param definition Definition to build
+	 * @return Workflow object
+	 * @throws ClassNotFoundException
+	 * @throws InstantiationException
+	 * @throws IllegalAccessException
+	 * @throws NoSuchMethodException
+	 * @throws IllegalArgumentException
+	 */
+	Workflow fromDefinition(WorkflowDefinition definition) throws ClassNotFoundException, InstantiationException, IllegalAccessException, NoSuchMethodException, IllegalArgumentException {
+		init();
+		buildDefinition(definition);
+		return this;
+	}
+	
+	private WorkflowDefinition readDefinition(File xmlFile) throws XMLStreamException, IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		
+		WorkflowDefinition definition = new WorkflowDefinition();
+		InputStream        in         = new BufferedInputStream(new FileInputStream(xmlFile));
+		try{
+			XMLStreamReader reader   = factory.createXMLStreamReader(in);
+			Boolean         workflow = false;
+			ActorDefinition actor    = null;
+			Integer         depth    = 0;
+			while(reader.hasNext()){
+				int event = reader.next();
+				if(event == XMLStreamConstants.END_ELEMENT){
+					if(depth == 2){
+						actor = null;
+					}
+					depth--;
+					continue;
+				}
+				if(event != XMLStreamConstants.START_ELEMENT){
+					continue;
+				}
+				
+				depth++;
+				String element = reader.getLocalName();
+				if(depth == 1){
+					workflow = "workflow".equals(element);
+				}
+				else if((depth == 2) && workflow && "property".equals(element)){
+					String propName = reader.getAttributeValue(null, "name");
+					definition.properties.add(new Property<String>(propName, readText(reader)));
+					depth--;
+				}
+				else if((depth == 2) && workflow && "actor".equals(element)){
+					actor             = new ActorDefinition();
+					actor.className   = reader.getAttributeValue(null, "class");
+					actor.name        = reader.getAttributeValue(null, "name");
+					actor.parallelism = reader.getAttributeValue(null, "parallelism");
+					actor.partitionBy = reader.getAttributeValue(null, "partition-by");
+					definition.actors.add(actor);
+				}
+				else if((depth == 3) && (actor != null) && "property".equals(element)){
+					String propName = reader.getAttributeValue(null, "name");
+					actor.properties.add(new Property<String>(propName, readText(reader)));
+					depth--;
+				}
+				else if((depth == 3) && (actor != null) && "provider".equals(element)){
+					actor.providers.add(reader.getAttributeValue(null, "name"));
+				}
+				else if((depth == 3) && (actor != null) && "consumer".equals(element)){
+					actor.consumers.add(reader.getAttributeValue(null, "name"));
+				}
 			}
+			reader.close();
+		}
+		finally{
+			in.close();
 		}
 		
-		for(Node actorNode : actorNodes){
-			String     actorName = XalanUtils.getStringFromXPath(actorNode, "@name");
-			List<Node> providers = XalanUtils.getNodesFromXPath(actorNode, "provider");
-			List<Node> consumers = XalanUtils.getNodesFromXPath(actorNode, "consumer");
-			Actor      actor     = actorsMap.get(actorName);
+		return definition;
+	}
+	
+	// Text content of the element the reader is on (including that of any
+	// elements inside it), leaving the reader on its end tag
+	private String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text  = new StringBuilder();
+		Integer       depth = 1;
+		while(depth > 0){
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT){
+				depth++;
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT){
+				depth--;
+			}
+			else if((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE)){
+				text.append(reader.getText());
+			}
+		}
+		return text.toString();
+	}
+	
+	// Checks the configuration of actors created by factories against the
+	// properties the factories list
+	private void checkDefinition(WorkflowDefinition definition){
+		ActorFactoryRegistry registry = ActorFactoryRegistry.getDefault();
+		for(ActorDefinition actor : definition.actors){
+			ActorFactory factory = registry.getFactory(actor.className);
+			if(factory == null){
+				continue;
+			}
 			
-			for(Node providerNode : providers){
-				String providerName = XalanUtils.getStringFromXPath(providerNode, "@name");
-				Actor  provider     = actorsMap.get(providerName);
-				actor.addProvider(provider);
+			for(Property<String> property : actor.properties){
+				ActorProperty honored = findProperty(factory.getProperties(), property.getName());
+				if(honored == null){
+					honored = findProperty(Actor.PROPERTIES, property.getName());
+				}
+				if(honored == null){
+					die("Actor '" + actor.name + "' (" + factory.getAlias() + ") has unknown property '" + property.getName() + "'.");
+				}
+				
+				String problem = honored.validate(property.getValue());
+				if(problem != null){
+					die("Property '" + property.getName() + "' of actor '" + actor.name + "' " + problem + ".");
+				}
+			}
+		}
+	}
+	
+	private ActorProperty findProperty(List<ActorProperty> properties, String name){
+		for(ActorProperty property : properties){
+			if(property.getName().equals(name)){
+				return property;
 			}
+		}
+		return null;
+	}
+	
+	private void buildDefinition(WorkflowDefinition definition) throws ClassNotFoundException, NoSuchMethodException, InstantiationException, IllegalAccessException, IllegalArgumentException {
+		for(Property<String> property : definition.properties){
+			addProperty(property);
+		}
+		
+		Map<String, Actor> actorsMap = new LinkedHashMap<String, Actor>();
+		for(ActorDefinition actorDefinition : definition.actors){
+			Actor actor = createActor(actorDefinition.className, actorDefinition.name, actorDefinition.parallelism, actorDefinition.partitionBy);
+			for(Property<String> property : actorDefinition.properties){
+				actor.addProperty(property);
+			}
+			actorsMap.put(actorDefinition.name, actor);
+		}
+		
+		for(ActorDefinition actorDefinition : definition.actors){
+			Actor actor = actorsMap.get(actorDefinition.name);
+			for(String providerName : actorDefinition.providers){
+				actor.addProvider(findActor(actorsMap, actorDefinition.name, "provider", providerName));
+			}
+			for(String consumerName : actorDefinition.consumers){
+				actor.addConsumer(findActor(actorsMap, actorDefinition.name, "consumer", consumerName));
+			}
+		}
+		
+		for(Actor actor : actorsMap.values()){
+			addActor(actor);
 			
-			for(Node consumerNode : consumers){
-				String consumerName = XalanUtils.getStringFromXPath(consumerNode, "@name");
-				Actor  consumer     = actorsMap.get(consumerName);
-				actor.addConsumer(consumer);
+			if(actor instanceof PartitionedActor){
+				for(Actor instance : ((PartitionedActor)actor).getInstances()){
+					addActor(instance);
+				}
 			}
 		}
+	}
+	
+	private Actor findActor(Map<String, Actor> actorsMap, String actorName, String role, String name){
+		Actor actor = actorsMap.get(name);
+		if(actor == null){
+			die("Actor '" + actorName + "' has " + role + " '" + name + "', which isn't an actor in the workflow.");
+		}
+		return actor;
+	}
+	
+	private Actor createActor(String actorClassName, String actorName, String parallelismAttr, String partitionBy) throws ClassNotFoundException, NoSuchMethodException, InstantiationException, IllegalAccessException, IllegalArgumentException {
+		ActorFactory   factory     = ActorFactoryRegistry.getDefault().getFactory(actorClassName);
+		Constructor<?> constructor = null;
+		Actor          actor       = null;
+		if(factory == null){
+			constructor = Class.forName(actorClassName).getConstructor(Workflow.class);
+		}
 		
-		for(String actorName : actorsMap.keySet()){
-			addActor(actorsMap.get(actorName));
+		Integer parallelism = 1;
+		if((parallelismAttr != null) && (! "".equals(parallelismAttr.trim()))){
+			try{
+				parallelism = Integer.parseInt(parallelismAttr.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse parallelism '" + parallelismAttr + "' of actor '" + actorName + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(parallelism < 1){
+				die("parallelism of actor '" + actorName + "' must be at least 1 (was " + parallelism + ").");
+			}
+		}
+		if((partitionBy != null) && "".equals(partitionBy.trim())){
+			partitionBy = null;
 		}
 		
-		return this;
+		if(parallelism == 1){
+			actor = (factory != null) ? factory.createActor(this) : createActor(constructor, actorClassName);
+		}
+		else{
+			List<Actor> instances = new ArrayList<Actor>();
+			for(Integer idx=0; idx<parallelism; idx++){
+				Actor instance = (factory != null) ? factory.createActor(this) : createActor(constructor, actorClassName);
+				instance.setName(actorName + "-" + idx);
+				instances.add(instance);
+			}
+			actor = new PartitionedActor(this, partitionBy, instances);
+		}
+		
+		actor.setName(actorName);
+		return actor;
+	}
+	
+	private Actor createActor(Constructor<?> constructor, String actorClassName) throws InstantiationException, IllegalAccessException, IllegalArgumentException {
+		Actor actor = null;
+		
+		try{
+			actor = (Actor)constructor.newInstance(this);
+		}
+		catch(InvocationTargetException ite){
+			die("Couldn't create actor '" + actorClassName + "' (" + actorClassName + ").  InvocationTargetException caught: '" + ite + "' (" + ite.getCause() + ").");
+		}
+		
+		// Class<?> actorClass     = Class.forName(actorClassName);
+		// Actor    actor          = (Actor)actorClass.newInstance(this);
+		
+		return actor;
+	}
+	
+	private void startLogAppender(){
+		String logMode = getFirstPropertyValue("log-mode");
+		if((logMode == null) || LOG_MODE_SYNC.equalsIgnoreCase(logMode)){
+			return;
+		}
+		if(! LOG_MODE_ASYNC.equalsIgnoreCase(logMode)){
+			die("Unknown log-mode '" + logMode + "'.  Expected '" + LOG_MODE_SYNC + "' or '" + LOG_MODE_ASYNC + "'.");
+		}
+		
+		Integer bufferSize     = DEFAULT_LOG_BUFFER_SIZE;
+		String  bufferSizeProp = getFirstPropertyValue("log-buffer-size");
+		if(bufferSizeProp != null){
+			try{
+				bufferSize = Integer.parseInt(bufferSizeProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("Couldn't parse log-buffer-size '" + bufferSizeProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if((bufferSize < 1) || (bufferSize > (1 << 30))){
+				die("log-buffer-size must be between 1 and " + (1 << 30) + " (was " + bufferSize + ").");
+			}
+		}
+		
+		appender = new AsyncLogAppender(logger, bufferSize);
+	}
+	
+	private void stopLogAppender(){
+		if(appender != null){
+			appender.close();
+			appender = null;
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Returns true if informational messages are being logged, so callers
+	 *    can skip building messages that would be thrown away
+	 * </p>
+	 * 
+	 * @return True if log() messages are logged
+	 */
+	public Boolean isLogEnabled(){
+		return logger.isLoggable(Level.INFO);
 	}
 	
 	public void log(String message){
-		logger.info(message);
+		write(Level.INFO, message);
+	}
+	
+	/**
+	 * <p>
+	 *    Logs an informational message, only building it if informational
+	 *    messages are being logged
+	 * </p>
+	 * 
+	 * @param message Message to log
+	 */
+	public void log(LogMessage message){
+		if(isLogEnabled()){
+			write(Level.INFO, message.getMessage());
+		}
 	}
 	
 	public void logError(String message){
-		logger.severe(message);
+		write(Level.SEVERE, message);
 	}
 	
 	public void die(String message){
 		logError(message);
+		if(! exitOnDie){
+			// run() stops the appender on its way out
+			throw new WorkflowException(message);
+		}
+		// Make sure everything logged so far (including this) is written out
+		stopLogAppender();
 		System.exit(1);
 	}
+	
+	private void write(Level level, String message){
+		if(! logger.isLoggable(level)){
+			return;
+		}
+		
+		AsyncLogAppender current = appender;
+		if(current != null){
+			current.append(level, message);
+		}
+		else{
+			logger.log(level, message);
+		}
+	}
 }
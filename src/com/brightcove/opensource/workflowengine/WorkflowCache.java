@@ -0,0 +1,204 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.brightcove.opensource.workflowengine.WorkflowDefinition.ActorDefinition;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Keeps a WorkflowDefinition in a compact binary file, so launching the
+ *    same workflow again skips parsing and checking its XML.
+ * </p>
+ *
+ * <p>
+ *    The cache records the length and CRC-32 of the XML file it was made
+ *    from, and is only used while the XML file still matches them.  It is
+ *    written alongside and moved into place, so a crash never leaves half
+ *    a cache behind.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class WorkflowCache {
+	private static final int     MAGIC   = 0x57464b43;
+	private static final int     VERSION = 1;
+	private static final Charset UTF8    = Charset.forName("UTF-8");
+
+	/**
+	 * <p>
+	 *    Reads the definition cached for an XML file
+	 * </p>
+	 *
+	 * @param cacheFile Cache file
+	 * @param xmlFile XML file the cache should have been made from
+	 * @return Definition, or null if there is no cache or it was made from
+	 *         something else (e.g. an earlier version of the XML file)
+	 * @throws IOException
+	 */
+	static WorkflowDefinition read(File cacheFile, File xmlFile) throws IOException {
+		if(! cacheFile.exists()){
+			return null;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+		try{
+			if((in.readInt() != MAGIC) || (in.readInt() != VERSION)){
+				return null;
+			}
+			if((in.readLong() != xmlFile.length()) || (in.readLong() != checksum(xmlFile))){
+				return null;
+			}
+
+			WorkflowDefinition definition = new WorkflowDefinition();
+			readProperties(in, definition.properties);
+			for(int actors=in.readInt(); actors>0; actors--){
+				ActorDefinition actor = new ActorDefinition();
+				actor.className   = readString(in);
+				actor.name        = readString(in);
+				actor.parallelism = readString(in);
+				actor.partitionBy = readString(in);
+				readProperties(in, actor.properties);
+				readNames(in, actor.providers);
+				readNames(in, actor.consumers);
+				definition.actors.add(actor);
+			}
+			return definition;
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Caches the definition read from an XML file
+	 * </p>
+	 *
+	 * @param cacheFile Cache file
+	 * @param xmlFile XML file the definition was read from
+	 * @param definition Definition to cache
+	 * @throws IOException
+	 */
+	static void write(File cacheFile, File xmlFile, WorkflowDefinition definition) throws IOException {
+		// A temp file of its own, as workflows sharing a cache may write it
+		// at the same time
+		File             tempFile = File.createTempFile(cacheFile.getName() + ".", ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		DataOutputStream out      = null;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(xmlFile.length());
+			out.writeLong(checksum(xmlFile));
+
+			writeProperties(out, definition.properties);
+			out.writeInt(definition.actors.size());
+			for(ActorDefinition actor : definition.actors){
+				writeString(out, actor.className);
+				writeString(out, actor.name);
+				writeString(out, actor.parallelism);
+				writeString(out, actor.partitionBy);
+				writeProperties(out, actor.properties);
+				writeNames(out, actor.providers);
+				writeNames(out, actor.consumers);
+			}
+			out.close();
+			out = null;
+
+			try {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse) {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally{
+			if(out != null){
+				out.close();
+			}
+			// Left behind only if it wasn't moved into place
+			tempFile.delete();
+		}
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32       crc    = new CRC32();
+		byte[]      buffer = new byte[1 << 16];
+		InputStream in     = new FileInputStream(file);
+		try{
+			for(int read=in.read(buffer); read>=0; read=in.read(buffer)){
+				crc.update(buffer, 0, read);
+			}
+		}
+		finally{
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	private static void writeProperties(DataOutputStream out, List<Property<String>> properties) throws IOException {
+		out.writeInt(properties.size());
+		for(Property<String> property : properties){
+			writeString(out, property.getName());
+			writeString(out, property.getValue());
+		}
+	}
+
+	private static void readProperties(DataInputStream in, List<Property<String>> properties) throws IOException {
+		for(int count=in.readInt(); count>0; count--){
+			String name = readString(in);
+			properties.add(new Property<String>(name, readString(in)));
+		}
+	}
+
+	private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+		out.writeInt(names.size());
+		for(String name : names){
+			writeString(out, name);
+		}
+	}
+
+	private static void readNames(DataInputStream in, List<String> names) throws IOException {
+		for(int count=in.readInt(); count>0; count--){
+			names.add(readString(in));
+		}
+	}
+
+	// Length (-1 for null) then UTF-8 bytes - writeUTF() can't take values
+	// over 64k
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0){
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,330 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.brightcove.commons.misc.logging.LogUtils;
+import com.brightcove.commons.misc.logging.SimpleFormatter;
+
+/**
+ * <p>
+ *    Keeps one JVM running and runs the workflows submitted to it through a
+ *    spool directory, several at a time on a fixed pool of threads, so each
+ *    run skips JVM start-up and warm-up.
+ * </p>
+ *
+ * <p>
+ *    A workflow is submitted by dropping a &lt;name&gt;.job file into the
+ *    spool directory (written under another name and then renamed, so it's
+ *    never picked up half-written).  The job file is in Properties format:<ul>
+ *        <li>workflow-file - Path to the workflow XML config file (relative paths are relative to the spool directory)</li>
+ *        <li>workflow-cache - Optional path to a binary cache of the workflow (see Workflow.fromXML(File, File))</li>
+ *        <li>resume - Optional, true to carry on from the workflow's last checkpoint</li>
+ *    </ul>
+ * </p>
+ *
+ * <p>
+ *    Jobs are taken oldest first, as threads come free.  A job taken is
+ *    renamed &lt;name&gt;.running, and the workflow logs to &lt;name&gt;.log
+ *    rather than to the console.  A workflow that dies only ends its own
+ *    job, not the daemon.  When the workflow ends its exit-status (0 or 1),
+ *    error (if any) and started and finished times are added to the job
+ *    file, which is renamed &lt;name&gt;.done or &lt;name&gt;.failed.
+ * </p>
+ *
+ * <p>
+ *    Creating a file named stop in the spool directory stops the daemon
+ *    once the jobs already running have ended; the stop file is removed on
+ *    the way out.  Jobs left running by a daemon that didn't stop cleanly
+ *    are marked failed when the next one starts.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class WorkflowDaemon {
+	public static final String JOB_SUFFIX     = ".job";
+	public static final String RUNNING_SUFFIX = ".running";
+	public static final String DONE_SUFFIX    = ".done";
+	public static final String FAILED_SUFFIX  = ".failed";
+	public static final String LOG_SUFFIX     = ".log";
+	public static final String STOP_FILE      = "stop";
+	public static final Long   POLL_INTERVAL  = 500l;
+
+	private File            spoolDir;
+	private Integer         threads;
+	private Logger          logger;
+	private ExecutorService pool;
+	private Semaphore       free;
+
+	/**
+	 * <p>
+	 *    Creates a daemon
+	 * </p>
+	 *
+	 * @param spoolDir Directory jobs are submitted to
+	 * @param threads Number of workflows run at once
+	 */
+	public WorkflowDaemon(File spoolDir, Integer threads){
+		this.spoolDir = spoolDir;
+		this.threads  = threads;
+		this.logger   = LogUtils.getLogger(this.getClass().getCanonicalName());
+	}
+
+	/**
+	 * <p>
+	 *    Runs jobs as they're submitted, until a stop file appears in the
+	 *    spool directory
+	 * </p>
+	 *
+	 * @throws IOException If the spool directory can't be used
+	 */
+	public void run() throws IOException {
+		if(! spoolDir.isDirectory()){
+			throw new IOException("Spool directory '" + spoolDir + "' doesn't exist.");
+		}
+		if(threads < 1){
+			throw new IllegalArgumentException("Daemon needs at least 1 thread (was " + threads + ").");
+		}
+
+		recoverJobs();
+
+		pool = Executors.newFixedThreadPool(threads);
+		free = new Semaphore(threads);
+		logger.info("Workflow daemon watching '" + spoolDir + "' with " + threads + " thread(s).");
+
+		File stopFile = new File(spoolDir, STOP_FILE);
+		try{
+			while(! stopFile.exists()){
+				for(File jobFile : listJobs()){
+					if(! free.tryAcquire()){
+						break;
+					}
+					if(! submit(jobFile)){
+						free.release();
+					}
+				}
+
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		finally{
+			logger.info("Workflow daemon stopping, waiting for running jobs.");
+			pool.shutdown();
+			try {
+				while(! pool.awaitTermination(POLL_INTERVAL, TimeUnit.MILLISECONDS)){
+					// Jobs still running
+				}
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if(stopFile.exists() && (! stopFile.delete())){
+			logger.severe("Couldn't delete stop file '" + stopFile + "'.");
+		}
+		logger.info("Workflow daemon stopped.");
+	}
+
+	private File[] listJobs(){
+		File[] jobFiles = spoolDir.listFiles(new FileFilter(){
+			public boolean accept(File file){
+				return file.isFile() && file.getName().endsWith(JOB_SUFFIX);
+			}
+		});
+		if(jobFiles == null){
+			return new File[0];
+		}
+
+		Arrays.sort(jobFiles, new Comparator<File>(){
+			public int compare(File a, File b){
+				if(a.lastModified() != b.lastModified()){
+					return (a.lastModified() < b.lastModified()) ? -1 : 1;
+				}
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return jobFiles;
+	}
+
+	private boolean submit(File jobFile){
+		String name        = jobName(jobFile, JOB_SUFFIX);
+		File   runningFile = new File(spoolDir, name + RUNNING_SUFFIX);
+		if(! jobFile.renameTo(runningFile)){
+			// Withdrawn, or taken by another daemon
+			return false;
+		}
+
+		logger.info("Starting job '" + name + "'.");
+		pool.execute(new Job(name, runningFile));
+		return true;
+	}
+
+	private void recoverJobs(){
+		File[] runningFiles = spoolDir.listFiles(new FileFilter(){
+			public boolean accept(File file){
+				return file.isFile() && file.getName().endsWith(RUNNING_SUFFIX);
+			}
+		});
+		if(runningFiles == null){
+			return;
+		}
+
+		for(File runningFile : runningFiles){
+			String name = jobName(runningFile, RUNNING_SUFFIX);
+			logger.severe("Job '" + name + "' was left running by an earlier daemon, marking it failed.");
+			try{
+				Properties job = readJob(runningFile);
+				job.setProperty("exit-status", "1");
+				job.setProperty("error", "Daemon stopped while the job was running.");
+				writeJob(runningFile, job);
+			}
+			catch(IOException ioe){
+				logger.severe("Couldn't update job file '" + runningFile + "'.  Exception caught: '" + ioe + "'.");
+			}
+			if(! runningFile.renameTo(new File(spoolDir, name + FAILED_SUFFIX))){
+				logger.severe("Couldn't rename job file '" + runningFile + "'.");
+			}
+		}
+	}
+
+	private static String jobName(File file, String suffix){
+		return file.getName().substring(0, file.getName().length() - suffix.length());
+	}
+
+	private static Properties readJob(File jobFile) throws IOException {
+		Properties  job = new Properties();
+		InputStream in  = new FileInputStream(jobFile);
+		try{
+			job.load(in);
+		}
+		finally{
+			in.close();
+		}
+		return job;
+	}
+
+	private static void writeJob(File jobFile, Properties job) throws IOException {
+		OutputStream out = new FileOutputStream(jobFile);
+		try{
+			job.store(out, "Workflow job");
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	private File resolve(String path){
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(spoolDir, path);
+	}
+
+	/*
+	 * Runs one job on a pool thread and records how it ended
+	 */
+	private class Job implements Runnable {
+		private String name;
+		private File   runningFile;
+
+		Job(String name, File runningFile){
+			this.name        = name;
+			this.runningFile = runningFile;
+		}
+
+		public void run(){
+			Properties  job       = new Properties();
+			FileHandler handler   = null;
+			Throwable   failure   = null;
+			long        startTime = System.currentTimeMillis();
+			try{
+				job = readJob(runningFile);
+
+				// A logger of the job's own, so the logs of jobs running at
+				// the same time aren't interleaved
+				File jobLog = new File(spoolDir, name + LOG_SUFFIX);
+				handler = new FileHandler(jobLog.getPath().replace("%", "%%"), false);
+				handler.setFormatter(new SimpleFormatter());
+				Logger jobLogger = Logger.getAnonymousLogger();
+				jobLogger.setUseParentHandlers(false);
+				jobLogger.addHandler(handler);
+
+				String workflowFile = job.getProperty("workflow-file");
+				if(workflowFile == null){
+					throw new IllegalArgumentException("Job has no workflow-file.");
+				}
+				String cacheFile = job.getProperty("workflow-cache");
+
+				Workflow workflow = new Workflow();
+				workflow.setLogger(jobLogger);
+				workflow.setExitOnDie(false);
+				workflow.fromXML(resolve(workflowFile), (cacheFile == null) ? null : resolve(cacheFile));
+				workflow.setResume(Boolean.parseBoolean(job.getProperty("resume", "false").trim()));
+				workflow.run();
+			}
+			catch(Throwable t){
+				failure = t;
+				if((handler != null) && (! (t instanceof WorkflowException))){
+					// die() messages are already in the job's log
+					handler.publish(new LogRecord(Level.SEVERE, "Job failed.  Exception caught: '" + t + "'."));
+				}
+			}
+			finally{
+				if(handler != null){
+					handler.close();
+				}
+				finish(job, startTime, failure);
+				free.release();
+			}
+
+			if(failure instanceof VirtualMachineError){
+				throw (VirtualMachineError)failure;
+			}
+		}
+
+		private void finish(Properties job, long startTime, Throwable failure){
+			job.setProperty("exit-status", (failure == null) ? "0" : "1");
+			if(failure != null){
+				job.setProperty("error", (failure instanceof WorkflowException) ? failure.getMessage() : ("" + failure));
+			}
+			job.setProperty("started", "" + new Date(startTime));
+			job.setProperty("finished", "" + new Date());
+
+			try{
+				writeJob(runningFile, job);
+			}
+			catch(IOException ioe){
+				logger.severe("Couldn't update job file '" + runningFile + "'.  Exception caught: '" + ioe + "'.");
+			}
+
+			File endFile = new File(spoolDir, name + ((failure == null) ? DONE_SUFFIX : FAILED_SUFFIX));
+			if(! runningFile.renameTo(endFile)){
+				logger.severe("Couldn't rename job file '" + runningFile + "' to '" + endFile + "'.");
+			}
+			logger.info("Job '" + name + "' " + ((failure == null) ? "done" : "failed") + ".");
+		}
+	}
+}
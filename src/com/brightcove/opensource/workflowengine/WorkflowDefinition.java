@@ -0,0 +1,38 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    A workflow as its configuration describes it - properties, and actors
+ *    with their properties and the names of their providers and consumers
+ *    - before any actor is created.  Read from XML, or from a
+ *    WorkflowCache, and built into a Workflow.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class WorkflowDefinition {
+	List<Property<String>> properties = new ArrayList<Property<String>>();
+	List<ActorDefinition>  actors     = new ArrayList<ActorDefinition>();
+
+	/**
+	 * <p>
+	 *    An actor element - attributes as given (null where missing),
+	 *    properties in order, and provider and consumer names
+	 * </p>
+	 */
+	static class ActorDefinition {
+		String                 className;
+		String                 name;
+		String                 parallelism;
+		String                 partitionBy;
+		List<Property<String>> properties = new ArrayList<Property<String>>();
+		List<String>           providers  = new ArrayList<String>();
+		List<String>           consumers  = new ArrayList<String>();
+	}
+}
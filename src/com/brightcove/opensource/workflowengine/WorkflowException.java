@@ -0,0 +1,26 @@
+package com.brightcove.opensource.workflowengine;
+
+/**
+ * <p>
+ *    Thrown by Workflow.die() in place of exiting the JVM, for workflows
+ *    set not to exit on die (see Workflow.setExitOnDie()).  The message is
+ *    the one passed to die(), which has already been logged.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class WorkflowException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * <p>
+	 *    Creates an exception
+	 * </p>
+	 *
+	 * @param message Message passed to die()
+	 */
+	public WorkflowException(String message){
+		super(message);
+	}
+}
@@ -0,0 +1,500 @@
+package com.brightcove.opensource.workflowengine;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.brightcove.commons.misc.logging.LogUtils;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Runs workflows over and over on schedules, in one JVM - each either on
+ *    a cron expression (see CronExpression) or a fixed delay after its last
+ *    run ended.  No more than max-concurrent workflows run at once; runs
+ *    due while that many are running wait their turn.
+ * </p>
+ *
+ * <p>
+ *    A workflow's XML is read and checked once, and each run builds a new
+ *    Workflow from what was read, so actors start every run afresh.  It's
+ *    read again if the XML file has changed since.
+ * </p>
+ *
+ * <p>
+ *    Each job has an overlap policy, for when it comes due while an earlier
+ *    run of it hasn't ended (or is still waiting its turn):<ul>
+ *        <li>skip - Don't run it this time (the default)</li>
+ *        <li>queue - Run it once more after the earlier run ends (coming due again while one is queued doesn't queue another)</li>
+ *        <li>concurrent - Run it alongside the earlier run</li>
+ *    </ul>
+ *    A fixed-delay job is never due while it's running, so its policy
+ *    doesn't come into play.
+ * </p>
+ *
+ * <p>
+ *    Schedules are loaded from XML, written like a workflow's:
+ *    <pre>
+ *    &lt;schedule&gt;
+ *        &lt;property name="max-concurrent"&gt;2&lt;/property&gt;
+ *        &lt;job name="nightly"&gt;
+ *            &lt;property name="workflow-file"&gt;nightly.xml&lt;/property&gt;
+ *            &lt;property name="cron"&gt;30 2 * * *&lt;/property&gt;
+ *            &lt;property name="overlap"&gt;queue&lt;/property&gt;
+ *        &lt;/job&gt;
+ *        &lt;job name="poll"&gt;
+ *            &lt;property name="workflow-file"&gt;poll.xml&lt;/property&gt;
+ *            &lt;property name="fixed-delay"&gt;60000&lt;/property&gt;
+ *        &lt;/job&gt;
+ *    &lt;/schedule&gt;
+ *    </pre>
+ *    Relative workflow-file paths are relative to the schedule file.
+ *    Fixed delays are in milliseconds, and a fixed-delay job first runs
+ *    when the scheduler starts.  Cron expressions are in the time-zone
+ *    property's zone (the JVM's by default).
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class WorkflowScheduler {
+	public static final String OVERLAP_SKIP       = "skip";
+	public static final String OVERLAP_QUEUE      = "queue";
+	public static final String OVERLAP_CONCURRENT = "concurrent";
+
+	private List<Job>                jobs;
+	private Integer                  maxConcurrent;
+	private TimeZone                 timeZone;
+	private Logger                   logger;
+	private ExecutorService          pool;
+	private volatile Boolean         stopped;
+	private ReentrantLock            lock;
+	private Condition                changed;
+
+	/**
+	 * <p>
+	 *    Creates a scheduler with no jobs, running as many workflows at once
+	 *    as there are processors
+	 * </p>
+	 */
+	public WorkflowScheduler(){
+		jobs          = new ArrayList<Job>();
+		maxConcurrent = Runtime.getRuntime().availableProcessors();
+		timeZone      = TimeZone.getDefault();
+		logger        = LogUtils.getLogger(this.getClass().getCanonicalName());
+		stopped       = false;
+		lock          = new ReentrantLock();
+		changed       = lock.newCondition();
+	}
+
+	/**
+	 * <p>
+	 *    Sets how many workflows can run at once
+	 * </p>
+	 *
+	 * @param maxConcurrent Maximum number of workflows running
+	 */
+	public void setMaxConcurrent(Integer maxConcurrent){
+		if(maxConcurrent < 1){
+			throw new IllegalArgumentException("max-concurrent must be at least 1 (was " + maxConcurrent + ").");
+		}
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * <p>
+	 *    Sets the time zone cron expressions of jobs added afterwards are in
+	 * </p>
+	 *
+	 * @param timeZone Time zone
+	 */
+	public void setTimeZone(TimeZone timeZone){
+		this.timeZone = timeZone;
+	}
+
+	/**
+	 * <p>
+	 *    Adds a job run whenever a cron expression matches
+	 * </p>
+	 *
+	 * @param name Name of the job
+	 * @param workflowFile Workflow XML config file
+	 * @param cron Cron expression
+	 * @param overlap Overlap policy (OVERLAP_SKIP, OVERLAP_QUEUE or OVERLAP_CONCURRENT)
+	 */
+	public void addCronJob(String name, File workflowFile, String cron, String overlap){
+		addJob(new Job(name, workflowFile, new CronExpression(cron, timeZone), null, overlap));
+	}
+
+	/**
+	 * <p>
+	 *    Adds a job run when the scheduler starts, and then a fixed delay
+	 *    after each run ends
+	 * </p>
+	 *
+	 * @param name Name of the job
+	 * @param workflowFile Workflow XML config file
+	 * @param fixedDelay Delay between runs, in milliseconds
+	 * @param overlap Overlap policy (OVERLAP_SKIP, OVERLAP_QUEUE or OVERLAP_CONCURRENT)
+	 */
+	public void addFixedDelayJob(String name, File workflowFile, Long fixedDelay, String overlap){
+		if(fixedDelay < 0){
+			throw new IllegalArgumentException("fixed-delay of job '" + name + "' can't be negative (was " + fixedDelay + ").");
+		}
+		addJob(new Job(name, workflowFile, null, fixedDelay, overlap));
+	}
+
+	private void addJob(Job job){
+		lock.lock();
+		try{
+			jobs.add(job);
+			changed.signalAll();
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Loads settings and jobs from an XML schedule file
+	 * </p>
+	 *
+	 * @param xmlFile XML schedule file
+	 * @return WorkflowScheduler object
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public WorkflowScheduler fromXML(File xmlFile) throws XMLStreamException, IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		List<Property<String>>       properties    = new ArrayList<Property<String>>();
+		List<String>                 jobNames      = new ArrayList<String>();
+		List<List<Property<String>>> jobProperties = new ArrayList<List<Property<String>>>();
+		InputStream                  in            = new BufferedInputStream(new FileInputStream(xmlFile));
+		try{
+			XMLStreamReader        reader   = factory.createXMLStreamReader(in);
+			Boolean                schedule = false;
+			List<Property<String>> job      = null;
+			Integer                depth    = 0;
+			while(reader.hasNext()){
+				int event = reader.next();
+				if(event == XMLStreamConstants.END_ELEMENT){
+					if(depth == 2){
+						job = null;
+					}
+					depth--;
+					continue;
+				}
+				if(event != XMLStreamConstants.START_ELEMENT){
+					continue;
+				}
+
+				depth++;
+				String element = reader.getLocalName();
+				if(depth == 1){
+					schedule = "schedule".equals(element);
+				}
+				else if((depth == 2) && schedule && "property".equals(element)){
+					properties.add(new Property<String>(reader.getAttributeValue(null, "name"), reader.getElementText()));
+					depth--;
+				}
+				else if((depth == 2) && schedule && "job".equals(element)){
+					job = new ArrayList<Property<String>>();
+					jobNames.add(reader.getAttributeValue(null, "name"));
+					jobProperties.add(job);
+				}
+				else if((depth == 3) && (job != null) && "property".equals(element)){
+					job.add(new Property<String>(reader.getAttributeValue(null, "name"), reader.getElementText()));
+					depth--;
+				}
+			}
+			reader.close();
+		}
+		finally{
+			in.close();
+		}
+
+		String maxConcurrentProp = getFirstPropertyValue(properties, "max-concurrent");
+		if(maxConcurrentProp != null){
+			try{
+				setMaxConcurrent(Integer.parseInt(maxConcurrentProp.trim()));
+			}
+			catch(NumberFormatException nfe){
+				throw new IllegalArgumentException("Couldn't parse max-concurrent '" + maxConcurrentProp + "'.");
+			}
+		}
+		String timeZoneProp = getFirstPropertyValue(properties, "time-zone");
+		if(timeZoneProp != null){
+			setTimeZone(TimeZone.getTimeZone(timeZoneProp.trim()));
+		}
+
+		for(int idx=0; idx<jobNames.size(); idx++){
+			String name = jobNames.get(idx);
+			if(name == null){
+				throw new IllegalArgumentException("Every job in schedule '" + xmlFile + "' needs a name.");
+			}
+
+			String workflowFileProp = getFirstPropertyValue(jobProperties.get(idx), "workflow-file");
+			String cronProp         = getFirstPropertyValue(jobProperties.get(idx), "cron");
+			String fixedDelayProp   = getFirstPropertyValue(jobProperties.get(idx), "fixed-delay");
+			String overlapProp      = getFirstPropertyValue(jobProperties.get(idx), "overlap");
+			if(workflowFileProp == null){
+				throw new IllegalArgumentException("Job '" + name + "' has no workflow-file.");
+			}
+			File workflowFile = new File(workflowFileProp.trim());
+			if(! workflowFile.isAbsolute()){
+				workflowFile = new File(xmlFile.getAbsoluteFile().getParentFile(), workflowFileProp.trim());
+			}
+			String overlap = (overlapProp == null) ? OVERLAP_SKIP : overlapProp.trim();
+
+			if((cronProp == null) == (fixedDelayProp == null)){
+				throw new IllegalArgumentException("Job '" + name + "' needs either a cron or a fixed-delay property.");
+			}
+			if(cronProp != null){
+				addCronJob(name, workflowFile, cronProp, overlap);
+			}
+			else{
+				try{
+					addFixedDelayJob(name, workflowFile, Long.parseLong(fixedDelayProp.trim()), overlap);
+				}
+				catch(NumberFormatException nfe){
+					throw new IllegalArgumentException("Couldn't parse fixed-delay '" + fixedDelayProp + "' of job '" + name + "'.");
+				}
+			}
+		}
+		return this;
+	}
+
+	private static String getFirstPropertyValue(List<Property<String>> properties, String name){
+		for(Property<String> property : properties){
+			if(name.equals(property.getName())){
+				return property.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * <p>
+	 *    Runs jobs as they come due, until stop() is called
+	 * </p>
+	 */
+	public void run(){
+		pool = Executors.newFixedThreadPool(maxConcurrent);
+		logger.info("Workflow scheduler running " + jobs.size() + " job(s), at most " + maxConcurrent + " at once.");
+
+		lock.lock();
+		try{
+			long now = System.currentTimeMillis();
+			for(Job job : jobs){
+				job.nextTime = (job.cron != null) ? job.cron.next(now) : now;
+			}
+
+			while(! stopped){
+				now = System.currentTimeMillis();
+				Long wakeTime = null;
+				for(Job job : jobs){
+					if((job.nextTime != null) && (job.nextTime <= now)){
+						due(job, now);
+					}
+					if((job.nextTime != null) && ((wakeTime == null) || (job.nextTime < wakeTime))){
+						wakeTime = job.nextTime;
+					}
+				}
+
+				try{
+					if(wakeTime == null){
+						changed.await();
+					}
+					else{
+						changed.await(wakeTime - now, TimeUnit.MILLISECONDS);
+					}
+				}
+				catch(InterruptedException ie){
+					Thread.currentThread().interrupt();
+					stopped = true;
+				}
+			}
+		}
+		finally{
+			lock.unlock();
+		}
+
+		logger.info("Workflow scheduler stopping, waiting for running workflows.");
+		pool.shutdown();
+		try{
+			while(! pool.awaitTermination(1, TimeUnit.SECONDS)){
+				// Workflows still running
+			}
+		}
+		catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Workflow scheduler stopped.");
+	}
+
+	/**
+	 * <p>
+	 *    Stops run() starting workflows.  Workflows already running are
+	 *    left to end, and run() returns once they have.
+	 * </p>
+	 */
+	public void stop(){
+		lock.lock();
+		try{
+			stopped = true;
+			changed.signalAll();
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	// Called holding the lock
+	private void due(Job job, long now){
+		if(job.cron != null){
+			// Runs missed while the JVM was busy or asleep aren't made up
+			job.nextTime = job.cron.next(now);
+		}
+		else{
+			// Set again when this run ends
+			job.nextTime = null;
+		}
+
+		if((job.active > 0) && (! OVERLAP_CONCURRENT.equals(job.overlap))){
+			if(OVERLAP_QUEUE.equals(job.overlap)){
+				if(! job.queued){
+					logger.info("Job '" + job.name + "' is still running, queueing the next run.");
+				}
+				job.queued = true;
+			}
+			else{
+				logger.info("Job '" + job.name + "' is still running, skipping this run.");
+			}
+			return;
+		}
+		start(job);
+	}
+
+	// Called holding the lock
+	private void start(final Job job){
+		job.active++;
+		pool.execute(new Runnable(){
+			public void run(){
+				runJob(job);
+			}
+		});
+	}
+
+	private void runJob(Job job){
+		long      startTime = System.currentTimeMillis();
+		Throwable failure   = null;
+		try{
+			if(! stopped){
+				logger.info("Running job '" + job.name + "'.");
+				Workflow workflow = new Workflow();
+				workflow.setExitOnDie(false);
+				workflow.fromDefinition(job.getDefinition(workflow));
+				workflow.run();
+			}
+		}
+		catch(Throwable t){
+			failure = t;
+		}
+
+		lock.lock();
+		try{
+			job.active--;
+			if(failure != null){
+				logger.severe("Job '" + job.name + "' failed after " + (System.currentTimeMillis() - startTime) + " ms.  Exception caught: '" + failure + "'.");
+			}
+			else if(! stopped){
+				logger.info("Job '" + job.name + "' finished in " + (System.currentTimeMillis() - startTime) + " ms.");
+			}
+
+			if((job.fixedDelay != null) && (job.active == 0)){
+				job.nextTime = System.currentTimeMillis() + job.fixedDelay;
+			}
+			if(job.queued && (job.active == 0) && (! stopped)){
+				job.queued = false;
+				start(job);
+			}
+			changed.signalAll();
+		}
+		finally{
+			lock.unlock();
+		}
+
+		if(failure instanceof VirtualMachineError){
+			throw (VirtualMachineError)failure;
+		}
+	}
+
+	/*
+	 * A scheduled workflow, and the definition read from its XML file
+	 */
+	private static class Job {
+		private String             name;
+		private File               workflowFile;
+		private CronExpression     cron;
+		private Long               fixedDelay;
+		private String             overlap;
+		private Long               nextTime;
+		private int                active;
+		private boolean            queued;
+		private WorkflowDefinition definition;
+		private long               definitionModified;
+		private long               definitionLength;
+
+		Job(String name, File workflowFile, CronExpression cron, Long fixedDelay, String overlap){
+			if((! OVERLAP_SKIP.equals(overlap)) && (! OVERLAP_QUEUE.equals(overlap)) && (! OVERLAP_CONCURRENT.equals(overlap))){
+				throw new IllegalArgumentException("Unknown overlap '" + overlap + "' for job '" + name + "'.  Expected '" + OVERLAP_SKIP + "', '" + OVERLAP_QUEUE + "' or '" + OVERLAP_CONCURRENT + "'.");
+			}
+
+			this.name         = name;
+			this.workflowFile = workflowFile;
+			this.cron         = cron;
+			this.fixedDelay   = fixedDelay;
+			this.overlap      = overlap;
+			this.nextTime     = null;
+			this.active       = 0;
+			this.queued       = false;
+			this.definition   = null;
+		}
+
+		// Reads the XML the first time, and again whenever it has changed
+		synchronized WorkflowDefinition getDefinition(Workflow workflow) throws XMLStreamException, IOException {
+			long modified = workflowFile.lastModified();
+			long length   = workflowFile.length();
+			if((definition == null) || (modified != definitionModified) || (length != definitionLength)){
+				if(definition != null){
+					workflow.log("Workflow file '" + workflowFile + "' changed (last modified " + new Date(modified) + "), reading it again.");
+				}
+				definition         = workflow.readCheckedDefinition(workflowFile);
+				definitionModified = modified;
+				definitionLength   = length;
+			}
+			return definition;
+		}
+	}
+}
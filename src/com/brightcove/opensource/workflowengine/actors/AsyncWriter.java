@@ -0,0 +1,258 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *    A Writer that hands everything written to it to a background thread,
+ *    which writes it on to another Writer.
+ * </p>
+ *
+ * <p>
+ *    Each write() is queued as a single chunk in a bounded queue, so the
+ *    caller should gather output into reasonably large chunks first.  A
+ *    full queue blocks the caller until the background thread catches up.
+ *    The background thread flushes the target whenever the queue runs dry
+ *    (or, if a flush interval is given, whenever it has been idle that
+ *    long), so several chunks written in quick succession share a single
+ *    flush.  close() waits for every queued chunk to be written before
+ *    closing the target, and sync() waits for them to be written and
+ *    flushed.
+ * </p>
+ *
+ * <p>
+ *    If writing to the target fails, the error is kept, the rest of the
+ *    queue is discarded, and the next write(), flush() or close() throws
+ *    it.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class AsyncWriter extends Writer implements Runnable {
+	private static final String FLUSH         = new String("");
+	private static final String END_OF_STREAM = new String("");
+	private static final String SYNC          = new String("");
+
+	private Writer                target;
+	private BlockingQueue<String> queue;
+	private Long                  flushInterval;
+	private Thread                thread;
+	private volatile IOException  failure;
+	private boolean               closed;
+	private long                  syncsRequested;
+	private long                  syncsDone;
+
+	/**
+	 * <p>
+	 *    Creates a writer for the target specified and starts its thread
+	 * </p>
+	 *
+	 * @param target Writer to write to in the background
+	 * @param queueSize Maximum number of chunks waiting to be written
+	 * @param flushInterval Milliseconds the thread may sit idle before flushing the target (0 to flush as soon as the queue is empty)
+	 * @param threadName Name of the background thread
+	 */
+	AsyncWriter(Writer target, Integer queueSize, Long flushInterval, String threadName){
+		this.target         = target;
+		this.queue          = new ArrayBlockingQueue<String>(queueSize);
+		this.flushInterval  = flushInterval;
+		this.failure        = null;
+		this.closed         = false;
+		this.syncsRequested = 0;
+		this.syncsDone      = 0;
+
+		this.thread = new Thread(this, threadName);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Writer#write(java.lang.String)
+	 */
+	public void write(String str) throws IOException {
+		if(str.length() > 0){
+			enqueue(str);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Writer#write(char[], int, int)
+	 */
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(len > 0){
+			enqueue(new String(cbuf, off, len));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Writer#flush()
+	 */
+	public void flush() throws IOException {
+		enqueue(FLUSH);
+	}
+
+	/**
+	 * <p>
+	 *    Waits until everything written so far has been written to the
+	 *    target and the target has been flushed
+	 * </p>
+	 *
+	 * @throws IOException If writing to the target failed, or the thread was interrupted
+	 */
+	public void sync() throws IOException {
+		long ticket;
+		synchronized(this){
+			ticket = ++syncsRequested;
+		}
+		enqueue(SYNC);
+
+		try {
+			synchronized(this){
+				while((syncsDone < ticket) && (failure == null)){
+					wait();
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for output to be written.", ie);
+		}
+
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Writer#close()
+	 */
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			queue.put(END_OF_STREAM);
+			thread.join();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for output to be written.", ie);
+		}
+
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	private void enqueue(String chunk) throws IOException {
+		if(closed){
+			throw new IOException("Writer is closed.");
+		}
+		if(failure != null){
+			throw failure;
+		}
+
+		try {
+			queue.put(chunk);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while queueing output.", ie);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		boolean dirty = false;
+
+		while(true){
+			String chunk = null;
+			try {
+				chunk = queue.poll();
+				if((chunk == null) && dirty){
+					// Queue has run dry - flush what's been written so far,
+					// after waiting out the flush interval if there is one
+					if(flushInterval > 0){
+						chunk = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+					}
+					if(chunk == null){
+						chunk = FLUSH;
+					}
+				}
+				if(chunk == null){
+					chunk = queue.take();
+				}
+			}
+			catch (InterruptedException ie) {
+				fail(new IOException("Interrupted while writing output.", ie));
+				return;
+			}
+
+			if(failure != null){
+				if(chunk == END_OF_STREAM){
+					closeTarget();
+					return;
+				}
+				continue;
+			}
+
+			try {
+				if(chunk == END_OF_STREAM){
+					target.close();
+					return;
+				}
+				if(chunk == FLUSH){
+					if(dirty){
+						target.flush();
+						dirty = false;
+					}
+				}
+				else if(chunk == SYNC){
+					target.flush();
+					dirty = false;
+					synced();
+				}
+				else{
+					target.write(chunk);
+					dirty = true;
+				}
+			}
+			catch (IOException ioe) {
+				fail(ioe);
+				if(chunk == END_OF_STREAM){
+					return;
+				}
+			}
+		}
+	}
+
+	private synchronized void synced(){
+		syncsDone++;
+		notifyAll();
+	}
+
+	private synchronized void fail(IOException ioe){
+		if(failure == null){
+			failure = ioe;
+		}
+		notifyAll();
+	}
+
+	private void closeTarget(){
+		try {
+			target.close();
+		}
+		catch (IOException ioe) {
+			// Already failed - the first error is the one reported
+		}
+	}
+}
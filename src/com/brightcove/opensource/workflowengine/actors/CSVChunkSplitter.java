@@ -0,0 +1,232 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *    Splits part of a CSV file into byte ranges that each start at the
+ *    beginning of a record, so the ranges can be parsed independently.
+ * </p>
+ *
+ * <p>
+ *    Whether a line end ends a record depends on everything before it (it
+ *    may be inside a quoted field), so a record boundary can't be found by
+ *    looking at the bytes around an arbitrary offset.  Instead the file is
+ *    cut into fixed-size chunks and each chunk is scanned, in parallel,
+ *    with a small state machine that tracks just enough of the CSV syntax to
+ *    tell where records end.  Since the state at the start of a chunk isn't
+ *    known yet, the scan is run from every possible starting state at once,
+ *    noting for each the state at the end of the chunk and the first record
+ *    boundary.  Chaining the chunks together from the (known) start of the
+ *    first then picks out the real state, and so the real first record
+ *    boundary, of every chunk.
+ * </p>
+ *
+ * <p>
+ *    The state machine follows the same rules as MappedCSVParser, including
+ *    treating a quote in the middle of an unquoted value as an ordinary
+ *    character.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class CSVChunkSplitter {
+	// At the start of a value (after a delimiter or a record boundary)
+	private static final int FIELD_START  = 0;
+	// Inside a value that didn't start with a quote
+	private static final int UNQUOTED     = 1;
+	// Inside a quoted value
+	private static final int QUOTED       = 2;
+	// Just saw a quote inside a quoted value - either closing or doubled
+	private static final int QUOTE_SEEN   = 3;
+	// After the closing quote of a value, where only whitespace may follow
+	private static final int AFTER_QUOTE  = 4;
+	private static final int STATE_COUNT  = 5;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private FileChannel     channel;
+	private byte            delimiter;
+	private byte            quote;
+	private ExecutorService executor;
+
+	/**
+	 * <p>
+	 *    Creates a splitter for the file specified
+	 * </p>
+	 *
+	 * @param channel Open channel to the file
+	 * @param delimiter Delimiter byte
+	 * @param quote Quote byte
+	 * @param executor Executor to scan chunks on
+	 */
+	CSVChunkSplitter(FileChannel channel, byte delimiter, byte quote, ExecutorService executor){
+		this.channel   = channel;
+		this.delimiter = delimiter;
+		this.quote     = quote;
+		this.executor  = executor;
+	}
+
+	/**
+	 * <p>
+	 *    Splits the file from the offset specified (which must be the start
+	 *    of a record) to its end into ranges of roughly the size specified.
+	 * </p>
+	 *
+	 * @param start Offset of first record
+	 * @param chunkSize Approximate size of each range in bytes
+	 * @return Offsets of the start of each range, followed by the file size
+	 * @throws IOException If the file can't be read
+	 */
+	List<Long> split(long start, long chunkSize) throws IOException {
+		long                 fileSize = channel.size();
+		List<Future<long[]>> scans    = new ArrayList<Future<long[]>>();
+
+		for(long chunkStart=start; chunkStart<fileSize; chunkStart+=chunkSize){
+			scans.add(executor.submit(new ChunkScan(chunkStart, Math.min(chunkSize, fileSize - chunkStart))));
+		}
+
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(start);
+
+		int state = FIELD_START;
+		for(int idx=0; idx<scans.size(); idx++){
+			long[] result = null;
+			try {
+				result = scans.get(idx).get();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while splitting CSV file.", ie);
+			}
+			catch (ExecutionException ee) {
+				throw new IOException("Couldn't split CSV file.", ee.getCause());
+			}
+
+			// The first range starts at the first chunk, every other range at
+			// the first record boundary of its chunk (if it has one)
+			long boundary = result[state * 2 + 1];
+			if((idx > 0) && (boundary > boundaries.get(boundaries.size() - 1)) && (boundary < fileSize)){
+				boundaries.add(boundary);
+			}
+			state = (int)result[state * 2];
+		}
+
+		boundaries.add(fileSize);
+		return boundaries;
+	}
+
+	/*
+	 * Scans a chunk from every starting state at once.  The result holds,
+	 * for each starting state, the state at the end of the chunk followed by
+	 * the offset of the first record boundary (-1 if there isn't one).
+	 */
+	private class ChunkScan implements Callable<long[]> {
+		private long chunkStart;
+		private long chunkLength;
+
+		ChunkScan(long chunkStart, long chunkLength){
+			this.chunkStart  = chunkStart;
+			this.chunkLength = chunkLength;
+		}
+
+		public long[] call() throws IOException {
+			ByteBuffer buffer   = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkLength);
+			int[]      states   = new int[STATE_COUNT];
+			long[]     firstEnd = new long[STATE_COUNT];
+			for(int idx=0; idx<STATE_COUNT; idx++){
+				states[idx]   = idx;
+				firstEnd[idx] = -1;
+			}
+
+			int length = (int)chunkLength;
+			int pos    = 0;
+			while((pos < length) && (! converged(states, firstEnd))){
+				byte b = buffer.get(pos);
+				for(int idx=0; idx<STATE_COUNT; idx++){
+					int next = next(states[idx], b);
+					if((next < 0) && (firstEnd[idx] < 0)){
+						firstEnd[idx] = chunkStart + pos + 1;
+					}
+					states[idx] = (next < 0) ? FIELD_START : next;
+				}
+				pos++;
+			}
+
+			// Once every starting state has found its first record boundary
+			// and they have all ended up in the same state they stay together,
+			// so the rest of the chunk only needs scanning once
+			if(pos < length){
+				int state = states[0];
+				for(; pos<length; pos++){
+					int next = next(state, buffer.get(pos));
+					state = (next < 0) ? FIELD_START : next;
+				}
+				for(int idx=0; idx<STATE_COUNT; idx++){
+					states[idx] = state;
+				}
+			}
+
+			long[] result = new long[STATE_COUNT * 2];
+			for(int idx=0; idx<STATE_COUNT; idx++){
+				result[idx * 2]     = states[idx];
+				result[idx * 2 + 1] = firstEnd[idx];
+			}
+			return result;
+		}
+
+		private boolean converged(int[] states, long[] firstEnd){
+			for(int idx=0; idx<STATE_COUNT; idx++){
+				if((firstEnd[idx] < 0) || (states[idx] != states[0])){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * Returns the state after the byte, or -1 if the byte ends a record
+	 * (the next state then being FIELD_START).
+	 */
+	private int next(int state, byte b){
+		switch(state){
+			case QUOTED:
+				return (b == quote) ? QUOTE_SEEN : QUOTED;
+			case QUOTE_SEEN:
+				if(b == quote){
+					return QUOTED;
+				}
+				return afterValue(b, AFTER_QUOTE);
+			case AFTER_QUOTE:
+				return afterValue(b, AFTER_QUOTE);
+			case FIELD_START:
+				if(b == quote){
+					return QUOTED;
+				}
+				return afterValue(b, UNQUOTED);
+			default:
+				return afterValue(b, UNQUOTED);
+		}
+	}
+
+	private int afterValue(byte b, int otherwise){
+		if(b == delimiter){
+			return FIELD_START;
+		}
+		if((b == CR) || (b == LF)){
+			return -1;
+		}
+		return otherwise;
+	}
+}
@@ -1,9 +1,23 @@
 package com.brightcove.opensource.workflowengine.actors;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
@@ -12,6 +26,8 @@ import com.brightcove.opensource.workflowengine.Actor;
 import com.brightcove.opensource.workflowengine.Workflow;
 import com.brightcove.opensource.workflowengine.record.Property;
 import com.brightcove.opensource.workflowengine.record.Record;
+import com.brightcove.opensource.workflowengine.record.RecordSchema;
+import com.brightcove.opensource.workflowengine.record.SchemaRecord;
 
 /**
  * <p>
@@ -34,13 +50,55 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *            column names will be pulled from first line of file.  If
  *            header-row is also specified, header-row will be used for column
  *            names, but the first row of the file will be skipped.</li>
+ *        <li>character-set - Character set of the input file (platform
+ *            default if omitted)</li>
+ *        <li>reader - "default" to parse the file with commons-csv, or
+ *            "mmap" to memory-map the file and split it into records at the
+ *            byte level, decoding each value only when it is first used, or
+ *            "parallel" to do the same over several ranges of the file at
+ *            once.  The mmap and parallel readers need a character set in
+ *            which the delimiter, quote and line ends are single ASCII bytes
+ *            (e.g. UTF-8).</li>
+ *        <li>parse-threads - Number of threads the parallel reader parses
+ *            with (number of processors if omitted)</li>
+ *        <li>chunk-size - Approximate size in bytes of each range the
+ *            parallel reader splits the file into (16MB if omitted)</li>
+ *        <li>record-order - "ordered" (default) to have the parallel reader
+ *            pass records on in file order, or "unordered" to pass on each
+ *            range's records as soon as the range is parsed</li>
  *    </ul>
  * </p>
+ * 
+ * <p>
+ *    Rows are passed on as SchemaRecord objects sharing a single schema
+ *    built from the header row (or, without one, from the width of the first
+ *    row, with columns named Column-0, Column-1, ...).  Cells past the end of
+ *    the schema are added as ordinary Column-N properties.
+ * </p>
+ * 
+ * <p>
+ *    When the workflow takes checkpoints, the adapter's position is the
+ *    number of rows it has passed on.  A resumed run reads the file again
+ *    from the start, but only passes on the rows after that position.  The
+ *    parallel reader with record-order "unordered" has no such position, so
+ *    it never triggers a checkpoint and can't be resumed.
+ * </p>
  *    
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class CSVInputAdapter extends Actor {
+	public static final String  READER_DEFAULT       = "default";
+	public static final String  READER_MMAP          = "mmap";
+	public static final String  READER_PARALLEL      = "parallel";
+	public static final String  RECORD_ORDER_ORDERED   = "ordered";
+	public static final String  RECORD_ORDER_UNORDERED = "unordered";
+	public static final Long    DEFAULT_CHUNK_SIZE   = 16l * 1024l * 1024l;
+	
+	private String  inputPath     = null;
+	private Long    rowsPassed    = 0l;
+	private Long    rowsToSkip    = 0l;
+	private Boolean positionKnown = true;
 	
 	/**
 	 * <p>
@@ -106,18 +164,74 @@ public class CSVInputAdapter extends Actor {
 			hasHeaderRow = true;
 		}
 		
+		Charset charset     = null;
+		String  charsetProp = getFirstPropertyValue("character-set");
+		if(charsetProp != null){
+			try{
+				charset = Charset.forName(charsetProp.trim());
+			}
+			catch(Exception e){
+				die("[ERR] CSVAdapter given invalid character set '" + charsetProp + "'.  Exception caught: '" + e + "'.");
+			}
+		}
+		
+		String readerType = getFirstPropertyValue("reader");
+		if(readerType == null){
+			readerType = READER_DEFAULT;
+		}
+		
 		if(! hasStarted()){
-			FileReader          reader = null;
+			inputPath = inputFile.getAbsolutePath();
+			
+			Map<String, String> resumeState = getResumeState();
+			if((resumeState != null) && (resumeState.get("rows") != null)){
+				if(! inputPath.equals(resumeState.get("input-file"))){
+					die("[ERR] CSVAdapter can't resume reading " + inputPath + " from a checkpoint of '" + resumeState.get("input-file") + "'.");
+				}
+				try{
+					rowsToSkip = Long.parseLong(resumeState.get("rows"));
+				}
+				catch(NumberFormatException nfe){
+					die("[ERR] CSVAdapter can't parse checkpoint rows '" + resumeState.get("rows") + "'.  Exception caught: '" + nfe + "'.");
+				}
+				rowsPassed = rowsToSkip;
+				log("CSVAdapter resuming " + inputPath + " after row " + rowsToSkip + ".");
+			}
+		}
+		
+		if((! hasStarted()) && READER_MMAP.equalsIgnoreCase(readerType)){
+			if(charset == null){
+				charset = Charset.defaultCharset();
+			}
+			readMapped(inputFile, delimiter, quote, toNames(headerRow), hasHeaderRow, charset);
+		}
+		else if((! hasStarted()) && READER_PARALLEL.equalsIgnoreCase(readerType)){
+			if(charset == null){
+				charset = Charset.defaultCharset();
+			}
+			readParallel(inputFile, delimiter, quote, toNames(headerRow), hasHeaderRow, charset);
+		}
+		else if((! hasStarted()) && (! READER_DEFAULT.equalsIgnoreCase(readerType))){
+			die("[ERR] CSVAdapter given unknown reader '" + readerType + "'.  Expected '" + READER_DEFAULT + "', '" + READER_MMAP + "' or '" + READER_PARALLEL + "'.");
+		}
+		else if(! hasStarted()){
+			Reader              reader = null;
 			Iterable<CSVRecord> parser = null;
 			try {
-				reader = new FileReader(inputFile);
+				if(charset == null){
+					reader = new FileReader(inputFile);
+				}
+				else{
+					reader = new InputStreamReader(new FileInputStream(inputFile), charset);
+				}
 				parser = CSVFormat.newBuilder().withDelimiter(delimiter).withQuoteChar(quote).parse(reader);
 			}
 			catch (Exception e) {
 				die("[ERR] CSVAdapter can't parse input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + e + "'.");
 			}
 			
-			Integer rowIdx = 0;
+			RecordSchema schema = null;
+			Integer      rowIdx = 0;
 			for (CSVRecord csvRecord : parser) {
 				rowIdx++;
 				
@@ -128,20 +242,288 @@ public class CSVInputAdapter extends Actor {
 					}
 				}
 				else{
-					Record record = new Record();
-					for(Integer idx=0; idx<csvRecord.size(); idx++){
-						String propName = "Column-"+idx;
-						if((headerRow != null) && (idx < headerRow.size())){
-							propName = headerRow.get(idx);
-						}
-						
-						Property<?> prop = new Property<String>(propName, csvRecord.get(idx));
+					if(schema == null){
+						schema = createSchema(toNames(headerRow), csvRecord.size());
+					}
+					if(skipRow()){
+						continue;
+					}
+					
+					String[] values = new String[Math.min(csvRecord.size(), schema.size())];
+					for(Integer idx=0; idx<values.length; idx++){
+						values[idx] = csvRecord.get(idx);
+					}
+					
+					Record record = new SchemaRecord(schema, values);
+					for(Integer idx=values.length; idx<csvRecord.size(); idx++){
+						Property<?> prop = new Property<String>("Column-"+idx, csvRecord.get(idx));
 						record.addProperty(prop);
 					}
 					
-					handleRecord(record);
+					passOn(record);
+				}
+			}
+		}
+		
+		super.run();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		if(positionKnown && (inputPath != null)){
+			state.put("input-file", inputPath);
+			state.put("rows", "" + rowsPassed);
+		}
+	}
+	
+	private Boolean skipRow(){
+		if(rowsToSkip > 0){
+			rowsToSkip--;
+			return true;
+		}
+		return false;
+	}
+	
+	private void passOn(Record record){
+		handleRecord(record);
+		rowsPassed++;
+		if(positionKnown){
+			checkpointIfDue(1);
+		}
+	}
+	
+	private void readMapped(File inputFile, Character delimiter, Character quote, List<String> headerNames, Boolean hasHeaderRow, Charset charset){
+		byte delimiterByte = toSingleByte(delimiter, charset);
+		byte quoteByte     = toSingleByte(quote, charset);
+		toSingleByte('\r', charset);
+		toSingleByte('\n', charset);
+		
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(inputFile, "r");
+			FileChannel     channel = file.getChannel();
+			MappedCSVParser parser  = new MappedCSVParser(channel, 0, channel.size(), delimiterByte, quoteByte, MappedCSVParser.DEFAULT_WINDOW_SIZE);
+			
+			if(hasHeaderRow && parser.next() && (headerNames == null)){
+				// Only use header row from file if it wasn't supplied by property
+				headerNames = readNames(parser, charset, quote);
+			}
+			
+			RecordSchema schema = null;
+			while(parser.next()){
+				if(schema == null){
+					schema = createSchema(headerNames, parser.getFieldCount());
+				}
+				if(skipRow()){
+					continue;
+				}
+				
+				passOn(MappedCSVRecord.fromParser(schema, parser, charset, quote));
+			}
+		}
+		catch (IOException ioe) {
+			die("[ERR] CSVAdapter can't parse input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + ioe + "'.");
+		}
+		finally{
+			if(file != null){
+				try {
+					file.close();
+				}
+				catch (IOException ioe) {
+					logError("CSVAdapter couldn't close input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + ioe + "'.");
+				}
+			}
+		}
+	}
+	
+	private void readParallel(File inputFile, Character delimiter, Character quote, List<String> headerNames, Boolean hasHeaderRow, Charset charset){
+		byte delimiterByte = toSingleByte(delimiter, charset);
+		byte quoteByte     = toSingleByte(quote, charset);
+		toSingleByte('\r', charset);
+		toSingleByte('\n', charset);
+		
+		Integer threads = Runtime.getRuntime().availableProcessors();
+		String  threadsProp = getFirstPropertyValue("parse-threads");
+		if(threadsProp != null){
+			try{
+				threads = Integer.parseInt(threadsProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("[ERR] CSVAdapter can't parse parse-threads '" + threadsProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(threads < 1){
+				die("[ERR] CSVAdapter parse-threads must be at least 1 (was " + threads + ").");
+			}
+		}
+		
+		Long   chunkSize     = DEFAULT_CHUNK_SIZE;
+		String chunkSizeProp = getFirstPropertyValue("chunk-size");
+		if(chunkSizeProp != null){
+			try{
+				chunkSize = Long.parseLong(chunkSizeProp.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("[ERR] CSVAdapter can't parse chunk-size '" + chunkSizeProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if((chunkSize < 1) || (chunkSize > Integer.MAX_VALUE)){
+				die("[ERR] CSVAdapter chunk-size must be between 1 and " + Integer.MAX_VALUE + " (was " + chunkSize + ").");
+			}
+		}
+		
+		Boolean ordered   = true;
+		String  orderProp = getFirstPropertyValue("record-order");
+		if(RECORD_ORDER_UNORDERED.equalsIgnoreCase(orderProp)){
+			ordered = false;
+		}
+		else if((orderProp != null) && (! RECORD_ORDER_ORDERED.equalsIgnoreCase(orderProp))){
+			die("[ERR] CSVAdapter given unknown record-order '" + orderProp + "'.  Expected '" + RECORD_ORDER_ORDERED + "' or '" + RECORD_ORDER_UNORDERED + "'.");
+		}
+		if(! ordered){
+			// Rows are passed on out of order, so no row count marks a position
+			positionKnown = false;
+			if(rowsToSkip > 0){
+				die("[ERR] CSVAdapter can't resume with record-order '" + RECORD_ORDER_UNORDERED + "'.");
+			}
+		}
+		
+		RandomAccessFile file = null;
+		ForkJoinPool     pool = new ForkJoinPool(threads);
+		try {
+			file = new RandomAccessFile(inputFile, "r");
+			FileChannel channel = file.getChannel();
+			
+			// The header (and, without one, the width of the first row) is read
+			// once up front and shared by every range
+			MappedCSVParser parser    = new MappedCSVParser(channel, 0, channel.size(), delimiterByte, quoteByte, MappedCSVParser.DEFAULT_WINDOW_SIZE);
+			long            dataStart = 0;
+			if(hasHeaderRow){
+				if(parser.next()){
+					if(headerNames == null){
+						// Only use header row from file if it wasn't supplied by property
+						headerNames = readNames(parser, charset, quote);
+					}
+					dataStart = parser.getRecordEnd();
+				}
+				else{
+					dataStart = channel.size();
+				}
+			}
+			
+			Integer width = 0;
+			if(headerNames == null){
+				MappedCSVParser firstRow = new MappedCSVParser(channel, dataStart, channel.size(), delimiterByte, quoteByte, MappedCSVParser.DEFAULT_WINDOW_SIZE);
+				if(firstRow.next()){
+					width = firstRow.getFieldCount();
+				}
+			}
+			RecordSchema schema = createSchema(headerNames, width);
+			
+			List<Long> boundaries = new CSVChunkSplitter(channel, delimiterByte, quoteByte, pool).split(dataStart, chunkSize);
+			
+			// Only a few ranges are parsed ahead of the records being passed on,
+			// so memory use doesn't grow with the size of the file
+			Integer                                maxInFlight = threads * 2;
+			Integer                                nextRange   = 0;
+			LinkedList<Future<List<Record>>>       inFlight    = new LinkedList<Future<List<Record>>>();
+			ExecutorCompletionService<List<Record>> completed  = new ExecutorCompletionService<List<Record>>(pool);
+			
+			while((nextRange < boundaries.size() - 1) || (! inFlight.isEmpty())){
+				while((nextRange < boundaries.size() - 1) && (inFlight.size() < maxInFlight)){
+					CSVRangeParseTask task = new CSVRangeParseTask(channel, boundaries.get(nextRange), boundaries.get(nextRange + 1), delimiterByte, quoteByte, schema, charset);
+					// Ordered ranges are taken from inFlight, so aren't left
+					// behind in the completion queue once passed on
+					inFlight.add(ordered ? pool.submit(task) : completed.submit(task));
+					nextRange++;
+				}
+				
+				Future<List<Record>> done = null;
+				if(ordered){
+					done = inFlight.removeFirst();
+				}
+				else{
+					done = completed.take();
+					inFlight.remove(done);
+				}
+				
+				for(Record record : done.get()){
+					if(! skipRow()){
+						passOn(record);
+					}
+				}
+			}
+		}
+		catch (IOException ioe) {
+			die("[ERR] CSVAdapter can't parse input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + ioe + "'.");
+		}
+		catch (ExecutionException ee) {
+			die("[ERR] CSVAdapter can't parse input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + ee.getCause() + "'.");
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			die("[ERR] CSVAdapter interrupted while parsing input file (" + inputFile.getAbsolutePath() + ").");
+		}
+		finally{
+			pool.shutdownNow();
+			if(file != null){
+				try {
+					file.close();
 				}
+				catch (IOException ioe) {
+					logError("CSVAdapter couldn't close input file (" + inputFile.getAbsolutePath() + ").  Exception caught: '" + ioe + "'.");
+				}
+			}
+		}
+	}
+	
+	private List<String> readNames(MappedCSVParser parser, Charset charset, Character quote){
+		List<String> names   = new ArrayList<String>();
+		int[]        bounds  = parser.copyBounds();
+		boolean[]    escaped = parser.copyEscaped();
+		for(int idx=0; idx<parser.getFieldCount(); idx++){
+			names.add(MappedCSVRecord.decodeField(parser.getWindow(), bounds, escaped, idx, charset, quote));
+		}
+		return names;
+	}
+	
+	private byte toSingleByte(Character character, Charset charset){
+		byte[] bytes = null;
+		try{
+			bytes = String.valueOf(character).getBytes(charset.name());
+		}
+		catch(Exception e){
+			die("[ERR] CSVAdapter can't encode '" + character + "' in " + charset + ".  Exception caught: '" + e + "'.");
+		}
+		
+		if((bytes.length != 1) || (bytes[0] != (byte)(char)character) || (character > 127)){
+			die("[ERR] CSVAdapter mmap reader needs '" + character + "' to be a single ASCII byte in " + charset + ".");
+		}
+		return bytes[0];
+	}
+	
+	private List<String> toNames(CSVRecord headerRow){
+		if(headerRow == null){
+			return null;
+		}
+		
+		List<String> names = new ArrayList<String>();
+		for(Integer idx=0; idx<headerRow.size(); idx++){
+			names.add(headerRow.get(idx));
+		}
+		return names;
+	}
+	
+	private RecordSchema createSchema(List<String> headerNames, Integer width){
+		List<String> names = new ArrayList<String>();
+		if(headerNames != null){
+			names.addAll(headerNames);
+		}
+		else{
+			for(Integer idx=0; idx<width; idx++){
+				names.add("Column-"+idx);
 			}
 		}
+		return new RecordSchema(names);
 	}
 }
@@ -0,0 +1,67 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.brightcove.opensource.workflowengine.record.Record;
+import com.brightcove.opensource.workflowengine.record.RecordSchema;
+
+/**
+ * <p>
+ *    Parses the records of one byte range of a CSV file (as found by
+ *    CSVChunkSplitter), so that several ranges can be parsed at once.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class CSVRangeParseTask implements Callable<List<Record>> {
+	private FileChannel  channel;
+	private long         rangeStart;
+	private long         rangeEnd;
+	private byte         delimiter;
+	private byte         quote;
+	private RecordSchema schema;
+	private Charset      charset;
+
+	/**
+	 * <p>
+	 *    Creates a task to parse the range specified
+	 * </p>
+	 *
+	 * @param channel Open channel to the file
+	 * @param rangeStart Offset of the first record of the range
+	 * @param rangeEnd Offset of the first record of the next range
+	 * @param delimiter Delimiter byte
+	 * @param quote Quote byte
+	 * @param schema Schema shared by all records
+	 * @param charset Character set of the file
+	 */
+	CSVRangeParseTask(FileChannel channel, long rangeStart, long rangeEnd, byte delimiter, byte quote, RecordSchema schema, Charset charset){
+		this.channel    = channel;
+		this.rangeStart = rangeStart;
+		this.rangeEnd   = rangeEnd;
+		this.delimiter  = delimiter;
+		this.quote      = quote;
+		this.schema     = schema;
+		this.charset    = charset;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	public List<Record> call() throws Exception {
+		int             windowSize = (int)Math.min(MappedCSVParser.DEFAULT_WINDOW_SIZE, Math.max(rangeEnd - rangeStart, 1l));
+		MappedCSVParser parser     = new MappedCSVParser(channel, rangeStart, rangeEnd, delimiter, quote, windowSize);
+		List<Record>    records    = new ArrayList<Record>();
+
+		while(parser.next()){
+			records.add(MappedCSVRecord.fromParser(schema, parser, charset, (char)quote));
+		}
+
+		return records;
+	}
+}
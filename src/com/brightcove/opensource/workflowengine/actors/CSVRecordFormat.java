@@ -0,0 +1,135 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Writes records as rows of a CSV file.
+ * </p>
+ * 
+ * <p>
+ *    The columns are fixed once, either from the names given or, failing
+ *    that, from the property names of the first record, and every row has
+ *    exactly those columns in that order.  A record's first property with
+ *    each name fills the column; properties without a column are left out
+ *    and missing ones are written as empty cells.  Values are only quoted
+ *    when they contain the delimiter, the quote or a line end, with quotes
+ *    inside them doubled, so the output reads back with CSVInputAdapter.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class CSVRecordFormat implements RecordFormat {
+	private List<String> columns;
+	private char         delimiter;
+	private char         quote;
+	private Boolean      writeHeader;
+	
+	/**
+	 * <p>
+	 *    Creates a format with the settings specified
+	 * </p>
+	 * 
+	 * @param columns Names of the columns to write, or null to take them from the first record
+	 * @param delimiter Delimiter between cells
+	 * @param quote Quote character
+	 * @param writeHeader Whether to write a header row of column names
+	 */
+	CSVRecordFormat(List<String> columns, char delimiter, char quote, Boolean writeHeader){
+		this.columns     = columns;
+		this.delimiter   = delimiter;
+		this.quote       = quote;
+		this.writeHeader = writeHeader;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendHeader(java.lang.StringBuilder)
+	 */
+	public void appendHeader(StringBuilder buffer){
+		if(columns != null){
+			appendHeaderRow(buffer);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#continueOutput()
+	 */
+	public void continueOutput(){
+		// Columns not given are still taken from the first record, but the
+		// header row is already there
+		writeHeader = false;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendRecord(com.brightcove.opensource.workflowengine.record.Record, java.lang.StringBuilder)
+	 */
+	public void appendRecord(Record record, StringBuilder buffer){
+		if(columns == null){
+			Set<String> names = new LinkedHashSet<String>();
+			for(Property<?> property : record.getAllProperties()){
+				names.add(property.getName());
+			}
+			columns = new ArrayList<String>(names);
+			appendHeaderRow(buffer);
+		}
+		
+		for(int idx=0; idx<columns.size(); idx++){
+			if(idx > 0){
+				buffer.append(delimiter);
+			}
+			Object value = record.getFirstPropertyValue(columns.get(idx));
+			if(value != null){
+				appendCell(value.toString(), buffer);
+			}
+		}
+		buffer.append('\n');
+	}
+	
+	private void appendHeaderRow(StringBuilder buffer){
+		if(! writeHeader){
+			return;
+		}
+		
+		for(int idx=0; idx<columns.size(); idx++){
+			if(idx > 0){
+				buffer.append(delimiter);
+			}
+			appendCell(columns.get(idx), buffer);
+		}
+		buffer.append('\n');
+	}
+	
+	private void appendCell(String value, StringBuilder buffer){
+		if(! needsQuotes(value)){
+			buffer.append(value);
+			return;
+		}
+		
+		buffer.append(quote);
+		for(int idx=0; idx<value.length(); idx++){
+			char c = value.charAt(idx);
+			if(c == quote){
+				buffer.append(quote);
+			}
+			buffer.append(c);
+		}
+		buffer.append(quote);
+	}
+	
+	private boolean needsQuotes(String value){
+		for(int idx=0; idx<value.length(); idx++){
+			char c = value.charAt(idx);
+			if((c == delimiter) || (c == quote) || (c == '\r') || (c == '\n')){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,43 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *    Creates numbered daemon threads for an actor's background work, so a
+ *    stuck API call can never keep the virtual machine from exiting.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class DaemonThreadFactory implements ThreadFactory {
+	private String        prefix;
+	private AtomicInteger count;
+	
+	/**
+	 * <p>
+	 *    Creates a factory naming threads with the prefix specified
+	 * </p>
+	 * 
+	 * @param kind What the threads do (e.g. "fetch")
+	 * @param actorName Name of the actor the threads work for (may be null)
+	 */
+	DaemonThreadFactory(String kind, String actorName){
+		this.prefix = "workflow-" + kind;
+		if(actorName != null){
+			this.prefix += "-" + actorName;
+		}
+		this.count = new AtomicInteger(0);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	public Thread newThread(Runnable runnable){
+		Thread thread = new Thread(runnable, prefix + "-" + count.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
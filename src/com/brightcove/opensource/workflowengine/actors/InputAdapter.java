@@ -7,7 +7,8 @@ import com.brightcove.opensource.workflowengine.record.Record;
 
 /**
  * <p>
- *    Generic input adapter - for demonstration purposes only.
+ *    Generic input adapter - for demonstration purposes only.  See
+ *    LoadGeneratorInputAdapter for generating records to load test with.
  * </p>
  * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
@@ -37,5 +38,7 @@ public class InputAdapter extends Actor {
 			test.addProperty(id);
 			handleRecord(test);
 		}
+		
+		super.run();
 	}
 }
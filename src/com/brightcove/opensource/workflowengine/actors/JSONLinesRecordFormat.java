@@ -0,0 +1,139 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Writes each record as a JSON object on a line of its own (JSON lines).
+ * </p>
+ * 
+ * <p>
+ *    If column names are given, every object has exactly those keys, in
+ *    that order, with null for properties a record lacks.  Otherwise each
+ *    object has a key for every property name of its record, in the order
+ *    the properties were added, leaving out properties without a name (a
+ *    JSON key has to be a string).  Either way a record's first property
+ *    with a name provides the value.  Values are written as JSON strings.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class JSONLinesRecordFormat implements RecordFormat {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private List<String> columns;
+	
+	/**
+	 * <p>
+	 *    Creates a format with the settings specified
+	 * </p>
+	 * 
+	 * @param columns Names of the keys to write, or null to write every property
+	 */
+	JSONLinesRecordFormat(List<String> columns){
+		this.columns = columns;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendHeader(java.lang.StringBuilder)
+	 */
+	public void appendHeader(StringBuilder buffer){
+		// No header
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#continueOutput()
+	 */
+	public void continueOutput(){
+		// No header
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendRecord(com.brightcove.opensource.workflowengine.record.Record, java.lang.StringBuilder)
+	 */
+	public void appendRecord(Record record, StringBuilder buffer){
+		buffer.append('{');
+		
+		if(columns != null){
+			for(int idx=0; idx<columns.size(); idx++){
+				if(idx > 0){
+					buffer.append(',');
+				}
+				appendMember(columns.get(idx), record.getFirstPropertyValue(columns.get(idx)), buffer);
+			}
+		}
+		else{
+			Boolean first = true;
+			for(Property<?> property : record.getAllProperties()){
+				// Properties without a name have no key to go under, and later
+				// properties sharing a name with an earlier one are skipped
+				if((property.getName() == null) || (record.getFirstProperty(property.getName()) != property)){
+					continue;
+				}
+				if(! first){
+					buffer.append(',');
+				}
+				first = false;
+				appendMember(property.getName(), property.getValue(), buffer);
+			}
+		}
+		
+		buffer.append("}\n");
+	}
+	
+	private void appendMember(String name, Object value, StringBuilder buffer){
+		appendString(name, buffer);
+		buffer.append(':');
+		if(value == null){
+			buffer.append("null");
+		}
+		else{
+			appendString(value.toString(), buffer);
+		}
+	}
+	
+	private void appendString(String value, StringBuilder buffer){
+		if(value == null){
+			buffer.append("null");
+			return;
+		}
+		
+		// Runs of characters that need no escaping are appended in one go
+		buffer.append('"');
+		int runStart = 0;
+		for(int idx=0; idx<value.length(); idx++){
+			char c = value.charAt(idx);
+			if((c >= 0x20) && (c != '"') && (c != '\\')){
+				continue;
+			}
+			
+			buffer.append(value, runStart, idx);
+			runStart = idx + 1;
+			switch(c){
+				case '"':
+					buffer.append("\\\"");
+					break;
+				case '\\':
+					buffer.append("\\\\");
+					break;
+				case '\n':
+					buffer.append("\\n");
+					break;
+				case '\r':
+					buffer.append("\\r");
+					break;
+				case '\t':
+					buffer.append("\\t");
+					break;
+				default:
+					buffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			}
+		}
+		buffer.append(value, runStart, value.length());
+		buffer.append('"');
+	}
+}
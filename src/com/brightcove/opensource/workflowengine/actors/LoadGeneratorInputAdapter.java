@@ -0,0 +1,244 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.record.Record;
+import com.brightcove.opensource.workflowengine.record.RecordSchema;
+import com.brightcove.opensource.workflowengine.record.SchemaRecord;
+
+/**
+ * <p>
+ *    Generates synthetic records at a steady rate, for load testing
+ *    workflows (see the --load-test option of ExecWorkflow).
+ * </p>
+ *
+ * <p>
+ *    The following configuration properties will be honored:<ul>
+ *        <li>record-count - Number of records to generate (1000000 if
+ *            omitted).</li>
+ *        <li>records-per-second - Rate to generate records at (as fast as
+ *            consumers take them if omitted).</li>
+ *        <li>field-count - Number of value fields on each record, named
+ *            field-1, field-2, ... (6 if omitted).</li>
+ *        <li>value-size - Average length of each value, which varies
+ *            between half and one and a half times this (16 if
+ *            omitted).</li>
+ *        <li>key-cardinality - Number of distinct keys (record-count if
+ *            omitted).</li>
+ *        <li>key-distribution - "uniform" (default) or "zipf", for a few
+ *            keys to turn up far more often than the rest.</li>
+ *        <li>key-skew - Exponent of the zipf distribution (1.0 if
+ *            omitted).</li>
+ *        <li>id-field - Name of the field holding each record's sequence
+ *            number, from 0 ("id" if omitted).</li>
+ *        <li>key-field - Name of the field holding each record's key, from
+ *            1 to key-cardinality ("key" if omitted).</li>
+ *        <li>seed - Seed for the random values (0 if omitted).</li>
+ *    </ul>
+ * </p>
+ *
+ * <p>
+ *    The values of each record are worked out from the seed and the
+ *    record's sequence number alone, so the same settings always generate
+ *    the same records, and a resumed run (see the checkpoint-file workflow
+ *    property) carries on with exactly the records that were left.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class LoadGeneratorInputAdapter extends Actor {
+	public static final String  DISTRIBUTION_UNIFORM = "uniform";
+	public static final String  DISTRIBUTION_ZIPF    = "zipf";
+	public static final Long    DEFAULT_RECORD_COUNT = 1000000l;
+	public static final Integer DEFAULT_FIELD_COUNT  = 6;
+	public static final Integer DEFAULT_VALUE_SIZE   = 16;
+
+	// Values are cut from a block of random characters
+	private static final Integer VALUE_POOL_SIZE = 1 << 16;
+
+	private Long             recordCount;
+	private Double           recordsPerSecond;
+	private Integer          fieldCount;
+	private Integer          valueSize;
+	private Long             keyCardinality;
+	private ZipfDistribution keys;
+	private RecordSchema     schema;
+	private char[]           valuePool;
+	private SplitMix         random;
+	private long             generated;
+
+	/**
+	 * <p>
+	 *    Default constructor - workflow this actor is part of must be
+	 *    provided
+	 * </p>
+	 *
+	 * @param workflow Workflow this actor will be part of
+	 */
+	public LoadGeneratorInputAdapter(Workflow workflow){
+		super(workflow);
+
+		keys      = null;
+		generated = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#run()
+	 */
+	public void run(){
+		if(! hasStarted()){
+			configure();
+
+			Map<String, String> resumeState = getResumeState();
+			if((resumeState != null) && (resumeState.get("records") != null)){
+				try{
+					generated = Long.parseLong(resumeState.get("records"));
+				}
+				catch(NumberFormatException nfe){
+					die("LoadGeneratorInputAdapter can't parse checkpoint records '" + resumeState.get("records") + "'.  Exception caught: '" + nfe + "'.");
+				}
+				log("LoadGeneratorInputAdapter resuming after " + generated + " record(s).");
+			}
+
+			generate();
+		}
+
+		super.run();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		state.put("records", "" + generated);
+	}
+
+	private void configure(){
+		recordCount      = parseLong("record-count", DEFAULT_RECORD_COUNT, 1l);
+		recordsPerSecond = parseDouble("records-per-second", 0d);
+		fieldCount       = parseLong("field-count", (long)DEFAULT_FIELD_COUNT, 0l).intValue();
+		valueSize        = parseLong("value-size", (long)DEFAULT_VALUE_SIZE, 0l).intValue();
+		keyCardinality   = parseLong("key-cardinality", recordCount, 1l);
+
+		if(valueSize > VALUE_POOL_SIZE){
+			die("LoadGeneratorInputAdapter value-size can't be more than " + VALUE_POOL_SIZE + " (was " + valueSize + ").");
+		}
+
+		String distribution = getFirstPropertyValue("key-distribution");
+		if(DISTRIBUTION_ZIPF.equalsIgnoreCase(distribution)){
+			keys = new ZipfDistribution(keyCardinality, parseDouble("key-skew", 1d));
+		}
+		else if((distribution != null) && (! DISTRIBUTION_UNIFORM.equalsIgnoreCase(distribution))){
+			die("LoadGeneratorInputAdapter given unknown key-distribution '" + distribution + "'.  Expected '" + DISTRIBUTION_UNIFORM + "' or '" + DISTRIBUTION_ZIPF + "'.");
+		}
+
+		String idField  = getFirstPropertyValue("id-field");
+		String keyField = getFirstPropertyValue("key-field");
+		List<String> names = new ArrayList<String>();
+		names.add((idField == null) ? "id" : idField);
+		names.add((keyField == null) ? "key" : keyField);
+		for(int idx=1; idx<=fieldCount; idx++){
+			names.add("field-" + idx);
+		}
+		schema = new RecordSchema(names);
+
+		random = new SplitMix(parseLong("seed", 0l, Long.MIN_VALUE));
+
+		// Enough past the end that a value starting anywhere in the pool fits
+		valuePool = new char[VALUE_POOL_SIZE + (valueSize * 2)];
+		random.moveTo(-1);
+		for(int idx=0; idx<valuePool.length; idx++){
+			valuePool[idx] = (char)('a' + random.nextLong(26));
+		}
+	}
+
+	private void generate(){
+		log("LoadGeneratorInputAdapter generating " + (recordCount - generated) + " record(s)" + ((recordsPerSecond > 0) ? (" at " + recordsPerSecond + " per second") : "") + ".");
+
+		// Checking the clock for every record would cost more than the
+		// records themselves at high rates, so pace about every millisecond
+		long paceEvery = 1;
+		if(recordsPerSecond > 0){
+			paceEvery = Math.max(1, (long)(recordsPerSecond / 1000));
+		}
+
+		long first = generated;
+		long start = System.nanoTime();
+		while(generated < recordCount){
+			if((recordsPerSecond > 0) && (((generated - first) % paceEvery) == 0)){
+				long due  = start + (long)((generated - first) * 1000000000d / recordsPerSecond);
+				long wait = due - System.nanoTime();
+				if(wait > 0){
+					LockSupport.parkNanos(wait);
+				}
+			}
+
+			handleRecord(buildRecord(generated));
+			generated++;
+			checkpointIfDue(1);
+		}
+
+		log("LoadGeneratorInputAdapter generated " + (generated - first) + " record(s) in " + ((System.nanoTime() - start) / 1000000) + " ms.");
+	}
+
+	private Record buildRecord(long position){
+		random.moveTo(position);
+
+		String[] values = new String[2 + fieldCount];
+		values[0] = "" + position;
+		if(keys == null){
+			values[1] = "" + (1 + random.nextLong(keyCardinality));
+		}
+		else{
+			values[1] = "" + keys.sample(random);
+		}
+
+		for(int idx=0; idx<fieldCount; idx++){
+			int offset = (int)random.nextLong(VALUE_POOL_SIZE);
+			int length = (valueSize / 2) + (int)random.nextLong(valueSize + 1);
+			values[2 + idx] = new String(valuePool, offset, length);
+		}
+
+		return new SchemaRecord(schema, values);
+	}
+
+	private Long parseLong(String name, Long defaultValue, Long minimum){
+		String value = getFirstPropertyValue(name);
+		Long   ret   = defaultValue;
+		if(value != null){
+			try{
+				ret = Long.parseLong(value.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("LoadGeneratorInputAdapter can't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(ret < minimum){
+				die("LoadGeneratorInputAdapter " + name + " must be at least " + minimum + " (was " + ret + ").");
+			}
+		}
+		return ret;
+	}
+
+	private Double parseDouble(String name, Double defaultValue){
+		String value = getFirstPropertyValue(name);
+		Double ret   = defaultValue;
+		if(value != null){
+			try{
+				ret = Double.parseDouble(value.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("LoadGeneratorInputAdapter can't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(ret < 0){
+				die("LoadGeneratorInputAdapter " + name + " can't be negative (was " + ret + ").");
+			}
+		}
+		return ret;
+	}
+}
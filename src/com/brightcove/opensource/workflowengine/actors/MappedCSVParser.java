@@ -0,0 +1,336 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ *    Splits a memory-mapped file into CSV records without decoding it.
+ * </p>
+ *
+ * <p>
+ *    The parser works directly on the bytes of the file, looking for the
+ *    delimiter, quote and line-end bytes, and only records where each field
+ *    starts and ends.  It follows the same rules as the default
+ *    commons-csv format: CR, LF or CRLF end a record, empty lines are
+ *    skipped, a quote inside a quoted field is written as two quotes, and
+ *    only whitespace may follow the closing quote of a field.  Since the
+ *    delimiter and quote are matched as single bytes, the file must be in
+ *    a character set that encodes them (and CR/LF) as single ASCII bytes
+ *    that never appear inside other characters (e.g. UTF-8 or ISO-8859-1).
+ * </p>
+ *
+ * <p>
+ *    The file is mapped a window at a time, so files larger than 2GB can be
+ *    read.  A record that crosses the end of a window is re-read from a new
+ *    window starting at that record.  Only records starting before the end
+ *    of the range given are returned, but the last of them may extend past
+ *    it.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class MappedCSVParser {
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private FileChannel channel;
+	private long        fileSize;
+	private long        rangeEnd;
+	private byte        delimiter;
+	private byte        quote;
+	private int         windowSize;
+
+	private ByteBuffer  window;
+	private long        windowStart;
+	private int         windowLimit;
+	private int         position;
+
+	private long        recordStart;
+	private int         fieldCount;
+	private int[]       bounds;
+	private boolean[]   escaped;
+	private boolean     anyEscaped;
+
+	/**
+	 * <p>
+	 *    Creates a parser for records starting in the byte range specified
+	 * </p>
+	 *
+	 * @param channel Open channel to the file
+	 * @param rangeStart Offset of the first byte to parse (must be the start of a record)
+	 * @param rangeEnd Offset just past the last byte a returned record may start at
+	 * @param delimiter Delimiter byte
+	 * @param quote Quote byte
+	 * @param windowSize Number of bytes to map at a time
+	 * @throws IOException If the file can't be mapped
+	 */
+	MappedCSVParser(FileChannel channel, long rangeStart, long rangeEnd, byte delimiter, byte quote, int windowSize) throws IOException {
+		this.channel    = channel;
+		this.fileSize   = channel.size();
+		this.rangeEnd   = Math.min(rangeEnd, fileSize);
+		this.delimiter  = delimiter;
+		this.quote      = quote;
+		this.windowSize = windowSize;
+
+		this.bounds     = new int[64];
+		this.escaped    = new boolean[32];
+
+		map(rangeStart, windowSize);
+	}
+
+	/**
+	 * <p>
+	 *    Moves on to the next record
+	 * </p>
+	 *
+	 * @return False if there are no more records in the range
+	 * @throws IOException If the file is malformed or can't be mapped
+	 */
+	boolean next() throws IOException {
+		while(true){
+			if(parseRecord()){
+				return true;
+			}
+			if(windowStart + position >= rangeEnd){
+				return false;
+			}
+
+			// Ran off the end of the window - map again from the start of the
+			// record, with a bigger window if the record alone filled it
+			long start = windowStart + position;
+			int  size  = windowSize;
+			if(windowStart == start){
+				size = (int)Math.min((long)windowLimit * 2l, Integer.MAX_VALUE);
+				if(size <= windowLimit){
+					throw new IOException("CSV record at offset " + start + " is too large to map.");
+				}
+			}
+			map(start, size);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Returns the window of the file the current record lies in.  Field
+	 *    offsets are relative to this buffer, which stays valid for as long
+	 *    as it is referenced.
+	 * </p>
+	 *
+	 * @return Mapped window holding the current record
+	 */
+	ByteBuffer getWindow(){
+		return window;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the file offset of the current record
+	 * </p>
+	 *
+	 * @return Offset of current record
+	 */
+	long getRecordStart(){
+		return recordStart;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the file offset just past the current record (including its
+	 *    line end) - i.e. where the next record starts.
+	 * </p>
+	 *
+	 * @return Offset just past current record
+	 */
+	long getRecordEnd(){
+		return windowStart + position;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of fields in the current record
+	 * </p>
+	 *
+	 * @return Number of fields
+	 */
+	int getFieldCount(){
+		return fieldCount;
+	}
+
+	/**
+	 * <p>
+	 *    Returns a copy of the start and end offsets (within the window) of
+	 *    every field of the current record, as start/end pairs.
+	 * </p>
+	 *
+	 * @return Field bounds
+	 */
+	int[] copyBounds(){
+		int[] ret = new int[fieldCount * 2];
+		System.arraycopy(bounds, 0, ret, 0, ret.length);
+		return ret;
+	}
+
+	/**
+	 * <p>
+	 *    Returns which fields of the current record contain doubled quotes
+	 *    that must be collapsed once decoded, or null if none do.
+	 * </p>
+	 *
+	 * @return Escaped flag per field, or null
+	 */
+	boolean[] copyEscaped(){
+		if(! anyEscaped){
+			return null;
+		}
+		boolean[] ret = new boolean[fieldCount];
+		System.arraycopy(escaped, 0, ret, 0, fieldCount);
+		return ret;
+	}
+
+	private void map(long start, int size) throws IOException {
+		long length = Math.min((long)size, fileSize - start);
+
+		window      = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		windowStart = start;
+		windowLimit = (int)length;
+		position    = 0;
+	}
+
+	private boolean windowIsLast(){
+		return (windowStart + windowLimit) >= fileSize;
+	}
+
+	/*
+	 * Parses the record at the current position.  Returns false (leaving
+	 * the position at the start of the record) if there is no record in the
+	 * range, or if the record runs off the end of the window.
+	 */
+	private boolean parseRecord() throws IOException {
+		int pos = position;
+
+		// Empty lines are skipped
+		while((pos < windowLimit) && ((window.get(pos) == CR) || (window.get(pos) == LF))){
+			pos++;
+		}
+		if(pos >= windowLimit){
+			position = pos;
+			return false;
+		}
+		if(windowStart + pos >= rangeEnd){
+			position = pos;
+			return false;
+		}
+
+		int start  = pos;
+		fieldCount = 0;
+		anyEscaped = false;
+
+		while(true){
+			if((pos < windowLimit) && (window.get(pos) == quote)){
+				pos++;
+				int     contentStart = pos;
+				int     contentEnd   = -1;
+				boolean hasEscapes   = false;
+
+				while(contentEnd < 0){
+					if(pos >= windowLimit){
+						if(windowIsLast()){
+							throw new IOException("(offset " + (windowStart + start) + ") EOF reached before encapsulated token finished");
+						}
+						return incomplete(start);
+					}
+					if(window.get(pos) == quote){
+						if(pos + 1 >= windowLimit){
+							if(! windowIsLast()){
+								return incomplete(start);
+							}
+							contentEnd = pos;
+						}
+						else if(window.get(pos + 1) == quote){
+							hasEscapes = true;
+							pos++;
+						}
+						else{
+							contentEnd = pos;
+						}
+					}
+					pos++;
+				}
+
+				// Only whitespace may follow the closing quote
+				while((pos < windowLimit) && isWhitespace(window.get(pos))){
+					pos++;
+				}
+				if((pos < windowLimit) && (window.get(pos) != delimiter) && (window.get(pos) != CR) && (window.get(pos) != LF)){
+					throw new IOException("(offset " + (windowStart + pos) + ") invalid char between encapsulated token and delimiter");
+				}
+
+				addField(contentStart, contentEnd, hasEscapes);
+			}
+			else{
+				int contentStart = pos;
+				while(pos < windowLimit){
+					byte b = window.get(pos);
+					if((b == delimiter) || (b == CR) || (b == LF)){
+						break;
+					}
+					pos++;
+				}
+				addField(contentStart, pos, false);
+			}
+
+			if(pos >= windowLimit){
+				if(! windowIsLast()){
+					return incomplete(start);
+				}
+				break;
+			}
+
+			byte b = window.get(pos);
+			pos++;
+			if(b == delimiter){
+				continue;
+			}
+			if((b == CR) && (pos < windowLimit) && (window.get(pos) == LF)){
+				pos++;
+			}
+			break;
+		}
+
+		recordStart = windowStart + start;
+		position    = pos;
+		return true;
+	}
+
+	private boolean incomplete(int start){
+		position = start;
+		return false;
+	}
+
+	private boolean isWhitespace(byte b){
+		return (b != delimiter) && ((b == ' ') || (b == '\t') || (b == '\f'));
+	}
+
+	private void addField(int start, int end, boolean hasEscapes){
+		if(bounds.length < (fieldCount + 1) * 2){
+			int[] newBounds = new int[bounds.length * 2];
+			System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+			bounds = newBounds;
+
+			boolean[] newEscaped = new boolean[escaped.length * 2];
+			System.arraycopy(escaped, 0, newEscaped, 0, escaped.length);
+			escaped = newEscaped;
+		}
+
+		bounds[fieldCount * 2]     = start;
+		bounds[fieldCount * 2 + 1] = end;
+		escaped[fieldCount]        = hasEscapes;
+		anyEscaped                 = anyEscaped || hasEscapes;
+		fieldCount++;
+	}
+}
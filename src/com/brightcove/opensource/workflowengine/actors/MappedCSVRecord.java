@@ -0,0 +1,132 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.RecordSchema;
+import com.brightcove.opensource.workflowengine.record.SchemaRecord;
+
+/**
+ * <p>
+ *    A SchemaRecord backed by a row of a memory-mapped CSV file.  Each value
+ *    is only decoded from the file's bytes the first time it is asked for.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class MappedCSVRecord extends SchemaRecord {
+	private ByteBuffer window;
+	private int[]      bounds;
+	private boolean[]  escaped;
+	private Charset    charset;
+	private String     quote;
+	private String[]   decoded;
+
+	/**
+	 * <p>
+	 *    Creates a record for a row of a mapped file
+	 * </p>
+	 *
+	 * @param schema Schema naming the values
+	 * @param window Mapped window holding the row
+	 * @param bounds Start/end offsets of each value within the window
+	 * @param escaped Values containing doubled quotes, or null if none do
+	 * @param charset Character set of the file
+	 * @param quote Quote character
+	 */
+	MappedCSVRecord(RecordSchema schema, ByteBuffer window, int[] bounds, boolean[] escaped, Charset charset, char quote){
+		super(schema, bounds.length / 2);
+
+		this.window  = window;
+		this.bounds  = bounds;
+		this.escaped = escaped;
+		this.charset = charset;
+		this.quote   = String.valueOf(quote);
+		this.decoded = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.SchemaRecord#getSlotValue(int)
+	 */
+	protected String getSlotValue(int slot){
+		if(decoded == null){
+			decoded = new String[bounds.length / 2];
+		}
+		if(decoded[slot] == null){
+			decoded[slot] = decode(window, bounds[slot * 2], bounds[slot * 2 + 1], charset);
+			if((escaped != null) && escaped[slot]){
+				decoded[slot] = decoded[slot].replace(quote + quote, quote);
+			}
+		}
+		return decoded[slot];
+	}
+
+	/**
+	 * <p>
+	 *    Creates a record for the row the parser is currently at.  Values
+	 *    past the end of the schema are decoded straight away and added as
+	 *    Column-N properties.
+	 * </p>
+	 *
+	 * @param schema Schema naming the values
+	 * @param parser Parser positioned at a row
+	 * @param charset Character set of the file
+	 * @param quote Quote character
+	 * @return Record for the current row
+	 */
+	static MappedCSVRecord fromParser(RecordSchema schema, MappedCSVParser parser, Charset charset, char quote){
+		ByteBuffer window  = parser.getWindow();
+		int[]      bounds  = parser.copyBounds();
+		boolean[]  escaped = parser.copyEscaped();
+
+		MappedCSVRecord record = new MappedCSVRecord(schema, window, bounds, escaped, charset, quote);
+		for(int idx=schema.size(); idx<parser.getFieldCount(); idx++){
+			Property<?> prop = new Property<String>("Column-"+idx, decodeField(window, bounds, escaped, idx, charset, quote));
+			record.addProperty(prop);
+		}
+		return record;
+	}
+
+	/**
+	 * <p>
+	 *    Decodes a single value of a row, collapsing doubled quotes
+	 * </p>
+	 *
+	 * @param window Mapped window holding the row
+	 * @param bounds Start/end offsets of each value within the window
+	 * @param escaped Values containing doubled quotes, or null if none do
+	 * @param idx Index of value to decode
+	 * @param charset Character set of the file
+	 * @param quote Quote character
+	 * @return Decoded value
+	 */
+	static String decodeField(ByteBuffer window, int[] bounds, boolean[] escaped, int idx, Charset charset, char quote){
+		String value = decode(window, bounds[idx * 2], bounds[idx * 2 + 1], charset);
+		if((escaped != null) && escaped[idx]){
+			value = value.replace("" + quote + quote, "" + quote);
+		}
+		return value;
+	}
+
+	/**
+	 * <p>
+	 *    Decodes a slice of a mapped window.  Safe to call from several
+	 *    threads at once.
+	 * </p>
+	 *
+	 * @param window Mapped window
+	 * @param start Offset of first byte
+	 * @param end Offset just past last byte
+	 * @param charset Character set to decode with
+	 * @return Decoded string
+	 */
+	static String decode(ByteBuffer window, int start, int end, Charset charset){
+		byte[]     bytes = new byte[end - start];
+		ByteBuffer view  = window.duplicate();
+		view.position(start);
+		view.get(bytes);
+		return new String(bytes, charset);
+	}
+}
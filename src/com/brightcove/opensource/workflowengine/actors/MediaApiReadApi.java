@@ -0,0 +1,53 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.brightcove.commons.catalog.objects.Videos;
+import com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoFieldEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoStateFilterEnum;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.mediaapi.wrapper.ReadApi;
+
+/**
+ * <p>
+ *    Default VideoCloudReadApi - calls the Video Cloud Media API through the
+ *    Media API wrapper.
+ * </p>
+ * 
+ * <p>
+ *    The wrapper's ReadApi isn't documented as thread safe, so each thread
+ *    gets a ReadApi of its own.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class MediaApiReadApi implements VideoCloudReadApi {
+	private ThreadLocal<ReadApi> readApis;
+	
+	/**
+	 * <p>
+	 *    Creates a read API logging through the logger specified
+	 * </p>
+	 * 
+	 * @param logger Logger for the Media API wrapper
+	 */
+	public MediaApiReadApi(final Logger logger){
+		readApis = new ThreadLocal<ReadApi>(){
+			protected ReadApi initialValue(){
+				return new ReadApi(logger);
+			}
+		};
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudReadApi#findModifiedVideos(java.lang.String, java.lang.Long, java.util.Set, java.lang.Integer, java.lang.Integer, com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum, com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum, java.util.EnumSet, java.util.Set)
+	 */
+	public Videos findModifiedVideos(String readToken, Long fromDate, Set<VideoStateFilterEnum> filter, Integer pageSize, Integer pageNumber, SortByTypeEnum sortBy, SortOrderTypeEnum sortOrderType, EnumSet<VideoFieldEnum> videoFields, Set<String> customFields) throws BrightcoveException {
+		return readApis.get().FindModifiedVideos(readToken, fromDate, filter, pageSize, pageNumber, sortBy, sortOrderType, videoFields, customFields);
+	}
+}
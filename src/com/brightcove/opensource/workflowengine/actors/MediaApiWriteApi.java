@@ -0,0 +1,47 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.logging.Logger;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.mediaapi.wrapper.WriteApi;
+
+/**
+ * <p>
+ *    Default VideoCloudWriteApi - calls the Video Cloud Media API through
+ *    the Media API wrapper.
+ * </p>
+ * 
+ * <p>
+ *    The wrapper's WriteApi isn't documented as thread safe, so each thread
+ *    gets a WriteApi of its own.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class MediaApiWriteApi implements VideoCloudWriteApi {
+	private ThreadLocal<WriteApi> writeApis;
+	
+	/**
+	 * <p>
+	 *    Creates a write API logging through the logger specified
+	 * </p>
+	 * 
+	 * @param logger Logger for the Media API wrapper
+	 */
+	public MediaApiWriteApi(final Logger logger){
+		writeApis = new ThreadLocal<WriteApi>(){
+			protected WriteApi initialValue(){
+				return new WriteApi(logger);
+			}
+		};
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi#updateVideo(java.lang.String, com.brightcove.commons.catalog.objects.Video)
+	 */
+	public Video updateVideo(String writeToken, Video video) throws BrightcoveException {
+		return writeApis.get().UpdateVideo(writeToken, video);
+	}
+}
@@ -1,5 +1,6 @@
 package com.brightcove.opensource.workflowengine.actors;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -7,6 +8,9 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import com.brightcove.opensource.workflowengine.Actor;
 import com.brightcove.opensource.workflowengine.Workflow;
@@ -24,9 +28,45 @@ import com.brightcove.opensource.workflowengine.record.Record;
  * </p>
  * 
  * <p>
+ *    Records are gathered in memory and written to the file in groups of
+ *    about buffer-size characters, rather than one write per record.  With
+ *    async-write set, each group is handed to a background thread to
+ *    write, so the actor can go on formatting records while the previous
+ *    group is written.  Whatever is still gathered is always written out
+ *    when the actor is finalized.
+ * </p>
+ * 
+ * <p>
+ *    When the workflow takes a checkpoint, everything gathered is written
+ *    out and synced to disk, and the length of the file is saved.  A
+ *    resumed run cuts the file back to that length and appends to it, so
+ *    records passed on again after the checkpoint aren't written twice.
+ * </p>
+ * 
+ * <p>
  *    The following configuration properties will be honored:<ul>
  *        <li>output-file - Location of file to write</li>
  *        <li>character-set - Character set to use for writing ("UTF-8" if omitted)</li>
+ *        <li>buffer-size - Number of characters gathered before they are
+ *            written (65536 if omitted)</li>
+ *        <li>flush-interval - Longest time, in milliseconds, records are
+ *            left gathered before they are written and flushed to the file
+ *            (0 - no limit - if omitted).  Checked as records arrive.</li>
+ *        <li>async-write - "true" to write to the file from a background
+ *            thread ("false" if omitted)</li>
+ *        <li>write-queue-size - Number of groups waiting for the background
+ *            thread before the actor blocks (16 if omitted)</li>
+ *        <li>format - "text" (default) to write each record's debugging
+ *            representation, "csv" to write a CSV file, or "jsonl" to write
+ *            each record as a JSON object on its own line</li>
+ *        <li>columns - Comma separated names of the properties to write,
+ *            in order, for the csv and jsonl formats.  If omitted, csv takes
+ *            its columns from the first record, and jsonl writes every
+ *            property of each record.</li>
+ *        <li>delimiter - Delimiter between csv cells (defaults to ,)</li>
+ *        <li>quote - Quote character for csv cells (defaults to ")</li>
+ *        <li>has-header-row - If "false", csv output has no header row of
+ *            column names (defaults to true)</li>
  *    </ul>
  * </p>
  * 
@@ -35,7 +75,21 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *
  */
 public class OutputAdapter extends Actor {
-	Writer writer;
+	public static final Integer DEFAULT_BUFFER_SIZE      = 65536;
+	public static final Integer DEFAULT_WRITE_QUEUE_SIZE = 16;
+	public static final String  FORMAT_TEXT              = "text";
+	public static final String  FORMAT_CSV               = "csv";
+	public static final String  FORMAT_JSONL             = "jsonl";
+	
+	Writer           writer;
+	FileOutputStream fileStream;
+	String           outputPath;
+	RecordFormat     format;
+	StringBuilder    pending;
+	Integer          bufferSize;
+	Long             flushInterval;
+	Boolean          asyncWrite;
+	Long             lastFlush;
 	
 	/**
 	 * <p>
@@ -48,7 +102,15 @@ public class OutputAdapter extends Actor {
 	public OutputAdapter(Workflow workflow){
 		super(workflow);
 		
-		writer = null;
+		writer        = null;
+		fileStream    = null;
+		outputPath    = null;
+		format        = null;
+		pending       = null;
+		bufferSize    = DEFAULT_BUFFER_SIZE;
+		flushInterval = 0l;
+		asyncWrite    = false;
+		lastFlush     = 0l;
 	}
 	
 	/* (non-Javadoc)
@@ -61,6 +123,21 @@ public class OutputAdapter extends Actor {
 				die("OutputAdapter requires an output-file property.");
 			}
 			File outputFile = new File(outputFileProp.getValue());
+			outputPath = outputFile.getAbsolutePath();
+			
+			Long                resumeBytes = null;
+			Map<String, String> resumeState = getResumeState();
+			if((resumeState != null) && (resumeState.get("bytes") != null)){
+				if(! outputPath.equals(resumeState.get("output-file"))){
+					die("OutputAdapter can't resume writing " + outputPath + " from a checkpoint of '" + resumeState.get("output-file") + "'.");
+				}
+				try{
+					resumeBytes = Long.parseLong(resumeState.get("bytes"));
+				}
+				catch(NumberFormatException nfe){
+					die("OutputAdapter can't parse checkpoint bytes '" + resumeState.get("bytes") + "'.  Exception caught: '" + nfe + "'.");
+				}
+			}
 			
 			String           characterSet = "UTF-8";
 			Property<String> charSetProp  = getFirstProperty("character-set");
@@ -68,8 +145,38 @@ public class OutputAdapter extends Actor {
 				characterSet = charSetProp.getValue();
 			}
 			
+			bufferSize    = parseInteger("buffer-size", DEFAULT_BUFFER_SIZE);
+			flushInterval = parseLong("flush-interval", 0l);
+			asyncWrite    = "true".equalsIgnoreCase(getFirstPropertyValue("async-write"));
+			if(bufferSize < 1){
+				die("OutputAdapter buffer-size must be at least 1 (was " + bufferSize + ").");
+			}
+			
+			Integer writeQueueSize = parseInteger("write-queue-size", DEFAULT_WRITE_QUEUE_SIZE);
+			if(writeQueueSize < 1){
+				die("OutputAdapter write-queue-size must be at least 1 (was " + writeQueueSize + ").");
+			}
+			
+			format = createFormat();
+			
 			try {
-				writer = new OutputStreamWriter(new FileOutputStream(outputFile), characterSet);
+				fileStream = new FileOutputStream(outputFile, resumeBytes != null);
+				if(resumeBytes != null){
+					if(fileStream.getChannel().size() < resumeBytes){
+						die("OutputAdapter can't resume - " + outputPath + " is shorter than at the checkpoint (" + resumeBytes + " bytes).");
+					}
+					// Anything past the checkpoint is written again
+					fileStream.getChannel().truncate(resumeBytes);
+					log("OutputAdapter resuming " + outputPath + " after byte " + resumeBytes + ".");
+				}
+				writer = new OutputStreamWriter(new BufferedOutputStream(fileStream, bufferSize), characterSet);
+				if(asyncWrite){
+					String threadName = "workflow-writer";
+					if(getName() != null){
+						threadName += "-" + getName();
+					}
+					writer = new AsyncWriter(writer, writeQueueSize, flushInterval, threadName);
+				}
 			}
 			catch (UnsupportedEncodingException uee) {
 				die("OutputAdapter given invalid character encoding.  Exception caught: '" + uee + "'.");
@@ -77,6 +184,18 @@ public class OutputAdapter extends Actor {
 			catch (FileNotFoundException fnfe) {
 				die("OutputAdapter can't find file to write.  Exception caught: '" + fnfe + "'.");
 			}
+			catch (IOException ioe) {
+				die("OutputAdapter can't resume file to write.  Exception caught: '" + ioe + "'.");
+			}
+			
+			pending   = new StringBuilder(bufferSize + bufferSize / 4);
+			lastFlush = System.currentTimeMillis();
+			if((resumeBytes != null) && (resumeBytes > 0)){
+				format.continueOutput();
+			}
+			else{
+				format.appendHeader(pending);
+			}
 		}
 		
 		super.run();
@@ -86,12 +205,18 @@ public class OutputAdapter extends Actor {
 	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecord(com.brightcove.opensource.workflowengine.Record)
 	 */
 	public void handleRecord(Record record){
-		try {
-			writer.write("{---------- RECORD ----------}\n" + record + "\n");
-		}
-		catch (IOException ioe) {
-			die("Couldn't write record to file.  Exception caught: '" + ioe + "'.");
+		append(record);
+		writeIfDue();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecords(java.util.List)
+	 */
+	public void handleRecords(List<Record> records){
+		for(Record record : records){
+			append(record);
 		}
+		writeIfDue();
 	}
 	
 	/* (non-Javadoc)
@@ -99,10 +224,137 @@ public class OutputAdapter extends Actor {
 	 */
 	public void finalize(){
 		try {
+			writePending();
 			writer.close();
 		}
 		catch (IOException ioe) {
 			die("Couldn't close file.  Exception caught: '" + ioe + "'.");
 		}
 	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		if(writer == null){
+			return;
+		}
+		
+		try {
+			writePending();
+			if(asyncWrite){
+				((AsyncWriter)writer).sync();
+			}
+			else{
+				writer.flush();
+			}
+			fileStream.getFD().sync();
+			
+			state.put("output-file", outputPath);
+			state.put("bytes", "" + fileStream.getChannel().size());
+		}
+		catch (IOException ioe) {
+			die("Couldn't write records to file for checkpoint.  Exception caught: '" + ioe + "'.");
+		}
+	}
+	
+	private void append(Record record){
+		format.appendRecord(record, pending);
+	}
+	
+	private RecordFormat createFormat(){
+		String formatName = getFirstPropertyValue("format");
+		if((formatName == null) || FORMAT_TEXT.equalsIgnoreCase(formatName)){
+			return new TextRecordFormat();
+		}
+		
+		List<String> columns     = null;
+		String       columnsProp = getFirstPropertyValue("columns");
+		if(columnsProp != null){
+			columns = new ArrayList<String>();
+			for(String column : columnsProp.split(",")){
+				columns.add(column.trim());
+			}
+		}
+		
+		if(FORMAT_JSONL.equalsIgnoreCase(formatName)){
+			return new JSONLinesRecordFormat(columns);
+		}
+		if(FORMAT_CSV.equalsIgnoreCase(formatName)){
+			Character delimiter = getCharacter("delimiter", ',');
+			Character quote     = getCharacter("quote", '"');
+			Boolean   header    = ! "false".equalsIgnoreCase(getFirstPropertyValue("has-header-row"));
+			return new CSVRecordFormat(columns, delimiter, quote, header);
+		}
+		
+		die("OutputAdapter given unknown format '" + formatName + "'.  Expected '" + FORMAT_TEXT + "', '" + FORMAT_CSV + "' or '" + FORMAT_JSONL + "'.");
+		return null;
+	}
+	
+	private Character getCharacter(String name, Character defaultValue){
+		String value = getFirstPropertyValue(name);
+		if((value == null) || (value.length() == 0)){
+			return defaultValue;
+		}
+		return value.charAt(0);
+	}
+	
+	private void writeIfDue(){
+		Boolean full    = pending.length() >= bufferSize;
+		Boolean expired = (flushInterval > 0) && (System.currentTimeMillis() - lastFlush >= flushInterval);
+		if(! (full || expired)){
+			return;
+		}
+		
+		try {
+			writePending();
+			if(expired && (! asyncWrite)){
+				// The background writer flushes by itself once it goes idle
+				writer.flush();
+			}
+		}
+		catch (IOException ioe) {
+			die("Couldn't write records to file.  Exception caught: '" + ioe + "'.");
+		}
+	}
+	
+	private void writePending() throws IOException {
+		if((pending == null) || (pending.length() == 0)){
+			return;
+		}
+		
+		writer.write(pending.toString());
+		pending.setLength(0);
+		lastFlush = System.currentTimeMillis();
+	}
+	
+	private Integer parseInteger(String name, Integer defaultValue){
+		String value = getFirstPropertyValue(name);
+		if(value == null){
+			return defaultValue;
+		}
+		
+		try{
+			return Integer.parseInt(value.trim());
+		}
+		catch(NumberFormatException nfe){
+			die("OutputAdapter can't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+		}
+		return defaultValue;
+	}
+	
+	private Long parseLong(String name, Long defaultValue){
+		String value = getFirstPropertyValue(name);
+		if(value == null){
+			return defaultValue;
+		}
+		
+		try{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException nfe){
+			die("OutputAdapter can't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+		}
+		return defaultValue;
+	}
 }
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.LogMessage;
 import com.brightcove.opensource.workflowengine.Workflow;
 import com.brightcove.opensource.workflowengine.record.Property;
 import com.brightcove.opensource.workflowengine.record.Record;
@@ -14,6 +15,21 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *    workflow logging utility.
  * </p>
  * 
+ * <p>
+ *    The following configuration properties will be honored:<ul>
+ *        <li>fields - Comma separated names of the properties to print (all
+ *            properties if omitted)</li>
+ *        <li>log-sample-rate - Only print one record in every N (every
+ *            record if omitted)</li>
+ *    </ul>
+ * </p>
+ * 
+ * <p>
+ *    Each record is logged as a single message.  Records that aren't
+ *    sampled, or that would be thrown away by the logger anyway, are never
+ *    formatted.
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
@@ -55,23 +71,40 @@ public class PrintAdapter extends Actor {
 	/* (non-Javadoc)
 	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecord(com.brightcove.opensource.workflowengine.Record)
 	 */
-	public void handleRecord(Record record){
-		log("[PrintAdapter] Record:");
+	public void handleRecord(final Record record){
+		// Sampling and the level check come first, so skipped records cost
+		// nothing to format
+		if(isLogEnabled() && sampleRecordForLog()){
+			log(new LogMessage(){
+				public String getMessage(){
+					return formatRecord(record);
+				}
+			});
+		}
+		super.handleRecord(record);
+	}
+	
+	/*
+	 * Formats the whole record as a single message, rather than logging
+	 * each property separately
+	 */
+	private String formatRecord(Record record){
+		StringBuilder message = new StringBuilder("[PrintAdapter] Record:");
 		if(record == null){
-			log("    null");
+			message.append("\n    null");
 		}
 		else{
 			for(Property<?> property : record.getAllProperties()){
 				if(property == null){
-					log("    [null]");
+					message.append("\n    [null]");
 				}
 				else{
 					if((printableFields == null) || printableFields.containsKey(property.getName())){
-						log("    [" + property.getName() + "=" + property.getValue() + "]");
+						message.append("\n    [").append(property.getName()).append("=").append(property.getValue()).append("]");
 					}
 				}
 			}
 		}
-		super.handleRecord(record);
+		return message.toString();
 	}
 }
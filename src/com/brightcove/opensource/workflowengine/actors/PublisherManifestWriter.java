@@ -0,0 +1,183 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <p>
+ *    Writes a Video Cloud batch provisioning publisher-upload-manifest
+ *    straight into an in-memory buffer with a streaming (StAX) XML writer.
+ * </p>
+ *
+ * <p>
+ *    Each entry is serialized as soon as it is added, so there is no DOM to
+ *    build and no transformer to run, and the size of the manifest so far
+ *    is always known exactly.  Once finished, the manifest is read back
+ *    from the same buffer it was written to (see getInputStream()), and the
+ *    buffer is reused for the next manifest after reset().
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class PublisherManifestWriter {
+	private static final String ENCODING = "UTF-8";
+
+	private XMLOutputFactory factory;
+	private ManifestBuffer   buffer;
+	private XMLStreamWriter  writer;
+	private Integer          entryCount;
+
+	/**
+	 * <p>
+	 *    Creates an empty writer
+	 * </p>
+	 */
+	PublisherManifestWriter(){
+		factory    = XMLOutputFactory.newInstance();
+		buffer     = new ManifestBuffer();
+		writer     = null;
+		entryCount = 0;
+	}
+
+	/**
+	 * <p>
+	 *    Starts a new manifest, discarding anything written before
+	 * </p>
+	 *
+	 * @param publisherId Video Cloud publisher (account) id
+	 * @param preparer Name of person/company preparing the manifest
+	 * @param notifyEmail Address to notify of progress, or null for none
+	 * @throws XMLStreamException If the manifest can't be written
+	 */
+	void start(String publisherId, String preparer, String notifyEmail) throws XMLStreamException {
+		reset();
+
+		writer = factory.createXMLStreamWriter(buffer, ENCODING);
+		writer.writeStartDocument(ENCODING, "1.0");
+		writer.writeCharacters("\n");
+		writer.writeStartElement("publisher-upload-manifest");
+		writer.writeAttribute("publisher-id", publisherId);
+		writer.writeAttribute("preparer", preparer);
+		writer.writeAttribute("report-success", "TRUE");
+
+		if(notifyEmail != null){
+			writer.writeCharacters("\n    ");
+			writer.writeEmptyElement("notify");
+			writer.writeAttribute("email", notifyEmail);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Adds a reencode-from-existing-source entry to the manifest
+	 * </p>
+	 *
+	 * @param referenceId Reference id of video to re-encode
+	 * @param overwriteImages Whether existing images are overwritten
+	 * @param preserveSource Whether the source is kept as a rendition
+	 * @throws XMLStreamException If the entry can't be written
+	 */
+	void addReEncode(String referenceId, Boolean overwriteImages, Boolean preserveSource) throws XMLStreamException {
+		writer.writeCharacters("\n    ");
+		writer.writeEmptyElement("reencode-from-existing-source");
+		writer.writeAttribute("title-refid", referenceId);
+		writer.writeAttribute("encode-to", "MP4");
+		writer.writeAttribute("encode-multiple", "TRUE");
+		writer.writeAttribute("overwrite-images", overwriteImages ? "TRUE" : "FALSE");
+		writer.writeAttribute("preserve-source-as-rendition", preserveSource ? "TRUE" : "FALSE");
+
+		// Push the entry through to the buffer, so size() is exact
+		writer.flush();
+		entryCount++;
+	}
+
+	/**
+	 * <p>
+	 *    Closes the manifest.  No more entries can be added until the next
+	 *    start().
+	 * </p>
+	 *
+	 * @throws XMLStreamException If the manifest can't be written
+	 */
+	void finish() throws XMLStreamException {
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndDocument();
+		writer.close();
+		writer = null;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of entries added since start()
+	 * </p>
+	 *
+	 * @return Number of entries
+	 */
+	Integer getEntryCount(){
+		return entryCount;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of bytes written so far
+	 * </p>
+	 *
+	 * @return Size of manifest in bytes
+	 */
+	Integer size(){
+		return buffer.size();
+	}
+
+	/**
+	 * <p>
+	 *    Returns a stream reading the manifest written, straight from the
+	 *    buffer (without copying it).  Only valid until the next start() or
+	 *    reset().
+	 * </p>
+	 *
+	 * @return Stream reading the manifest
+	 */
+	InputStream getInputStream(){
+		return buffer.getInputStream();
+	}
+
+	/**
+	 * <p>
+	 *    Discards the manifest, keeping the buffer for the next one
+	 * </p>
+	 */
+	void reset(){
+		if(writer != null){
+			try {
+				writer.close();
+			}
+			catch (XMLStreamException xse) {
+				// Being thrown away anyway
+			}
+			writer = null;
+		}
+		buffer.reset();
+		entryCount = 0;
+	}
+
+	/*
+	 * A ByteArrayOutputStream that can be read back without copying
+	 */
+	private static class ManifestBuffer extends ByteArrayOutputStream {
+		ManifestBuffer(){
+			super(64 * 1024);
+		}
+
+		InputStream getInputStream(){
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
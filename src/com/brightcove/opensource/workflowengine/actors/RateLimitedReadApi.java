@@ -0,0 +1,62 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.brightcove.commons.catalog.objects.Videos;
+import com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoFieldEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoStateFilterEnum;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.opensource.workflowengine.Actor;
+
+/**
+ * <p>
+ *    A VideoCloudReadApi that makes each call through the shared
+ *    VideoCloudRateLimiter for its token.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class RateLimitedReadApi implements VideoCloudReadApi {
+	private Actor                 actor;
+	private VideoCloudReadApi     readApi;
+	private String                limiterToken;
+	private VideoCloudRateLimiter limiter;
+
+	/**
+	 * <p>
+	 *    Wraps the read API specified
+	 * </p>
+	 *
+	 * @param actor Actor making the calls
+	 * @param readApi API to make the calls with
+	 */
+	RateLimitedReadApi(Actor actor, VideoCloudReadApi readApi){
+		this.actor   = actor;
+		this.readApi = readApi;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudReadApi#findModifiedVideos(java.lang.String, java.lang.Long, java.util.Set, java.lang.Integer, java.lang.Integer, com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum, com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum, java.util.EnumSet, java.util.Set)
+	 */
+	public Videos findModifiedVideos(final String readToken, final Long fromDate, final Set<VideoStateFilterEnum> filter, final Integer pageSize, final Integer pageNumber, final SortByTypeEnum sortBy, final SortOrderTypeEnum sortOrderType, final EnumSet<VideoFieldEnum> videoFields, final Set<String> customFields) throws BrightcoveException {
+		return getLimiter(readToken).execute(actor, new VideoCloudCall<Videos>(){
+			public Videos call() throws BrightcoveException {
+				return readApi.findModifiedVideos(readToken, fromDate, filter, pageSize, pageNumber, sortBy, sortOrderType, videoFields, customFields);
+			}
+		});
+	}
+
+	// Looked up once, rather than for every call, as the limiter's settings
+	// are read from the workflow's properties
+	private synchronized VideoCloudRateLimiter getLimiter(String token){
+		if((limiter == null) || (! token.equals(limiterToken))){
+			limiter      = VideoCloudRateLimiter.forToken(actor, token);
+			limiterToken = token;
+		}
+		return limiter;
+	}
+}
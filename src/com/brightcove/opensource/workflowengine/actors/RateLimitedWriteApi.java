@@ -0,0 +1,55 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.opensource.workflowengine.Actor;
+
+/**
+ * <p>
+ *    A VideoCloudWriteApi that makes each call through the shared
+ *    VideoCloudRateLimiter for its token.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class RateLimitedWriteApi implements VideoCloudWriteApi {
+	private Actor                 actor;
+	private VideoCloudWriteApi    writeApi;
+	private String                limiterToken;
+	private VideoCloudRateLimiter limiter;
+
+	/**
+	 * <p>
+	 *    Wraps the write API specified
+	 * </p>
+	 *
+	 * @param actor Actor making the calls
+	 * @param writeApi API to make the calls with
+	 */
+	RateLimitedWriteApi(Actor actor, VideoCloudWriteApi writeApi){
+		this.actor    = actor;
+		this.writeApi = writeApi;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi#updateVideo(java.lang.String, com.brightcove.commons.catalog.objects.Video)
+	 */
+	public Video updateVideo(final String writeToken, final Video video) throws BrightcoveException {
+		return getLimiter(writeToken).execute(actor, new VideoCloudCall<Video>(){
+			public Video call() throws BrightcoveException {
+				return writeApi.updateVideo(writeToken, video);
+			}
+		});
+	}
+
+	// Looked up once, rather than for every call, as the limiter's settings
+	// are read from the workflow's properties
+	private synchronized VideoCloudRateLimiter getLimiter(String token){
+		if((limiter == null) || (! token.equals(limiterToken))){
+			limiter      = VideoCloudRateLimiter.forToken(actor, token);
+			limiterToken = token;
+		}
+		return limiter;
+	}
+}
@@ -0,0 +1,50 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Encodes records as text for OutputAdapter.
+ * </p>
+ * 
+ * <p>
+ *    Records are appended straight into the caller's buffer, so a format
+ *    should write each value as it goes rather than building strings of
+ *    its own.  A format may keep state between records (e.g. whether a
+ *    header has been written yet), so an instance is only used for a
+ *    single output.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+interface RecordFormat {
+	/**
+	 * <p>
+	 *    Appends whatever precedes the first record (e.g. a header row), if
+	 *    it is already known.  Called once, before any record.
+	 * </p>
+	 * 
+	 * @param buffer Buffer to append to
+	 */
+	public void appendHeader(StringBuilder buffer);
+	
+	/**
+	 * <p>
+	 *    Called instead of appendHeader() when records are appended to
+	 *    output this format has already started (e.g. when a workflow
+	 *    resumes from a checkpoint), so no header is written again.
+	 * </p>
+	 */
+	public void continueOutput();
+	
+	/**
+	 * <p>
+	 *    Appends a single record, including its line end
+	 * </p>
+	 * 
+	 * @param record Record to append
+	 * @param buffer Buffer to append to
+	 */
+	public void appendRecord(Record record, StringBuilder buffer);
+}
@@ -0,0 +1,76 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+/**
+ * <p>
+ *    Small, fast pseudo-random generator (SplitMix64) that can be put at
+ *    any position of its sequence, so the numbers used for a given record
+ *    depend only on the seed and the record's position - not on what was
+ *    generated before it.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class SplitMix {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15l;
+
+	private long seed;
+	private long state;
+
+	/**
+	 * <p>
+	 *    Creates a generator for the seed given
+	 * </p>
+	 *
+	 * @param seed Seed
+	 */
+	SplitMix(long seed){
+		this.seed  = seed;
+		this.state = seed;
+	}
+
+	/**
+	 * <p>
+	 *    Moves to the numbers for the position given
+	 * </p>
+	 *
+	 * @param position Position (e.g. record number)
+	 */
+	void moveTo(long position){
+		state = mix(seed + position * GOLDEN_GAMMA);
+	}
+
+	long nextLong(){
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	/**
+	 * <p>
+	 *    Returns a number between 0 (inclusive) and bound (exclusive)
+	 * </p>
+	 *
+	 * @param bound Upper bound (at least 1)
+	 * @return Random number
+	 */
+	long nextLong(long bound){
+		return (nextLong() >>> 1) % bound;
+	}
+
+	/**
+	 * <p>
+	 *    Returns a number between 0 (inclusive) and 1 (exclusive)
+	 * </p>
+	 *
+	 * @return Random number
+	 */
+	double nextDouble(){
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9l;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebl;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,162 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.opensource.workflowengine.AbstractActorFactory;
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.ActorProperty;
+import com.brightcove.opensource.workflowengine.Workflow;
+
+/**
+ * <p>
+ *    ActorFactory implementations for the actors in this package, listed in
+ *    META-INF/services so workflows can refer to them by alias:<ul>
+ *        <li>csv-input - CSVInputAdapter</li>
+ *        <li>demo-input - InputAdapter</li>
+ *        <li>load-generator - LoadGeneratorInputAdapter</li>
+ *        <li>output - OutputAdapter</li>
+ *        <li>print - PrintAdapter</li>
+ *        <li>video-cloud-find-modified - VideoCloudFindModifiedInputAdapter</li>
+ *        <li>video-cloud-re-encode - VideoCloudReEncodeFromExistingSourceAdapter</li>
+ *        <li>video-cloud-video-touch - VideoCloudVideoTouchAdapter</li>
+ *    </ul>
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class StandardActorFactories {
+	public static class CSVInput extends AbstractActorFactory {
+		public CSVInput(){
+			super("csv-input", CSVInputAdapter.class,
+				new ActorProperty("input-file"),
+				new ActorProperty("delimiter"),
+				new ActorProperty("quote"),
+				new ActorProperty("header-row"),
+				new ActorProperty("has-header-row", Boolean.class),
+				new ActorProperty("character-set"),
+				new ActorProperty("reader", CSVInputAdapter.READER_DEFAULT, CSVInputAdapter.READER_MMAP, CSVInputAdapter.READER_PARALLEL),
+				new ActorProperty("parse-threads", Integer.class),
+				new ActorProperty("chunk-size", Long.class),
+				new ActorProperty("record-order", CSVInputAdapter.RECORD_ORDER_ORDERED, CSVInputAdapter.RECORD_ORDER_UNORDERED));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new CSVInputAdapter(workflow);
+		}
+	}
+
+	public static class DemoInput extends AbstractActorFactory {
+		public DemoInput(){
+			super("demo-input", InputAdapter.class);
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new InputAdapter(workflow);
+		}
+	}
+
+	public static class LoadGenerator extends AbstractActorFactory {
+		public LoadGenerator(){
+			super("load-generator", LoadGeneratorInputAdapter.class,
+				new ActorProperty("record-count", Long.class),
+				new ActorProperty("records-per-second", Double.class),
+				new ActorProperty("field-count", Integer.class),
+				new ActorProperty("value-size", Integer.class),
+				new ActorProperty("key-cardinality", Long.class),
+				new ActorProperty("key-distribution", LoadGeneratorInputAdapter.DISTRIBUTION_UNIFORM, LoadGeneratorInputAdapter.DISTRIBUTION_ZIPF),
+				new ActorProperty("key-skew", Double.class),
+				new ActorProperty("id-field"),
+				new ActorProperty("key-field"),
+				new ActorProperty("seed", Long.class));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new LoadGeneratorInputAdapter(workflow);
+		}
+	}
+
+	public static class Output extends AbstractActorFactory {
+		public Output(){
+			super("output", OutputAdapter.class,
+				new ActorProperty("output-file"),
+				new ActorProperty("character-set"),
+				new ActorProperty("buffer-size", Integer.class),
+				new ActorProperty("flush-interval", Long.class),
+				new ActorProperty("async-write", Boolean.class),
+				new ActorProperty("write-queue-size", Integer.class),
+				new ActorProperty("format", OutputAdapter.FORMAT_TEXT, OutputAdapter.FORMAT_CSV, OutputAdapter.FORMAT_JSONL),
+				new ActorProperty("columns"),
+				new ActorProperty("delimiter"),
+				new ActorProperty("quote"),
+				new ActorProperty("has-header-row", Boolean.class));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new OutputAdapter(workflow);
+		}
+	}
+
+	public static class Print extends AbstractActorFactory {
+		public Print(){
+			super("print", PrintAdapter.class,
+				new ActorProperty("fields"));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new PrintAdapter(workflow);
+		}
+	}
+
+	public static class VideoCloudFindModified extends AbstractActorFactory {
+		public VideoCloudFindModified(){
+			super("video-cloud-find-modified", VideoCloudFindModifiedInputAdapter.class,
+				new ActorProperty("read-api-token"),
+				new ActorProperty("video-fields"),
+				new ActorProperty("custom-fields"),
+				new ActorProperty("video-state-filter"),
+				new ActorProperty("from-date"),
+				new ActorProperty("read-api-class"),
+				new ActorProperty("watermark-file"),
+				new ActorProperty("page-size", Integer.class),
+				new ActorProperty("prefetch-pages", Integer.class));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new VideoCloudFindModifiedInputAdapter(workflow);
+		}
+	}
+
+	public static class VideoCloudReEncode extends AbstractActorFactory {
+		public VideoCloudReEncode(){
+			super("video-cloud-re-encode", VideoCloudReEncodeFromExistingSourceAdapter.class,
+				new ActorProperty("video-reference-id-prop"),
+				new ActorProperty("batch-username"),
+				new ActorProperty("batch-password"),
+				new ActorProperty("publisher-id"),
+				new ActorProperty("preparer"),
+				new ActorProperty("notification-email"),
+				new ActorProperty("overwrite-images", Boolean.class),
+				new ActorProperty("preserve-source-as-rendition", Boolean.class),
+				new ActorProperty("manifest-max-titles", Integer.class),
+				new ActorProperty("manifest-max-bytes", Long.class));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new VideoCloudReEncodeFromExistingSourceAdapter(workflow);
+		}
+	}
+
+	public static class VideoCloudVideoTouch extends AbstractActorFactory {
+		public VideoCloudVideoTouch(){
+			super("video-cloud-video-touch", VideoCloudVideoTouchAdapter.class,
+				new ActorProperty("video-id-prop"),
+				new ActorProperty("video-reference-id-prop"),
+				new ActorProperty("write-token"),
+				new ActorProperty("write-api-class"),
+				new ActorProperty("concurrent-updates", Integer.class));
+		}
+
+		public Actor createActor(Workflow workflow){
+			return new VideoCloudVideoTouchAdapter(workflow);
+		}
+	}
+}
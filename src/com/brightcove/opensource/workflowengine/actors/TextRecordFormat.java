@@ -0,0 +1,40 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    The original OutputAdapter format - each record as a separator line
+ *    followed by Record.toString().  Meant for people to read rather than
+ *    for other tools.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class TextRecordFormat implements RecordFormat {
+	private static final String RECORD_HEADER = "{---------- RECORD ----------}\n";
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendHeader(java.lang.StringBuilder)
+	 */
+	public void appendHeader(StringBuilder buffer){
+		// No header
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#continueOutput()
+	 */
+	public void continueOutput(){
+		// No header
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.RecordFormat#appendRecord(com.brightcove.opensource.workflowengine.record.Record, java.lang.StringBuilder)
+	 */
+	public void appendRecord(Record record, StringBuilder buffer){
+		buffer.append(RECORD_HEADER);
+		record.appendTo(buffer);
+		buffer.append('\n');
+	}
+}
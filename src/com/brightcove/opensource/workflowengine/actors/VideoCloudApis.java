@@ -0,0 +1,46 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.lang.reflect.Constructor;
+import java.util.logging.Logger;
+
+import com.brightcove.opensource.workflowengine.Actor;
+
+/**
+ * <p>
+ *    Creates the Video Cloud API implementations named by the Video Cloud
+ *    adapters' *-api-class properties.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class VideoCloudApis {
+	/**
+	 * <p>
+	 *    Creates an instance of the class named, which must implement the
+	 *    API interface specified and have a public constructor taking a
+	 *    Logger.  Kills the workflow if it can't.
+	 * </p>
+	 * 
+	 * @param actor Actor the API is for (used to report errors)
+	 * @param className Name of implementing class
+	 * @param apiInterface API interface the class must implement
+	 * @param logger Logger to hand to the constructor
+	 * @return New API instance
+	 */
+	static <T> T create(Actor actor, String className, Class<T> apiInterface, Logger logger){
+		try {
+			Class<?> apiClass = Class.forName(className);
+			if(! apiInterface.isAssignableFrom(apiClass)){
+				actor.die("API class '" + className + "' doesn't implement " + apiInterface.getSimpleName() + ".");
+			}
+			
+			Constructor<?> constructor = apiClass.getConstructor(Logger.class);
+			return apiInterface.cast(constructor.newInstance(logger));
+		}
+		catch (Exception e) {
+			actor.die("Couldn't create API class '" + className + "'.  Exception caught: '" + e + "'.");
+		}
+		return null;
+	}
+}
@@ -0,0 +1,23 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+
+/**
+ * <p>
+ *    A single Media API call, made through a VideoCloudRateLimiter.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+interface VideoCloudCall<T> {
+	/**
+	 * <p>
+	 *    Makes the call.  May be called again if the Media API throttles it.
+	 * </p>
+	 *
+	 * @return Result of the call
+	 * @throws BrightcoveException If the call fails
+	 */
+	T call() throws BrightcoveException;
+}
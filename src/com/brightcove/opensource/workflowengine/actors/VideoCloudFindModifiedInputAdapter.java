@@ -1,13 +1,31 @@
 package com.brightcove.opensource.workflowengine.actors;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import com.brightcove.commons.catalog.objects.Video;
@@ -19,7 +37,6 @@ import com.brightcove.commons.catalog.objects.enumerations.VideoStateFilterEnum;
 import com.brightcove.commons.collection.CollectionUtils;
 import com.brightcove.commons.misc.logging.LogUtils;
 import com.brightcove.mediaapi.exceptions.BrightcoveException;
-import com.brightcove.mediaapi.wrapper.ReadApi;
 import com.brightcove.opensource.workflowengine.Actor;
 import com.brightcove.opensource.workflowengine.Workflow;
 import com.brightcove.opensource.workflowengine.record.Property;
@@ -38,15 +55,67 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *        <li>custom-fields - Comma separated list of custom fields to retrieve</li>
  *        <li>video-state-filter - Commas separated list of item states valid to search for</li>
  *        <li>from-date - Earliest video to retrieve (based on last modified date).  Format yyyy/MM/dd HH:mm:ss z</li>
+ *        <li>page-size - Number of videos to request per page (100 if omitted)</li>
+ *        <li>prefetch-pages - Number of pages to fetch ahead, concurrently,
+ *            while earlier pages are passed on (0 - each page is fetched
+ *            once the previous one has been passed on - if omitted)</li>
+ *        <li>read-api-class - Class implementing VideoCloudReadApi to make
+ *            the API calls with (MediaApiReadApi if omitted)</li>
+ *        <li>watermark-file - File to keep the latest modified date seen
+ *            in, so that each run only fetches what has changed since the
+ *            last one (none if omitted)</li>
  *    </ul>
  * </p>
  * 
+ * <p>
+ *    With prefetch-pages set to K, up to K pages are requested at once on
+ *    background threads.  Pages are still passed on strictly in page order,
+ *    and a page is only requested once the page K before it has been taken,
+ *    so no more than K pages are ever held.  The first empty page ends the
+ *    read, and any requests still outstanding are abandoned.
+ * </p>
+ * 
+ * <p>
+ *    With watermark-file set, the latest last modified date of the videos
+ *    read is written to that file when the actor is finalized, after every
+ *    actor it feeds has been finalized.  A run that dies part way through
+ *    leaves the file as it was - either the workflow exits without
+ *    finalizing anything, or (see Workflow.setExitOnDie()) the actor is
+ *    aborted instead, and abort() doesn't write the file, as the videos
+ *    not yet read are older than the watermark.  The next run then fetches
+ *    the videos modified since that date instead of since from-date (which
+ *    only applies while there is no file yet).  The Media API works in
+ *    whole minutes, so videos modified in the watermark's own minute are
+ *    fetched again; the rest of the workflow should be happy to see a video
+ *    twice.
+ * </p>
+ * 
+ * <p>
+ *    When the workflow takes checkpoints, the adapter's position is the
+ *    number of pages it has passed on (checkpoints are only taken between
+ *    pages), along with the from date and watermark it is working with.  A
+ *    resumed run carries on with the next page.  Videos modified since the
+ *    checkpoint move up the (most recently modified first) listing, so a
+ *    resumed run may see some videos again and skip others; the skipped
+ *    ones are newer than the watermark, so the next run picks them up.
+ * </p>
+ * 
+ * <p>
+ *    Every call is paced by the VideoCloudRateLimiter shared by all actors
+ *    using the same read token (see there for the workflow properties that
+ *    configure it).
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class VideoCloudFindModifiedInputAdapter extends Actor {
+	private static final Long   ONE_MINUTE              = 1000l * 60l;
+	private static final String WATERMARK_PROPERTY      = "last-modified";
+	private static final String WATERMARK_DATE_PROPERTY = "last-modified-date";
+	
 	private String                    readApiToken     = null;
-	private ReadApi                   readApi          = null;
+	private VideoCloudReadApi         readApi          = null;
 	private EnumSet<VideoFieldEnum>   videoFields      = null;
 	private Set<String>               customFields     = null;
 	private Set<VideoStateFilterEnum> videoStateFilter = null;
@@ -55,6 +124,10 @@ public class VideoCloudFindModifiedInputAdapter extends Actor {
 	private SortByTypeEnum            sortBy           = null;
 	private SortOrderTypeEnum         sortOrderType	   = null;
 	private Long                      fromDate         = null;
+	private Integer                   prefetchPages    = null;
+	private File                      watermarkFile    = null;
+	private Long                      savedWatermark   = null;
+	private Long                      watermark        = null;
 	
 	private String           dateFormat    = "yyyy/MM/dd HH:mm:ss z";
 	private SimpleDateFormat dateFormatter = new SimpleDateFormat(dateFormat);
@@ -91,7 +164,15 @@ public class VideoCloudFindModifiedInputAdapter extends Actor {
 			apiRedactStrings.add(readApiToken);
 			Logger apiLogger = LogUtils.getLogger(this.getClass().getCanonicalName(), apiRedactStrings);
 			
-			readApi      = new ReadApi(apiLogger);
+			String readApiClass = getFirstPropertyValue("read-api-class");
+			if(readApiClass == null){
+				readApi = new MediaApiReadApi(apiLogger);
+			}
+			else{
+				readApi = VideoCloudApis.create(this, readApiClass, VideoCloudReadApi.class, apiLogger);
+			}
+			readApi = new RateLimitedReadApi(this, readApi);
+			
 			videoFields  = VideoFieldEnum.CreateEmptyEnumSet();
 			customFields = CollectionUtils.CreateEmptyStringSet();
 			
@@ -129,39 +210,172 @@ public class VideoCloudFindModifiedInputAdapter extends Actor {
 				}
 				
 				// Have milliseconds, need minutes
-				Long oneMinute = 1000l * 60l;
-				fromDate = date.getTime() / oneMinute;
+				fromDate = date.getTime() / ONE_MINUTE;
+			}
+			
+			String watermarkFileProp = getFirstPropertyValue("watermark-file");
+			if(watermarkFileProp != null){
+				watermarkFile  = new File(watermarkFileProp);
+				savedWatermark = readWatermark();
+				watermark      = savedWatermark;
+				if(savedWatermark != null){
+					fromDate = savedWatermark / ONE_MINUTE;
+					log("Fetching videos modified since watermark '" + dateFormatter.format(new Date(savedWatermark)) + "'.");
+				}
+				
+				// An empty field list means all fields; otherwise the
+				// watermark needs the modified date asked for
+				if(! videoFields.isEmpty()){
+					videoFields.add(VideoFieldEnum.LASTMODIFIEDDATE);
+				}
 			}
 			
-			pageSize   = 100;
-			pageNumber = 0;
+			pageSize      = parseInteger("page-size", 100, 1);
+			prefetchPages = parseInteger("prefetch-pages", 0, 0);
+			pageNumber    = 0;
+			
+			Map<String, String> resumeState = getResumeState();
+			if(resumeState != null){
+				resume(resumeState);
+			}
 			
 			sortBy        = SortByTypeEnum.MODIFIED_DATE;
 			sortOrderType = SortOrderTypeEnum.DESC;
 			
-			Videos videos = getPage();
-			while((videos != null) && (videos.size() > 0)){
-				
-				for(Video video : videos){
-					Record          record = new Record();
-					Property<Video> prop   = new Property<Video>("video", video);
-					record.addProperty(prop);
+			if(prefetchPages > 0){
+				readPrefetched();
+			}
+			else{
+				Videos videos = getPage(pageNumber);
+				while((videos != null) && (videos.size() > 0)){
+					handleVideos(videos);
 					
-					handleRecord(record);
+					pageNumber++;
+					checkpointIfDue(videos.size());
+					videos = getPage(pageNumber);
+				}
+			}
+		}
+		
+		super.run();
+	}
+	
+	private void readPrefetched(){
+		ExecutorService            fetchers = Executors.newFixedThreadPool(prefetchPages, new DaemonThreadFactory("fetch", getName()));
+		LinkedList<Future<Videos>> pages    = new LinkedList<Future<Videos>>();
+		Integer                    nextPage = pageNumber;
+		
+		try {
+			while(pages.size() < prefetchPages){
+				pages.add(fetchers.submit(new PageFetch(nextPage++)));
+			}
+			
+			while(! pages.isEmpty()){
+				Videos videos = null;
+				try {
+					videos = pages.removeFirst().get();
+				}
+				catch (ExecutionException ee) {
+					die("Couldn't obtain page of videos.  Exception caught: '" + ee.getCause() + "'.");
+				}
+				
+				if((videos == null) || (videos.size() == 0)){
+					break;
 				}
 				
+				// Keep K pages in flight while this one is passed on
+				pages.add(fetchers.submit(new PageFetch(nextPage++)));
+				handleVideos(videos);
 				pageNumber++;
-				videos = getPage();
+				checkpointIfDue(videos.size());
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			die("Interrupted while waiting for page of videos.");
+		}
+		finally {
+			for(Future<Videos> page : pages){
+				page.cancel(true);
 			}
+			fetchers.shutdownNow();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		if(pageNumber == null){
+			return;
 		}
 		
-		super.run();
+		state.put("page", "" + pageNumber);
+		state.put("from-date", "" + fromDate);
+		if(watermark != null){
+			state.put("watermark", "" + watermark);
+		}
 	}
 	
-	private Videos getPage(){
+	private void resume(Map<String, String> state){
+		try{
+			pageNumber = Integer.parseInt(state.get("page"));
+			fromDate   = Long.parseLong(state.get("from-date"));
+			if(state.get("watermark") != null){
+				Long resumed = Long.parseLong(state.get("watermark"));
+				if((watermark == null) || (resumed > watermark)){
+					watermark = resumed;
+				}
+			}
+		}
+		catch(NumberFormatException nfe){
+			die("VideoCloudFindModifiedInputAdapter can't parse checkpoint '" + state + "'.  Exception caught: '" + nfe + "'.");
+		}
+		log("VideoCloudFindModifiedInputAdapter resuming from page " + pageNumber + ".");
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#finalize()
+	 */
+	public void finalize(){
+		if((watermarkFile != null) && (watermark != null) && (! watermark.equals(savedWatermark))){
+			writeWatermark(watermark);
+			log("Saved watermark '" + dateFormatter.format(new Date(watermark)) + "' to '" + watermarkFile + "'.");
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#abort()
+	 */
+	public void abort(){
+		// Videos are read newest first, so the watermark is already past
+		// every video that wasn't read - saving it would skip them for good
+		if((watermarkFile != null) && (watermark != null) && (! watermark.equals(savedWatermark))){
+			log("Workflow failed, not saving watermark '" + dateFormatter.format(new Date(watermark)) + "' to '" + watermarkFile + "'.");
+		}
+	}
+	
+	private void handleVideos(Videos videos){
+		for(Video video : videos){
+			if((watermarkFile != null) && (video.getLastModifiedDate() != null)){
+				Long modified = video.getLastModifiedDate().getTime();
+				if((watermark == null) || (modified > watermark)){
+					watermark = modified;
+				}
+			}
+			
+			Record          record = new Record();
+			Property<Video> prop   = new Property<Video>("video", video);
+			record.addProperty(prop);
+			
+			handleRecord(record);
+		}
+	}
+	
+	private Videos getPage(Integer page){
 		Videos videos = null;
 		try {
-			videos = readApi.FindModifiedVideos(readApiToken, fromDate, videoStateFilter, pageSize, pageNumber, sortBy, sortOrderType, videoFields, customFields);
+			videos = readApi.findModifiedVideos(readApiToken, fromDate, videoStateFilter, pageSize, page, sortBy, sortOrderType, videoFields, customFields);
 		}
 		catch (BrightcoveException be) {
 			die("Couldn't obtain page of videos.  Exception caught: '" + be + "'.");
@@ -169,4 +383,114 @@ public class VideoCloudFindModifiedInputAdapter extends Actor {
 		
 		return videos;
 	}
+	
+	private Long readWatermark(){
+		if(! watermarkFile.exists()){
+			return null;
+		}
+		
+		Properties  state = new Properties();
+		InputStream in    = null;
+		try {
+			in = new FileInputStream(watermarkFile);
+			state.load(in);
+		}
+		catch (IOException ioe) {
+			die("VideoCloudFindModifiedInputAdapter couldn't read watermark file '" + watermarkFile + "'.  Exception caught: '" + ioe + "'.");
+		}
+		finally {
+			closeQuietly(in);
+		}
+		
+		String value = state.getProperty(WATERMARK_PROPERTY);
+		if(value == null){
+			die("VideoCloudFindModifiedInputAdapter watermark file '" + watermarkFile + "' has no " + WATERMARK_PROPERTY + " entry.");
+		}
+		try{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException nfe){
+			die("VideoCloudFindModifiedInputAdapter can't parse watermark '" + value + "' in '" + watermarkFile + "'.  Exception caught: '" + nfe + "'.");
+		}
+		return null;
+	}
+	
+	private void writeWatermark(Long value){
+		Properties state = new Properties();
+		state.setProperty(WATERMARK_PROPERTY, "" + value);
+		state.setProperty(WATERMARK_DATE_PROPERTY, dateFormatter.format(new Date(value)));
+		
+		// Written alongside and then moved into place, so a crash never
+		// leaves a half written watermark behind
+		File         tempFile = null;
+		OutputStream out      = null;
+		try {
+			tempFile = File.createTempFile(watermarkFile.getName() + ".", ".tmp", watermarkFile.getAbsoluteFile().getParentFile());
+			out      = new FileOutputStream(tempFile);
+			state.store(out, "VideoCloudFindModifiedInputAdapter watermark - latest last modified date seen (milliseconds since the epoch)");
+			out.close();
+			out = null;
+			
+			try {
+				Files.move(tempFile.toPath(), watermarkFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse) {
+				Files.move(tempFile.toPath(), watermarkFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException ioe) {
+			die("VideoCloudFindModifiedInputAdapter couldn't write watermark file '" + watermarkFile + "'.  Exception caught: '" + ioe + "'.");
+		}
+		finally {
+			closeQuietly(out);
+			if(tempFile != null){
+				// Left behind only if it wasn't moved into place
+				tempFile.delete();
+			}
+		}
+	}
+	
+	private void closeQuietly(Closeable closeable){
+		if(closeable == null){
+			return;
+		}
+		try {
+			closeable.close();
+		}
+		catch (IOException ioe) {
+			// Nothing more to be done with it
+		}
+	}
+	
+	private Integer parseInteger(String name, Integer defaultValue, Integer minimum){
+		String  value = getFirstPropertyValue(name);
+		Integer ret   = defaultValue;
+		if(value != null){
+			try{
+				ret = Integer.parseInt(value.trim());
+			}
+			catch(NumberFormatException nfe){
+				die("VideoCloudFindModifiedInputAdapter can't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(ret < minimum){
+				die("VideoCloudFindModifiedInputAdapter " + name + " must be at least " + minimum + " (was " + ret + ").");
+			}
+		}
+		return ret;
+	}
+	
+	/*
+	 * Fetches a single page on a prefetch thread
+	 */
+	private class PageFetch implements Callable<Videos> {
+		private Integer page;
+		
+		PageFetch(Integer page){
+			this.page = page;
+		}
+		
+		public Videos call() throws BrightcoveException {
+			return readApi.findModifiedVideos(readApiToken, fromDate, videoStateFilter, pageSize, page, sortBy, sortOrderType, videoFields, customFields);
+		}
+	}
 }
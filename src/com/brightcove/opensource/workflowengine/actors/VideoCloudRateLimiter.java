@@ -0,0 +1,434 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.mediaapi.exceptions.MediaApiException;
+import com.brightcove.mediaapi.exceptions.WrapperException;
+import com.brightcove.mediaapi.exceptions.WrapperExceptionCode;
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.LogMessage;
+import com.brightcove.opensource.workflowengine.Workflow;
+
+/**
+ * <p>
+ *    Paces the Media API calls made with one API token, across every Video
+ *    Cloud actor (and every workflow) in the virtual machine that uses the
+ *    same limiter settings for it.
+ * </p>
+ *
+ * <p>
+ *    Each call first takes a token from a token bucket refilled at
+ *    api-rate-limit tokens a second (holding at most api-burst tokens), then
+ *    waits for a free slot under the concurrency limit.  The concurrency
+ *    limit starts at api-min-concurrency and, until the first call is
+ *    throttled, each successful call raises it by one (slow start).  From
+ *    then on it is adjusted AIMD style: each successful call raises it by
+ *    1/limit (about one slot per limit's worth of calls), up to
+ *    api-max-concurrency, and a throttled call halves it, down to
+ *    api-min-concurrency.  Calls throttled in the same burst only halve the
+ *    limit once.  A throttled call is made again, up to api-max-retries
+ *    times, after waiting api-retry-delay milliseconds (doubled on each
+ *    retry); anything else the API throws is passed straight back.
+ * </p>
+ *
+ * <p>
+ *    A call counts as throttled if the Media API answers with one of the
+ *    error codes in api-throttle-codes, or if the HTTP server answers 429 or
+ *    503.
+ * </p>
+ *
+ * <p>
+ *    The following workflow properties will be honored:<ul>
+ *        <li>api-rate-limit - Calls per second allowed for each token (0 -
+ *            no limit - if omitted)</li>
+ *        <li>api-burst - Calls that may be made at once after a quiet spell
+ *            (api-rate-limit, or 1, if omitted)</li>
+ *        <li>api-max-concurrency - Most calls allowed in flight at once for
+ *            each token (64 if omitted)</li>
+ *        <li>api-min-concurrency - Fewest calls throttling may cut the limit
+ *            to (1 if omitted)</li>
+ *        <li>api-max-retries - Times a throttled call is made again before
+ *            its error is passed back (3 if omitted)</li>
+ *        <li>api-retry-delay - Milliseconds to wait before the first retry
+ *            (1000 if omitted)</li>
+ *        <li>api-throttle-codes - Comma separated Media API error codes that
+ *            mean the call was throttled (213 if omitted)</li>
+ *    </ul>
+ * </p>
+ *
+ * <p>
+ *    Workflows run in the same virtual machine (e.g. by WorkflowDaemon or
+ *    WorkflowScheduler) share a token's limiter only while their settings
+ *    match - a workflow whose settings differ, or have been edited, gets a
+ *    limiter of its own, and a warning is logged, as the two limiters then
+ *    don't share the token's quota.
+ * </p>
+ *
+ * <p>
+ *    Each limiter is registered with the platform MBean server as
+ *    com.brightcove.opensource.workflowengine:type=VideoCloudRateLimiter,token=&lt;hash&gt;,settings=&lt;hash&gt;
+ *    (a hash of the token, never the token itself), so its live rate and
+ *    concurrency limit can be watched from jconsole or any JMX client.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class VideoCloudRateLimiter implements VideoCloudRateLimiterMBean {
+	public static final Integer DEFAULT_MAX_CONCURRENCY = 64;
+	public static final Integer DEFAULT_MAX_RETRIES     = 3;
+	public static final Long    DEFAULT_RETRY_DELAY     = 1000l;
+	public static final String  DEFAULT_THROTTLE_CODES  = "213";
+
+	// Token, then settings
+	private static final Map<String, Map<String, VideoCloudRateLimiter>> limiters = new HashMap<String, Map<String, VideoCloudRateLimiter>>();
+
+	private Double       rateLimit;
+	private Double       burst;
+	private Integer      minConcurrency;
+	private Integer      maxConcurrency;
+	private Integer      maxRetries;
+	private Long         retryDelay;
+	private Set<Integer> throttleCodes;
+
+	// Token bucket - guarded by bucketLock
+	private Object       bucketLock;
+	private double       tokens;
+	private long         lastRefill;
+
+	// Concurrency limit and statistics - guarded by this
+	private double       concurrencyLimit;
+	private boolean      slowStart;
+	private int          inFlight;
+	private long         lastDecrease;
+	private long         callCount;
+	private long         throttleCount;
+	private long         windowStart;
+	private long         windowCount;
+	private long         currentRate;
+
+	/**
+	 * <p>
+	 *    Returns the limiter shared by every call made with the token
+	 *    specified and the limiter settings of the actor's workflow,
+	 *    creating it if this is the first call with both.
+	 * </p>
+	 *
+	 * @param actor Actor making the calls
+	 * @param token Media API token the calls are made with
+	 * @return Limiter for the token
+	 */
+	public static VideoCloudRateLimiter forToken(Actor actor, String token){
+		VideoCloudRateLimiter configured = new VideoCloudRateLimiter(actor);
+		String                settings   = configured.getSettings();
+		synchronized(limiters){
+			Map<String, VideoCloudRateLimiter> forToken = limiters.get(token);
+			if(forToken == null){
+				forToken = new HashMap<String, VideoCloudRateLimiter>();
+				limiters.put(token, forToken);
+			}
+
+			VideoCloudRateLimiter limiter = forToken.get(settings);
+			if(limiter == null){
+				for(String otherSettings : forToken.keySet()){
+					actor.logError("Media API limiter settings of this workflow (" + settings + ") differ from those already used with the same token (" + otherSettings + ") - its calls won't share that limiter, or the token's quota, with them.");
+				}
+				limiter = configured;
+				limiter.register(token, settings);
+				forToken.put(settings, limiter);
+			}
+			return limiter;
+		}
+	}
+
+	private VideoCloudRateLimiter(Actor actor){
+		Workflow workflow = actor.getWorkflow();
+
+		rateLimit      = parseDouble(actor, workflow, "api-rate-limit", 0.0);
+		burst          = parseDouble(actor, workflow, "api-burst", Math.max(1.0, rateLimit));
+		maxConcurrency = parseInteger(actor, workflow, "api-max-concurrency", DEFAULT_MAX_CONCURRENCY, 1);
+		minConcurrency = parseInteger(actor, workflow, "api-min-concurrency", 1, 1);
+		maxRetries     = parseInteger(actor, workflow, "api-max-retries", DEFAULT_MAX_RETRIES, 0);
+		retryDelay     = parseInteger(actor, workflow, "api-retry-delay", DEFAULT_RETRY_DELAY.intValue(), 0).longValue();
+		if(minConcurrency > maxConcurrency){
+			actor.die("api-min-concurrency (" + minConcurrency + ") can't be more than api-max-concurrency (" + maxConcurrency + ").");
+		}
+
+		String throttleCodesProp = workflow.getFirstPropertyValue("api-throttle-codes");
+		if(throttleCodesProp == null){
+			throttleCodesProp = DEFAULT_THROTTLE_CODES;
+		}
+		throttleCodes = new HashSet<Integer>();
+		for(String code : throttleCodesProp.split(",")){
+			if(code.trim().length() == 0){
+				continue;
+			}
+			try{
+				throttleCodes.add(Integer.parseInt(code.trim()));
+			}
+			catch(NumberFormatException nfe){
+				actor.die("Couldn't parse api-throttle-codes '" + throttleCodesProp + "'.  Exception caught: '" + nfe + "'.");
+			}
+		}
+
+		bucketLock = new Object();
+		tokens     = burst;
+		lastRefill = System.nanoTime();
+
+		concurrencyLimit = minConcurrency;
+		slowStart        = true;
+		inFlight         = 0;
+		lastDecrease     = 0;
+		callCount        = 0;
+		throttleCount    = 0;
+		windowStart      = System.currentTimeMillis();
+		windowCount      = 0;
+		currentRate      = 0;
+	}
+
+	/**
+	 * <p>
+	 *    Makes a call once the rate and concurrency limits allow it, making
+	 *    it again if it is throttled.
+	 * </p>
+	 *
+	 * @param actor Actor making the call (used to log throttling)
+	 * @param call Call to make
+	 * @return Result of the call
+	 * @throws BrightcoveException If the call fails, is still throttled after every retry, or the thread is interrupted while waiting
+	 */
+	public <T> T execute(Actor actor, VideoCloudCall<T> call) throws BrightcoveException {
+		Integer attempt = 0;
+		while(true){
+			try {
+				takeToken();
+				acquireSlot();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new BrightcoveException("Interrupted while waiting for the Media API rate limiter.");
+			}
+
+			Boolean throttled = false;
+			try {
+				T ret = call.call();
+				return ret;
+			}
+			catch (BrightcoveException be) {
+				throttled = isThrottled(be);
+				if((! throttled) || (attempt >= maxRetries)){
+					throw be;
+				}
+			}
+			finally {
+				releaseSlot(throttled);
+			}
+
+			final Integer retry = ++attempt;
+			final Long    delay = retryDelay << (retry - 1);
+			actor.log(new LogMessage(){
+				public String getMessage(){
+					return "Media API call throttled - concurrency limit now " + getConcurrencyLimit() + ", retry " + retry + " in " + delay + "ms.";
+				}
+			});
+			try {
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new BrightcoveException("Interrupted while waiting to retry a throttled Media API call.");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Returns true if the exception specified means the Media API
+	 *    throttled the call
+	 * </p>
+	 *
+	 * @param be Exception thrown by the call
+	 * @return True if the call was throttled
+	 */
+	public Boolean isThrottled(BrightcoveException be){
+		if(be instanceof MediaApiException){
+			Integer code = ((MediaApiException)be).getResponseCode();
+			return (code != null) && throttleCodes.contains(code);
+		}
+		if(be instanceof WrapperException){
+			WrapperException we = (WrapperException)be;
+			if((we.getCode() == WrapperExceptionCode.HTTP_ERROR_RESPONSE_CODE) && (we.getMessage() != null)){
+				return we.getMessage().contains("'429'") || we.getMessage().contains("'503'");
+			}
+		}
+		return false;
+	}
+
+	private void takeToken() throws InterruptedException {
+		if(rateLimit <= 0){
+			return;
+		}
+
+		long wait = 0;
+		synchronized(bucketLock){
+			long now = System.nanoTime();
+			tokens     = Math.min(burst, tokens + (now - lastRefill) * rateLimit / TimeUnit.SECONDS.toNanos(1));
+			lastRefill = now;
+
+			// Reserve the token now and wait for it outside the lock, so
+			// callers queue up in order
+			tokens -= 1.0;
+			if(tokens < 0){
+				wait = (long)(-tokens * TimeUnit.SECONDS.toNanos(1) / rateLimit);
+			}
+		}
+		if(wait > 0){
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private synchronized void acquireSlot() throws InterruptedException {
+		while(inFlight >= (int)concurrencyLimit){
+			wait();
+		}
+		inFlight++;
+	}
+
+	private synchronized void releaseSlot(Boolean throttled){
+		inFlight--;
+		callCount++;
+
+		long now = System.currentTimeMillis();
+		if(throttled){
+			throttleCount++;
+			slowStart = false;
+			// Calls already in flight when the limit was cut are likely to be
+			// throttled too - only the first of them cuts it
+			if(now - lastDecrease >= retryDelay){
+				concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+				lastDecrease     = now;
+			}
+		}
+		else{
+			concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + (slowStart ? 1.0 : 1.0 / concurrencyLimit));
+		}
+
+		windowCount++;
+		if(now - windowStart >= 1000){
+			currentRate = windowCount * 1000 / (now - windowStart);
+			windowStart = now;
+			windowCount = 0;
+		}
+
+		notifyAll();
+	}
+
+	// Everything read from the workflow properties, in a fixed order
+	private String getSettings(){
+		return "api-rate-limit=" + rateLimit + ", api-burst=" + burst + ", api-min-concurrency=" + minConcurrency + ", api-max-concurrency=" + maxConcurrency + ", api-max-retries=" + maxRetries + ", api-retry-delay=" + retryDelay + ", api-throttle-codes=" + new TreeSet<Integer>(throttleCodes);
+	}
+
+	private void register(String token, String settings){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName  name   = new ObjectName("com.brightcove.opensource.workflowengine:type=VideoCloudRateLimiter,token=" + Integer.toHexString(token.hashCode()) + ",settings=" + Integer.toHexString(settings.hashCode()));
+			if(! server.isRegistered(name)){
+				server.registerMBean(this, name);
+			}
+		}
+		catch (JMException jme) {
+			// Monitoring only - the limiter works without it
+		}
+	}
+
+	private static Double parseDouble(Actor actor, Workflow workflow, String name, Double defaultValue){
+		String value = workflow.getFirstPropertyValue(name);
+		Double ret   = defaultValue;
+		if(value != null){
+			try{
+				ret = Double.parseDouble(value.trim());
+			}
+			catch(NumberFormatException nfe){
+				actor.die("Couldn't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(ret < 0){
+				actor.die(name + " can't be negative (was " + ret + ").");
+			}
+		}
+		return ret;
+	}
+
+	private static Integer parseInteger(Actor actor, Workflow workflow, String name, Integer defaultValue, Integer minimum){
+		String  value = workflow.getFirstPropertyValue(name);
+		Integer ret   = defaultValue;
+		if(value != null){
+			try{
+				ret = Integer.parseInt(value.trim());
+			}
+			catch(NumberFormatException nfe){
+				actor.die("Couldn't parse " + name + " '" + value + "'.  Exception caught: '" + nfe + "'.");
+			}
+			if(ret < minimum){
+				actor.die(name + " must be at least " + minimum + " (was " + ret + ").");
+			}
+		}
+		return ret;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getCurrentRate()
+	 */
+	public synchronized Long getCurrentRate(){
+		// Report 0 once calls stop, rather than the last busy second
+		if(System.currentTimeMillis() - windowStart >= 2000){
+			return 0l;
+		}
+		return currentRate;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getRateLimit()
+	 */
+	public Double getRateLimit(){
+		return rateLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getConcurrencyLimit()
+	 */
+	public synchronized Integer getConcurrencyLimit(){
+		return (int)concurrencyLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getInFlight()
+	 */
+	public synchronized Integer getInFlight(){
+		return inFlight;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getCallCount()
+	 */
+	public synchronized Long getCallCount(){
+		return callCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiterMBean#getThrottleCount()
+	 */
+	public synchronized Long getThrottleCount(){
+		return throttleCount;
+	}
+}
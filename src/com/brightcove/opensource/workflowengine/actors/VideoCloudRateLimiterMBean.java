@@ -0,0 +1,67 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+/**
+ * <p>
+ *    JMX view of a VideoCloudRateLimiter - what it is currently letting
+ *    through to the Media API for one API token.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface VideoCloudRateLimiterMBean {
+	/**
+	 * <p>
+	 *    Returns the number of calls completed in the last full second
+	 * </p>
+	 *
+	 * @return Calls per second
+	 */
+	public Long getCurrentRate();
+
+	/**
+	 * <p>
+	 *    Returns the configured maximum calls per second (0 for no limit)
+	 * </p>
+	 *
+	 * @return Maximum calls per second
+	 */
+	public Double getRateLimit();
+
+	/**
+	 * <p>
+	 *    Returns the number of calls currently allowed in flight at once
+	 * </p>
+	 *
+	 * @return Concurrency limit
+	 */
+	public Integer getConcurrencyLimit();
+
+	/**
+	 * <p>
+	 *    Returns the number of calls in flight right now
+	 * </p>
+	 *
+	 * @return Calls in flight
+	 */
+	public Integer getInFlight();
+
+	/**
+	 * <p>
+	 *    Returns the number of calls made since the limiter was created
+	 *    (retries included)
+	 * </p>
+	 *
+	 * @return Calls made
+	 */
+	public Long getCallCount();
+
+	/**
+	 * <p>
+	 *    Returns the number of calls that were throttled by the Media API
+	 * </p>
+	 *
+	 * @return Calls throttled
+	 */
+	public Long getThrottleCount();
+}
@@ -1,18 +1,18 @@
 package com.brightcove.opensource.workflowengine.actors;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
+import javax.xml.stream.XMLStreamException;
 
-import org.apache.commons.io.FileUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
 
-import com.brightcove.commons.applications.FTPUploader;
 import com.brightcove.commons.catalog.objects.Video;
-import com.brightcove.commons.xml.XalanUtils;
 import com.brightcove.opensource.workflowengine.Actor;
 import com.brightcove.opensource.workflowengine.Workflow;
 import com.brightcove.opensource.workflowengine.record.Property;
@@ -43,13 +43,44 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *        <li>notification-email - Video Cloud will send email when re-encode for each title is underway.</li>
  *        <li>overwrite-images - If TRUE, existing images will be overwritten by transcode process.</li>
  *        <li>preserve-source-as-rendition - If TRUE, mezzanine file will appear as one of transcoded video's renditions.</li>
+ *        <li>manifest-max-titles - Number of re-encodes to gather into one
+ *            manifest before it is uploaded (1 if omitted).</li>
+ *        <li>manifest-max-bytes - Size in bytes a manifest may grow to
+ *            before it is uploaded, regardless of the number of titles (no
+ *            limit if omitted).</li>
  *    </ul>
  * </p>
  * 
+ * <p>
+ *    Re-encodes are gathered into a single publisher-upload-manifest, which
+ *    is uploaded over one FTP session once it holds manifest-max-titles
+ *    titles or reaches manifest-max-bytes, and when the actor is finalized.
+ *    The manifest is streamed into memory as titles arrive (see
+ *    PublisherManifestWriter) and uploaded straight from there, under a
+ *    unique name, so several instances of this actor (or several
+ *    workflows) don't overwrite each other's manifests on the FTP server.
+ * </p>
+ * 
+ * <p>
+ *    When the workflow takes a checkpoint, the manifest gathered so far is
+ *    uploaded straight away, however few titles it holds, so the
+ *    checkpoint only covers titles that have been sent.
+ * </p>
+ * 
+ * <p>
+ *    A manifest that can't be uploaded doesn't stop the workflow - each
+ *    record in it is reported with failRecord() and the next manifest is
+ *    started, as is a record with no reference id.
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class VideoCloudReEncodeFromExistingSourceAdapter extends Actor {
+	private static final String  FTP_HOST    = "upload.brightcove.com";
+	private static final Integer FTP_PORT    = 21;
+	private static final Integer FTP_TIMEOUT = 1000 * 60 * 60; // 1 hour
+	
 	private String   videoRefIdName  = null;
 	private String   batchUsername   = null;
 	private String   batchPassword   = null;
@@ -59,6 +90,11 @@ public class VideoCloudReEncodeFromExistingSourceAdapter extends Actor {
 	private Boolean  overwriteImages = null;
 	private Boolean  preserveSource  = null;
 	
+	private Integer                 maxTitles = 1;
+	private Long                    maxBytes  = 0l;
+	private PublisherManifestWriter manifest  = new PublisherManifestWriter();
+	private List<Record>            titles    = new ArrayList<Record>();
+	
 	/**
 	 * <p>
 	 *    Default constructor - workflow this actor is part of must be
@@ -113,6 +149,29 @@ public class VideoCloudReEncodeFromExistingSourceAdapter extends Actor {
 			else{
 				preserveSource = false;
 			}
+			
+			String maxTitlesProp = getFirstPropertyValue("manifest-max-titles");
+			if(maxTitlesProp != null){
+				try{
+					maxTitles = Integer.parseInt(maxTitlesProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse manifest-max-titles '" + maxTitlesProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+				if(maxTitles < 1){
+					die("manifest-max-titles must be at least 1 (was " + maxTitles + ").");
+				}
+			}
+			
+			String maxBytesProp = getFirstPropertyValue("manifest-max-bytes");
+			if(maxBytesProp != null){
+				try{
+					maxBytes = Long.parseLong(maxBytesProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse manifest-max-bytes '" + maxBytesProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+			}
 		}
 		
 		super.run();
@@ -129,77 +188,97 @@ public class VideoCloudReEncodeFromExistingSourceAdapter extends Actor {
 			video.setReferenceId(""+videoRefIdProp.getValue());
 		}
 		else{
-			logError("Couldn't get ReferenceId from record '" + record + "'.");
+			failRecord(record, "Couldn't get ReferenceId from record.");
 			return;
 		}
 		
 		log("Generating re-encode request for video '" + video + "'.");
 		
-		Document doc = null;
 		try {
-			doc = XalanUtils.createDocument("publisher-upload-manifest");
+			if(manifest.getEntryCount() == 0){
+				manifest.start(publisherId, preparer, notifyEmail);
+			}
+			manifest.addReEncode(video.getReferenceId(), overwriteImages, preserveSource);
+			titles.add(record);
 		}
-		catch (ParserConfigurationException pce) {
-			die("Couldn't create publisher manifest file.  Exception caught: '" + pce + "'.");
+		catch (XMLStreamException xse) {
+			die("Couldn't write publisher manifest.  Exception caught: '" + xse + "'.");
 		}
 		
-		Element root = doc.getDocumentElement();
-		root.setAttribute("publisher-id", publisherId);
-		root.setAttribute("preparer", preparer);
-		root.setAttribute("report-success", "TRUE");
-		
-		if(notifyEmail != null){
-			Element notifyElem = XalanUtils.createSimpleElement(doc, "notify", null, root);
-			notifyElem.setAttribute("email", notifyEmail);
+		if((manifest.getEntryCount() >= maxTitles) || ((maxBytes > 0) && (manifest.size() >= maxBytes))){
+			uploadPending();
 		}
-		
-		Element reEncodeElem = XalanUtils.createSimpleElement(doc, "reencode-from-existing-source", null, root);
-		reEncodeElem.setAttribute("title-refid", video.getReferenceId());
-		reEncodeElem.setAttribute("encode-to", "MP4");
-		reEncodeElem.setAttribute("encode-multiple", "TRUE");
-		
-		if(overwriteImages){
-			reEncodeElem.setAttribute("overwrite-images", "TRUE");
-		}
-		else{
-			reEncodeElem.setAttribute("overwrite-images", "FALSE");
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		uploadPending();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#finalize()
+	 */
+	public void finalize(){
+		uploadPending();
+	}
+	
+	private void uploadPending(){
+		if(manifest.getEntryCount() == 0){
+			return;
 		}
 		
-		if(preserveSource){
-			reEncodeElem.setAttribute("preserve-source-as-rendition", "TRUE");
+		log("Uploading re-encode manifest for " + manifest.getEntryCount() + " video(s).");
+		try {
+			manifest.finish();
 		}
-		else{
-			reEncodeElem.setAttribute("preserve-source-as-rendition", "FALSE");
+		catch (XMLStreamException xse) {
+			die("Couldn't write publisher manifest.  Exception caught: '" + xse + "'.");
 		}
 		
-		File batchFile = new File("VideoCloudReEncodeFromExistingSource-tmp.xml");
+		String remoteName = "VideoCloudReEncodeFromExistingSource-" + UUID.randomUUID() + ".xml";
 		try {
-			FileUtils.writeStringToFile(batchFile, XalanUtils.prettyPrintWithTrAX(doc), "UTF-8");
+			upload(remoteName, manifest.getInputStream());
 		}
 		catch (IOException ioe) {
-			die("Couldn't write batch XML file: '" + ioe + "'.");
-		}
-		catch (TransformerException te) {
-			die("Couldn't write batch XML file: '" + te + "'.");
-		}
-		catch (ParserConfigurationException pce) {
-			die("Couldn't write batch XML file: '" + pce + "'.");
+			for(Record record : titles){
+				failRecord(record, "Couldn't upload '" + remoteName + "'.  Exception caught: '" + ioe + "'.");
+			}
 		}
 		
-		Long        ftpTimeout  = 1000l * 60l * 60l; // 1 hour
-		FTPUploader ftpUploader = new FTPUploader("upload.brightcove.com", 21, batchUsername, batchPassword, false, false, false, ftpTimeout, true);
-		ftpUploader.calculateUploadMappings(batchFile.getParent(), batchFile.getName(), null, "/");
-		
-		// Bug somewhere in the timeout logic setting from the constructor...
-		ftpUploader.setTimeoutMilliseconds(ftpTimeout);
+		manifest.reset();
+		titles.clear();
+	}
+	
+	private void upload(String remoteName, InputStream manifestStream) throws IOException {
+		FTPClient ftpClient = new FTPClient();
+		ftpClient.setDefaultTimeout(FTP_TIMEOUT);
+		ftpClient.setDataTimeout(FTP_TIMEOUT);
 		
 		try {
-			ftpUploader.doUpload();
+			ftpClient.connect(FTP_HOST, FTP_PORT);
+			ftpClient.setSoTimeout(FTP_TIMEOUT);
+			if(! ftpClient.login(batchUsername, batchPassword)){
+				throw new IOException("Login refused: " + ftpClient.getReplyString().trim());
+			}
+			ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+			ftpClient.enterLocalActiveMode();
+			
+			if(! ftpClient.storeFile(remoteName, manifestStream)){
+				throw new IOException("Upload refused: " + ftpClient.getReplyString().trim());
+			}
+			ftpClient.logout();
 		}
-		catch (Exception e) {
-			die("Couldn't upload '" + batchFile.getAbsolutePath() + "'.  Exception caught: '" + e + "'.");
+		finally {
+			if(ftpClient.isConnected()){
+				try {
+					ftpClient.disconnect();
+				}
+				catch (IOException ioe) {
+					// Connection's already gone
+				}
+			}
 		}
-		
-		batchFile.delete();
 	}
 }
@@ -0,0 +1,51 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.brightcove.commons.catalog.objects.Videos;
+import com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoFieldEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoStateFilterEnum;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+
+/**
+ * <p>
+ *    The Video Cloud Media API read calls used by the Video Cloud input
+ *    adapters.
+ * </p>
+ * 
+ * <p>
+ *    MediaApiReadApi implements this with the Media API wrapper's ReadApi.
+ *    Other implementations (e.g. an in-memory catalog for testing a
+ *    workflow offline) can be swapped in with an adapter's read-api-class
+ *    property.  Such a class needs a public constructor taking the
+ *    java.util.logging.Logger to log through.  Implementations must allow
+ *    several calls at once from different threads.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface VideoCloudReadApi {
+	/**
+	 * <p>
+	 *    Returns a page of the videos modified since the date specified (see
+	 *    the Media API's find_modified_videos)
+	 * </p>
+	 * 
+	 * @param readToken Media API read token
+	 * @param fromDate Earliest modified date, in minutes since the epoch
+	 * @param filter Video states to include
+	 * @param pageSize Number of videos per page
+	 * @param pageNumber Page to return (from 0)
+	 * @param sortBy Field to sort by
+	 * @param sortOrderType Order to sort in
+	 * @param videoFields Video fields to return
+	 * @param customFields Custom fields to return
+	 * @return Page of videos (empty once past the last page)
+	 * @throws BrightcoveException If the call fails
+	 */
+	public Videos findModifiedVideos(String readToken, Long fromDate, Set<VideoStateFilterEnum> filter, Integer pageSize, Integer pageNumber, SortByTypeEnum sortBy, SortOrderTypeEnum sortOrderType, EnumSet<VideoFieldEnum> videoFields, Set<String> customFields) throws BrightcoveException;
+}
@@ -1,14 +1,19 @@
 package com.brightcove.opensource.workflowengine.actors;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 import com.brightcove.commons.catalog.objects.Video;
 import com.brightcove.commons.misc.logging.LogUtils;
 import com.brightcove.mediaapi.exceptions.BrightcoveException;
-import com.brightcove.mediaapi.wrapper.WriteApi;
 import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.LogMessage;
 import com.brightcove.opensource.workflowengine.Workflow;
 import com.brightcove.opensource.workflowengine.record.Property;
 import com.brightcove.opensource.workflowengine.record.Record;
@@ -28,17 +33,54 @@ import com.brightcove.opensource.workflowengine.record.Record;
  *        <li>video-reference-id-prop - Property name on each record that
  *            stores the video reference id to be touched.</li>
  *        <li>write-token - Write token for account.</li>
+ *        <li>concurrent-updates - Number of updates that may be in flight
+ *            at once (1 - each update made on the calling thread - if
+ *            omitted).</li>
+ *        <li>write-api-class - Class implementing VideoCloudWriteApi to
+ *            make the API calls with (MediaApiWriteApi if omitted).</li>
  *    </ul>
  * </p>
  * 
+ * <p>
+ *    With concurrent-updates set to more than 1, each update is handed to a
+ *    pool of that many threads and handleRecord() returns straight away,
+ *    unless that many updates are already in flight, in which case it waits
+ *    for one to finish.  Updates may then complete in any order.
+ *    finalize() waits for every outstanding update.  Either way, records
+ *    whose update failed are reported with failRecord() and collected (see
+ *    getFailedRecords()).  Records with no usable video id are reported
+ *    with failRecord() too, but aren't collected, as no update was tried.
+ *    When a failure reported on an updater thread stops the workflow (e.g.
+ *    by going over max-failures), no more updates are made and the failure
+ *    is thrown on the workflow's own thread from the next handleRecord(),
+ *    checkpoint or finalize().
+ * </p>
+ * 
+ * <p>
+ *    Every call is paced by the VideoCloudRateLimiter shared by all actors
+ *    using the same write token, which may hold updates back (and retries
+ *    throttled ones) even when concurrent-updates would allow more.
+ * </p>
+ * 
+ * <p>
+ *    When the workflow takes a checkpoint, the adapter waits for every
+ *    update in flight to finish, so the checkpoint only covers records
+ *    whose update has been made (or has failed).
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class VideoCloudVideoTouchAdapter extends Actor {
-	private String   videoIdName    = null;
-	private String   videoRefIdName = null;
-	private WriteApi writeApi       = null;
-	private String   writeToken     = null;
+	private String                    videoIdName       = null;
+	private String                    videoRefIdName    = null;
+	private VideoCloudWriteApi        writeApi          = null;
+	private String                    writeToken        = null;
+	private Integer                   concurrentUpdates = 1;
+	private ExecutorService           updaters          = null;
+	private Semaphore                 inFlight          = null;
+	private List<Record>              failedRecords     = Collections.synchronizedList(new ArrayList<Record>());
+	private volatile RuntimeException updateFailure     = null;
 	
 	/**
 	 * <p>
@@ -50,7 +92,6 @@ public class VideoCloudVideoTouchAdapter extends Actor {
 	 */
 	public VideoCloudVideoTouchAdapter(Workflow workflow){
 		super(workflow);
-		writeApi = new WriteApi();
 	}
 	
 	/* (non-Javadoc)
@@ -73,7 +114,32 @@ public class VideoCloudVideoTouchAdapter extends Actor {
 			List<String> apiRedactStrings = new ArrayList<String>();
 			apiRedactStrings.add(writeToken);
 			Logger apiLogger = LogUtils.getLogger("Brightcove Media API Wrapper", apiRedactStrings);
-			writeApi = new WriteApi(apiLogger);
+			
+			String writeApiClass = getFirstPropertyValue("write-api-class");
+			if(writeApiClass == null){
+				writeApi = new MediaApiWriteApi(apiLogger);
+			}
+			else{
+				writeApi = VideoCloudApis.create(this, writeApiClass, VideoCloudWriteApi.class, apiLogger);
+			}
+			writeApi = new RateLimitedWriteApi(this, writeApi);
+			
+			String concurrentUpdatesProp = getFirstPropertyValue("concurrent-updates");
+			if(concurrentUpdatesProp != null){
+				try{
+					concurrentUpdates = Integer.parseInt(concurrentUpdatesProp.trim());
+				}
+				catch(NumberFormatException nfe){
+					die("Couldn't parse concurrent-updates '" + concurrentUpdatesProp + "'.  Exception caught: '" + nfe + "'.");
+				}
+				if(concurrentUpdates < 1){
+					die("concurrent-updates must be at least 1 (was " + concurrentUpdates + ").");
+				}
+			}
+			if(concurrentUpdates > 1){
+				updaters = Executors.newFixedThreadPool(concurrentUpdates, new DaemonThreadFactory("update", getName()));
+				inFlight = new Semaphore(concurrentUpdates);
+			}
 		}
 		super.run();
 	}
@@ -91,7 +157,7 @@ public class VideoCloudVideoTouchAdapter extends Actor {
 				video.setId(Long.parseLong(""+videoIdProp.getValue()));
 			}
 			catch(Exception e){
-				logError("Couldn't parse long from string '" + videoIdProp.getValue() + "'.");
+				failRecord(record, "Couldn't parse long from string '" + videoIdProp.getValue() + "'.");
 				return;
 			}
 		}
@@ -99,17 +165,134 @@ public class VideoCloudVideoTouchAdapter extends Actor {
 			video.setReferenceId(""+videoRefIdProp.getValue());
 		}
 		else{
-			logError("Couldn't get ID or ReferenceId from record '" + record + "'.");
+			failRecord(record, "Couldn't get ID or ReferenceId from record.");
+			return;
+		}
+		
+		if(updaters == null){
+			updateVideo(record, video);
 			return;
 		}
 		
-		log("Updating video '" + video + "'.");
+		// Waits here while concurrent-updates calls are already in flight
+		inFlight.acquireUninterruptibly();
+		try {
+			throwUpdateFailure();
+			updaters.execute(new VideoUpdate(record, video));
+		}
+		catch (RuntimeException re) {
+			inFlight.release();
+			throw re;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#checkpoint(java.util.Map)
+	 */
+	public void checkpoint(Map<String, String> state){
+		awaitUpdates();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#finalize()
+	 */
+	public void finalize(){
+		if(updaters != null){
+			try {
+				awaitUpdates();
+			}
+			finally {
+				updaters.shutdown();
+			}
+		}
+		
+		if(! failedRecords.isEmpty()){
+			logError(failedRecords.size() + " video update(s) failed.");
+		}
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the records whose video couldn't be updated, in the order
+	 *    the updates failed
+	 * </p>
+	 * 
+	 * @return Records that failed
+	 */
+	public List<Record> getFailedRecords(){
+		synchronized(failedRecords){
+			return new ArrayList<Record>(failedRecords);
+		}
+	}
+	
+	private void awaitUpdates(){
+		if(updaters != null){
+			// Every permit back means every update has finished
+			inFlight.acquireUninterruptibly(concurrentUpdates);
+			inFlight.release(concurrentUpdates);
+			throwUpdateFailure();
+		}
+	}
+	
+	private void throwUpdateFailure(){
+		// The updater pool would swallow it, so it's thrown here instead, on
+		// the workflow's thread
+		RuntimeException failure = updateFailure;
+		if(failure != null){
+			throw failure;
+		}
+	}
+	
+	private void updateVideo(Record record, final Video video){
+		log(new LogMessage(){
+			public String getMessage(){
+				return "Updating video '" + video + "'.";
+			}
+		});
 		
 		try {
-			writeApi.UpdateVideo(writeToken, video);
+			writeApi.updateVideo(writeToken, video);
 		}
 		catch (BrightcoveException be) {
-			logError("Couldn't update video (" + be + "): '" + video + "'.");
+			failedRecords.add(record);
+			failRecord(record, "Couldn't update video (" + be + "): '" + video + "'.");
+		}
+		catch (RuntimeException re) {
+			failedRecords.add(record);
+			failRecord(record, "Couldn't update video (" + re + "): '" + video + "'.");
+		}
+	}
+	
+	/*
+	 * Makes a single update on an updater thread
+	 */
+	private class VideoUpdate implements Runnable {
+		private Record record;
+		private Video  video;
+		
+		VideoUpdate(Record record, Video video){
+			this.record = record;
+			this.video  = video;
+		}
+		
+		public void run(){
+			try {
+				if(updateFailure == null){
+					updateVideo(record, video);
+				}
+			}
+			catch (RuntimeException re) {
+				// Thrown by failRecord(), e.g. when the workflow has had too
+				// many failures
+				synchronized(VideoCloudVideoTouchAdapter.this){
+					if(updateFailure == null){
+						updateFailure = re;
+					}
+				}
+			}
+			finally {
+				inFlight.release();
+			}
 		}
 	}
 }
@@ -0,0 +1,37 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+
+/**
+ * <p>
+ *    The Video Cloud Media API write calls used by the Video Cloud output
+ *    adapters.
+ * </p>
+ * 
+ * <p>
+ *    MediaApiWriteApi implements this with the Media API wrapper's
+ *    WriteApi.  Other implementations (e.g. a stand-in that simulates API
+ *    latency for testing a workflow offline) can be swapped in with an
+ *    adapter's write-api-class property.  Such a class needs a public
+ *    constructor taking the java.util.logging.Logger to log through.
+ *    Implementations must allow several calls at once from different
+ *    threads.
+ * </p>
+ * 
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public interface VideoCloudWriteApi {
+	/**
+	 * <p>
+	 *    Updates a video (see the Media API's update_video)
+	 * </p>
+	 * 
+	 * @param writeToken Media API write token
+	 * @param video Video to update, identified by id or reference id
+	 * @return Video as updated
+	 * @throws BrightcoveException If the call fails
+	 */
+	public Video updateVideo(String writeToken, Video video) throws BrightcoveException;
+}
@@ -0,0 +1,97 @@
+package com.brightcove.opensource.workflowengine.actors;
+
+/**
+ * <p>
+ *    Zipf distribution over 1..n - value k is drawn with probability
+ *    proportional to 1/k^exponent - sampled by rejection-inversion
+ *    (Hormann and Derflinger, "Rejection-inversion to generate variates
+ *    from monotone discrete distributions"), so it needs no tables
+ *    however large n is.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+class ZipfDistribution {
+	private long   n;
+	private double exponent;
+	private double hIntegralX1;
+	private double hIntegralN;
+	private double s;
+
+	/**
+	 * <p>
+	 *    Creates the distribution
+	 * </p>
+	 *
+	 * @param n Number of values (at least 1)
+	 * @param exponent Skew - 0 is uniform, larger is more skewed
+	 */
+	ZipfDistribution(long n, double exponent){
+		this.n        = n;
+		this.exponent = exponent;
+
+		hIntegralX1 = hIntegral(1.5) - 1d;
+		hIntegralN  = hIntegral(n + 0.5);
+		s           = 2d - hIntegralInverse(hIntegral(2.5) - h(2));
+	}
+
+	/**
+	 * <p>
+	 *    Draws a value
+	 * </p>
+	 *
+	 * @param random Source of uniform random numbers
+	 * @return Value between 1 and n
+	 */
+	long sample(SplitMix random){
+		while(true){
+			double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+			double x = hIntegralInverse(u);
+			long   k = (long)(x + 0.5);
+			if(k < 1){
+				k = 1;
+			}
+			else if(k > n){
+				k = n;
+			}
+			if(((k - x) <= s) || (u >= (hIntegral(k + 0.5) - h(k)))){
+				return k;
+			}
+		}
+	}
+
+	private double h(double x){
+		return Math.exp(-exponent * Math.log(x));
+	}
+
+	private double hIntegral(double x){
+		double logX = Math.log(x);
+		return helper2((1d - exponent) * logX) * logX;
+	}
+
+	private double hIntegralInverse(double x){
+		double t = x * (1d - exponent);
+		if(t < -1d){
+			// Rounding can push it just past the pole
+			t = -1d;
+		}
+		return Math.exp(helper1(t) * x);
+	}
+
+	// log(1 + x) / x, accurate near 0
+	private static double helper1(double x){
+		if(Math.abs(x) > 1e-8){
+			return Math.log1p(x) / x;
+		}
+		return 1d - x * (0.5 - x * (1d / 3d - 0.25 * x));
+	}
+
+	// (exp(x) - 1) / x, accurate near 0
+	private static double helper2(double x){
+		if(Math.abs(x) > 1e-8){
+			return Math.expm1(x) / x;
+		}
+		return 1d + x * 0.5 * (1d + x / 3d * (1d + 0.25 * x));
+	}
+}
@@ -79,6 +79,18 @@ public class Property<T> {
 		this.value = value;
 	}
 	
+	/**
+	 * <p>
+	 *    Appends the same text as toString() to the buffer provided, without
+	 *    building an intermediate string
+	 * </p>
+	 * 
+	 * @param buffer Buffer to append to
+	 */
+	public void appendTo(StringBuilder buffer){
+		buffer.append("[Property name='").append(name).append("' value='").append(value).append("']");
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
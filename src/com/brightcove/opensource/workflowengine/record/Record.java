@@ -1,7 +1,11 @@
 package com.brightcove.opensource.workflowengine.record;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -9,11 +13,22 @@ import java.util.List;
  *    of name=value string pairs (represented as Property objects)
  * </p>
  * 
+ * <p>
+ *    Properties are kept in the order they were added, and are also indexed
+ *    by name, so looking properties up or removing them by name doesn't
+ *    depend on how many properties the record has.  Several properties may
+ *    share a name.  The index is keyed on the name a property had when it
+ *    was added, so renaming a property afterwards isn't reflected in
+ *    lookups.
+ * </p>
+ * 
  * @author <a href="https://github.com/three4clavin">Sander Gates</a>
  *
  */
 public class Record {
-	private List<Property<?>> properties;
+	private List<Property<?>>              properties;
+	private Map<String, List<Property<?>>> index;
+	private Map<Property<?>, Integer>      removed;
 	
 	/**
 	 * <p>
@@ -21,7 +36,10 @@ public class Record {
 	 * </p>
 	 */
 	public Record(){
-		properties = new ArrayList<Property<?>>();
+		// Allocated on first use - many records (e.g. SchemaRecord) never need them
+		properties = null;
+		index      = null;
+		removed    = null;
 	}
 	
 	/**
@@ -33,19 +51,16 @@ public class Record {
 	 * @return List of properties matching name provided
 	 */
 	public List<Property<?>> getProperty(String name){
-		List<Property<?>> ret = new ArrayList<Property<?>>();
-		
-		if(name == null){
-			return ret;
+		if((name == null) || (index == null)){
+			return new ArrayList<Property<?>>();
 		}
 		
-		for(Property<?> property : properties){
-			if(name.equals(property.getName())){
-				ret.add(property);
-			}
+		List<Property<?>> named = index.get(name);
+		if(named == null){
+			return new ArrayList<Property<?>>();
 		}
 		
-		return ret;
+		return new ArrayList<Property<?>>(named);
 	}
 	
 	/**
@@ -57,17 +72,34 @@ public class Record {
 	 * @return First property found
 	 */
 	public Property<?> getFirstProperty(String name){
-		if(name == null){
+		if((name == null) || (index == null)){
 			return null;
 		}
 		
-		for(Property<?> property : properties){
-			if(name.equals(property.getName())){
-				return property;
-			}
+		List<Property<?>> named = index.get(name);
+		if(named == null){
+			return null;
+		}
+		
+		return named.get(0);
+	}
+	
+	/**
+	 * <p>
+	 *    Returns the value of the first property with a name matching the
+	 *    provided string
+	 * </p>
+	 * 
+	 * @param name Name of property to search for
+	 * @return Value of first property found, or null if there isn't one
+	 */
+	public Object getFirstPropertyValue(String name){
+		Property<?> property = getFirstProperty(name);
+		if(property == null){
+			return null;
 		}
 		
-		return null;
+		return property.getValue();
 	}
 	
 	/**
@@ -78,7 +110,20 @@ public class Record {
 	 * @param property Property to add
 	 */
 	public void addProperty(Property<?> property){
+		if(properties == null){
+			properties = new ArrayList<Property<?>>();
+			index      = new HashMap<String, List<Property<?>>>();
+		}
+		
 		properties.add(property);
+		
+		String            name  = property.getName();
+		List<Property<?>> named = index.get(name);
+		if(named == null){
+			named = new ArrayList<Property<?>>(1);
+			index.put(name, named);
+		}
+		named.add(property);
 	}
 	
 	/**
@@ -89,13 +134,16 @@ public class Record {
 	 * @param name Name of property to remove
 	 */
 	public void removeProperty(String name){
-		if(name == null){
+		if((name == null) || (index == null)){
 			return;
 		}
 		
-		for(Property<?> current : properties){
-			if((current.getName() != null) && current.getName().equals(name)){
-				properties.remove(current);
+		// Dropped from the index now, and from the ordering the next time
+		// all properties are needed
+		List<Property<?>> named = index.remove(name);
+		if(named != null){
+			for(Property<?> property : named){
+				markRemoved(property);
 			}
 		}
 	}
@@ -108,33 +156,94 @@ public class Record {
 	 * @param property Property to remove
 	 */
 	public void removeProperty(Property<?> property){
-		if((property == null) || (property.getName() == null)){
+		if((property == null) || (property.getName() == null) || (index == null)){
 			return;
 		}
 		
-		properties.remove(property);
+		List<Property<?>> named = index.get(property.getName());
+		if((named == null) || (! named.remove(property))){
+			return;
+		}
+		if(named.isEmpty()){
+			index.remove(property.getName());
+		}
+		markRemoved(property);
 	}
 	
 	/**
 	 * <p>
-	 *    Returns a list of all properties added to this record
+	 *    Returns a list of all properties added to this record, in the order
+	 *    they were added.  The list can't be modified - use addProperty() and
+	 *    removeProperty() instead.
 	 * </p>
 	 * 
 	 * @return All properties added to this record
 	 */
 	public List<Property<?>> getAllProperties(){
-		return properties;
+		if(properties == null){
+			return Collections.emptyList();
+		}
+		
+		compact();
+		return Collections.unmodifiableList(properties);
+	}
+	
+	// Counted per instance, as the same property may have been added more
+	// than once and only some of its copies removed
+	private void markRemoved(Property<?> property){
+		if(removed == null){
+			removed = new IdentityHashMap<Property<?>, Integer>();
+		}
+		
+		Integer count = removed.get(property);
+		removed.put(property, (count == null) ? 1 : (count + 1));
+	}
+	
+	private void compact(){
+		if((removed == null) || removed.isEmpty()){
+			return;
+		}
+		
+		// The earliest copies go, so a copy added since its removal stays
+		List<Property<?>> remaining = new ArrayList<Property<?>>(properties.size());
+		for(Property<?> property : properties){
+			Integer count = removed.get(property);
+			if(count == null){
+				remaining.add(property);
+			}
+			else if(count == 1){
+				removed.remove(property);
+			}
+			else{
+				removed.put(property, count - 1);
+			}
+		}
+		properties = remaining;
+		removed.clear();
+	}
+	
+	/**
+	 * <p>
+	 *    Appends the same text as toString() to the buffer provided, so
+	 *    records can be written out without building a string for each
+	 * </p>
+	 * 
+	 * @param buffer Buffer to append to
+	 */
+	public void appendTo(StringBuilder buffer){
+		buffer.append("[Record ");
+		for(Property<?> property : getAllProperties()){
+			property.appendTo(buffer);
+		}
+		buffer.append("]");
 	}
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString(){
-		StringBuffer buffer = new StringBuffer("[Record ");
-		for(Property<?> property : properties){
-			buffer.append(""+property);
-		}
-		buffer.append("]");
+		StringBuilder buffer = new StringBuilder();
+		appendTo(buffer);
 		
 		return buffer.toString();
 	}
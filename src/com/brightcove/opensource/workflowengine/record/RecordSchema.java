@@ -0,0 +1,108 @@
+package com.brightcove.opensource.workflowengine.record;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *    An immutable, ordered list of column names shared by many SchemaRecord
+ *    objects (e.g. the header row of a CSV file).
+ * </p>
+ *
+ * <p>
+ *    Each column is identified by its position (slot).  Several columns may
+ *    share a name, in which case lookups by name return their slots in
+ *    order.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class RecordSchema {
+	private static final int[] NO_SLOTS = new int[0];
+
+	private List<String>       names;
+	private Map<String, int[]> slots;
+
+	/**
+	 * <p>
+	 *    Creates a schema with the column names provided
+	 * </p>
+	 *
+	 * @param names Column names, in slot order
+	 */
+	public RecordSchema(List<String> names){
+		this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+		this.slots = new HashMap<String, int[]>();
+
+		for(int slot=0; slot<names.size(); slot++){
+			String name     = names.get(slot);
+			int[]  existing = slots.get(name);
+			int[]  updated  = null;
+
+			if(existing == null){
+				updated = new int[] { slot };
+			}
+			else{
+				updated = new int[existing.length + 1];
+				System.arraycopy(existing, 0, updated, 0, existing.length);
+				updated[existing.length] = slot;
+			}
+			slots.put(name, updated);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of columns in this schema
+	 * </p>
+	 *
+	 * @return Number of columns
+	 */
+	public int size(){
+		return names.size();
+	}
+
+	/**
+	 * <p>
+	 *    Returns the name of the column in the slot specified
+	 * </p>
+	 *
+	 * @param slot Position of column
+	 * @return Name of column
+	 */
+	public String getName(int slot){
+		return names.get(slot);
+	}
+
+	/**
+	 * <p>
+	 *    Returns all column names, in slot order
+	 * </p>
+	 *
+	 * @return Column names
+	 */
+	public List<String> getNames(){
+		return names;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the slots of all columns with the name specified.  The array
+	 *    returned is shared and must not be modified.
+	 * </p>
+	 *
+	 * @param name Name of column
+	 * @return Slots of matching columns, in order (empty if none match)
+	 */
+	public int[] getSlots(String name){
+		int[] ret = slots.get(name);
+		if(ret == null){
+			return NO_SLOTS;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,254 @@
+package com.brightcove.opensource.workflowengine.record;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *    A compact Record whose leading properties are the columns of a shared
+ *    RecordSchema, stored as a flat array of string values.
+ * </p>
+ *
+ * <p>
+ *    Where a plain Record holds a Property object (and its own copy of the
+ *    name) for every value, a SchemaRecord only holds the values, and only
+ *    creates Property objects for the columns that are actually asked for.
+ *    This keeps the heap cost of large tabular inputs (e.g. CSV files) close
+ *    to the cost of the values themselves.
+ * </p>
+ *
+ * <p>
+ *    A SchemaRecord otherwise behaves like any other Record.  Properties
+ *    added with addProperty() are kept after the schema columns, columns can
+ *    be removed, and a row with fewer values than the schema simply lacks
+ *    the trailing columns.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class SchemaRecord extends Record {
+	private RecordSchema       schema;
+	private String[]           values;
+	private int                valueCount;
+	private Property<String>[] materialized;
+	private boolean[]          removedSlots;
+
+	/**
+	 * <p>
+	 *    Creates a record holding the values provided.  Values past the end
+	 *    of the schema are ignored.
+	 * </p>
+	 *
+	 * @param schema Schema naming the values
+	 * @param values Values, in schema slot order
+	 */
+	public SchemaRecord(RecordSchema schema, String[] values){
+		this(schema, Math.min(values.length, schema.size()));
+		this.values = values;
+	}
+
+	/**
+	 * <p>
+	 *    Constructor for subclasses that supply values through
+	 *    getSlotValue() rather than an array.
+	 * </p>
+	 *
+	 * @param schema Schema naming the values
+	 * @param valueCount Number of schema columns this record has values for
+	 */
+	protected SchemaRecord(RecordSchema schema, int valueCount){
+		super();
+
+		this.schema       = schema;
+		this.values       = null;
+		this.valueCount   = Math.min(valueCount, schema.size());
+		this.materialized = null;
+		this.removedSlots = null;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the schema naming this record's columns
+	 * </p>
+	 *
+	 * @return Schema of this record
+	 */
+	public RecordSchema getSchema(){
+		return schema;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the value of a column as originally supplied (i.e.
+	 *    regardless of any change made through its Property object).
+	 * </p>
+	 *
+	 * @param slot Position of column
+	 * @return Value of column
+	 */
+	protected String getSlotValue(int slot){
+		return values[slot];
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#getProperty(java.lang.String)
+	 */
+	public List<Property<?>> getProperty(String name){
+		List<Property<?>> ret = new ArrayList<Property<?>>();
+
+		if(name == null){
+			return ret;
+		}
+
+		for(int slot : schema.getSlots(name)){
+			if(isPresent(slot)){
+				ret.add(getSlotProperty(slot));
+			}
+		}
+		ret.addAll(super.getProperty(name));
+
+		return ret;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#getFirstProperty(java.lang.String)
+	 */
+	public Property<?> getFirstProperty(String name){
+		if(name == null){
+			return null;
+		}
+
+		for(int slot : schema.getSlots(name)){
+			if(isPresent(slot)){
+				return getSlotProperty(slot);
+			}
+		}
+
+		return super.getFirstProperty(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#getFirstPropertyValue(java.lang.String)
+	 */
+	public Object getFirstPropertyValue(String name){
+		if(name == null){
+			return null;
+		}
+
+		// Reads the value straight from the slot unless it has a Property
+		// object (whose value may have been changed)
+		for(int slot : schema.getSlots(name)){
+			if(isPresent(slot)){
+				if((materialized != null) && (materialized[slot] != null)){
+					return materialized[slot].getValue();
+				}
+				return getSlotValue(slot);
+			}
+		}
+
+		return super.getFirstPropertyValue(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#removeProperty(java.lang.String)
+	 */
+	public void removeProperty(String name){
+		if(name == null){
+			return;
+		}
+
+		for(int slot : schema.getSlots(name)){
+			removeSlot(slot);
+		}
+
+		super.removeProperty(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#removeProperty(com.brightcove.opensource.workflowengine.record.Property)
+	 */
+	public void removeProperty(Property<?> property){
+		if((property == null) || (property.getName() == null)){
+			return;
+		}
+
+		if(materialized != null){
+			for(int slot : schema.getSlots(property.getName())){
+				if(materialized[slot] == property){
+					removeSlot(slot);
+					return;
+				}
+			}
+		}
+
+		super.removeProperty(property);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#getAllProperties()
+	 */
+	public List<Property<?>> getAllProperties(){
+		List<Property<?>> extra = super.getAllProperties();
+		List<Property<?>> ret   = new ArrayList<Property<?>>(valueCount + extra.size());
+
+		for(int slot=0; slot<valueCount; slot++){
+			if(isPresent(slot)){
+				ret.add(getSlotProperty(slot));
+			}
+		}
+		ret.addAll(extra);
+
+		return Collections.unmodifiableList(ret);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.record.Record#appendTo(java.lang.StringBuilder)
+	 */
+	public void appendTo(StringBuilder buffer){
+		// Same output as Record.appendTo(), without creating Property objects
+		buffer.append("[Record ");
+		for(int slot=0; slot<valueCount; slot++){
+			if(! isPresent(slot)){
+				continue;
+			}
+
+			if((materialized != null) && (materialized[slot] != null)){
+				materialized[slot].appendTo(buffer);
+			}
+			else{
+				buffer.append("[Property name='").append(schema.getName(slot)).append("' value='").append(getSlotValue(slot)).append("']");
+			}
+		}
+		for(Property<?> property : super.getAllProperties()){
+			property.appendTo(buffer);
+		}
+		buffer.append("]");
+	}
+
+	private boolean isPresent(int slot){
+		return (slot < valueCount) && ((removedSlots == null) || (! removedSlots[slot]));
+	}
+
+	private void removeSlot(int slot){
+		if(slot >= valueCount){
+			return;
+		}
+		if(removedSlots == null){
+			removedSlots = new boolean[valueCount];
+		}
+		removedSlots[slot] = true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Property<String> getSlotProperty(int slot){
+		if(materialized == null){
+			materialized = (Property<String>[])new Property<?>[valueCount];
+		}
+		if(materialized[slot] == null){
+			materialized[slot] = new Property<String>(schema.getName(slot), getSlotValue(slot));
+		}
+		return materialized[slot];
+	}
+}
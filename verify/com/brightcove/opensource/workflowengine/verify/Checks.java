@@ -0,0 +1,44 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+/**
+ * <p>
+ *    What the verification checks (see the verify target in build.xml)
+ *    have in common - each is a main() that returns if everything it
+ *    checks holds, and throws (so exits non-zero) at the first thing that
+ *    doesn't.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class Checks {
+	private Checks(){
+	}
+
+	/**
+	 * <p>
+	 *    Fails the check unless the condition holds
+	 * </p>
+	 *
+	 * @param condition Condition that should hold
+	 * @param message What went wrong, if it doesn't
+	 * @throws IllegalStateException If the condition doesn't hold
+	 */
+	public static void check(Boolean condition, String message){
+		if(! condition){
+			throw new IllegalStateException(message);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Reports a check that passed
+	 * </p>
+	 *
+	 * @param check Class of the check
+	 * @param message What was checked
+	 */
+	public static void passed(Class<?> check, String message){
+		System.out.println(check.getSimpleName() + ": " + message + " - ok");
+	}
+}
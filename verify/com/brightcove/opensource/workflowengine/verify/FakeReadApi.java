@@ -0,0 +1,84 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.commons.catalog.objects.Videos;
+import com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoFieldEnum;
+import com.brightcove.commons.catalog.objects.enumerations.VideoStateFilterEnum;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudReadApi;
+
+/**
+ * <p>
+ *    Stand-in for the Media API read calls, for the checks - lists the
+ *    configured number of videos, most recently modified first (video 0
+ *    was modified at the configured date, each after it a minute earlier),
+ *    and fails every request for the configured page.  Settings are kept
+ *    across every instance, as for FakeWriteApi.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class FakeReadApi implements VideoCloudReadApi {
+	private static final Long ONE_MINUTE = 1000l * 60l;
+
+	private static int  videoCount = 0;
+	private static long newest     = 0;
+	private static int  failPage   = -1;
+
+	/**
+	 * <p>
+	 *    Default constructor
+	 * </p>
+	 *
+	 * @param logger Logger (unused)
+	 */
+	public FakeReadApi(Logger logger){
+	}
+
+	/**
+	 * <p>
+	 *    Sets the videos listed and the page that fails
+	 * </p>
+	 *
+	 * @param videoCount Number of videos listed
+	 * @param newest Last modified date of the newest video, in milliseconds since the epoch
+	 * @param failPage Page whose requests fail (-1 for none)
+	 */
+	public static synchronized void reset(int videoCount, long newest, int failPage){
+		FakeReadApi.videoCount = videoCount;
+		FakeReadApi.newest     = newest;
+		FakeReadApi.failPage   = failPage;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudReadApi#findModifiedVideos(java.lang.String, java.lang.Long, java.util.Set, java.lang.Integer, java.lang.Integer, com.brightcove.commons.catalog.objects.enumerations.SortByTypeEnum, com.brightcove.commons.catalog.objects.enumerations.SortOrderTypeEnum, java.util.EnumSet, java.util.Set)
+	 */
+	public Videos findModifiedVideos(String readToken, Long fromDate, Set<VideoStateFilterEnum> filter, Integer pageSize, Integer pageNumber, SortByTypeEnum sortBy, SortOrderTypeEnum sortOrderType, EnumSet<VideoFieldEnum> videoFields, Set<String> customFields) throws BrightcoveException {
+		int  count;
+		long latest;
+		synchronized(FakeReadApi.class){
+			if(pageNumber == failPage){
+				throw new BrightcoveException("Simulated failure reading page " + pageNumber + ".");
+			}
+			count  = videoCount;
+			latest = newest;
+		}
+
+		Videos videos = new Videos();
+		for(int idx=pageNumber*pageSize; idx<Math.min(count, (pageNumber+1)*pageSize); idx++){
+			Video video = new Video();
+			video.setId((long)idx);
+			video.setLastModifiedDate(new Date(latest - (idx * ONE_MINUTE)));
+			videos.add(video);
+		}
+		return videos;
+	}
+}
@@ -0,0 +1,108 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.logging.Logger;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi;
+
+/**
+ * <p>
+ *    Stand-in for the Media API write calls, for the checks - each call
+ *    takes the configured latency, and updates of videos whose id is a
+ *    multiple of the configured number fail.  Keeps count of the calls made
+ *    and the most in flight at once, across every instance, so a workflow
+ *    (which creates its own instance, see the write-api-class property) can
+ *    be checked afterwards.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class FakeWriteApi implements VideoCloudWriteApi {
+	private static long latency   = 10;
+	private static long failEvery = 0;
+	private static int  calls     = 0;
+	private static int  inFlight  = 0;
+	private static int  peak      = 0;
+
+	/**
+	 * <p>
+	 *    Default constructor
+	 * </p>
+	 *
+	 * @param logger Logger (unused)
+	 */
+	public FakeWriteApi(Logger logger){
+	}
+
+	/**
+	 * <p>
+	 *    Sets how calls behave, and clears the counts
+	 * </p>
+	 *
+	 * @param latency Milliseconds each call takes
+	 * @param failEvery Updates of ids that are multiples of this fail (0 for none)
+	 */
+	public static synchronized void reset(long latency, long failEvery){
+		FakeWriteApi.latency   = latency;
+		FakeWriteApi.failEvery = failEvery;
+		calls                  = 0;
+		inFlight               = 0;
+		peak                   = 0;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of calls made since reset()
+	 * </p>
+	 *
+	 * @return Calls made
+	 */
+	public static synchronized int getCalls(){
+		return calls;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the most calls in flight at once since reset()
+	 * </p>
+	 *
+	 * @return Peak calls in flight
+	 */
+	public static synchronized int getPeakInFlight(){
+		return peak;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi#updateVideo(java.lang.String, com.brightcove.commons.catalog.objects.Video)
+	 */
+	public Video updateVideo(String writeToken, Video video) throws BrightcoveException {
+		long sleep;
+		long fail;
+		synchronized(FakeWriteApi.class){
+			calls++;
+			inFlight++;
+			peak  = Math.max(peak, inFlight);
+			sleep = latency;
+			fail  = failEvery;
+		}
+
+		try{
+			Thread.sleep(sleep);
+		}
+		catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			synchronized(FakeWriteApi.class){
+				inFlight--;
+			}
+		}
+
+		if((fail > 0) && (video.getId() != null) && ((video.getId() % fail) == 0)){
+			throw new BrightcoveException("Simulated failure updating video " + video.getId() + ".");
+		}
+		return video;
+	}
+}
@@ -0,0 +1,95 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.actors.LoadGeneratorInputAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Checks the ordering and shutdown the execution modes promise, in each
+ *    mode, on a workflow of two generators feeding one sink - one directly
+ *    and one through a batching pass-through actor:<ul>
+ *        <li>Records from any one provider reach a consumer in the order
+ *            they were passed on.</li>
+ *        <li>Every record has been handled (and held back batches passed
+ *            on) before any actor is finalized.</li>
+ *        <li>Consumers are finalized before their providers.</li>
+ *    </ul>
+ *    The pipelined run uses a small queue-size, so providers are held up by
+ *    full queues all the way through.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class PipelineCheck {
+	private static final Integer RECORD_COUNT = 20000;
+
+	/**
+	 * <p>
+	 *    Command line execution
+	 * </p>
+	 *
+	 * @param args Command line arguments (none)
+	 */
+	public static void main(String[] args){
+		check(Workflow.EXECUTION_MODE_SEQUENTIAL);
+		check(Workflow.EXECUTION_MODE_PIPELINED);
+	}
+
+	private static void check(String executionMode){
+		Workflow workflow = new Workflow();
+		workflow.setExitOnDie(false);
+		workflow.addProperty(new Property<String>("execution-mode", executionMode));
+		workflow.addProperty(new Property<String>("queue-size", "4"));
+
+		List<String>   events = new ArrayList<String>();
+		Actor          first  = generator(workflow, "first");
+		Actor          second = generator(workflow, "second");
+		RecordingActor middle = new RecordingActor(workflow, events, "first");
+		RecordingActor sink   = new RecordingActor(workflow, events, "first", "second");
+		middle.setName("middle");
+		middle.addProperty(new Property<String>("batch-size", "7"));
+		sink.setName("sink");
+
+		connect(first, middle);
+		connect(middle, sink);
+		connect(second, sink);
+		workflow.addActor(first);
+		workflow.addActor(second);
+		workflow.addActor(middle);
+		workflow.addActor(sink);
+
+		workflow.run();
+
+		Checks.check(middle.getOutOfOrder() == 0, executionMode + ": " + middle.getOutOfOrder() + " record(s) reached middle out of order.");
+		Checks.check(sink.getOutOfOrder() == 0, executionMode + ": " + sink.getOutOfOrder() + " record(s) reached sink out of order.");
+		Checks.passed(PipelineCheck.class, executionMode + ": records from each provider arrive in order");
+
+		List<String> expected = Arrays.asList(
+			"sink finalized after " + (2 * RECORD_COUNT),
+			"middle finalized after " + RECORD_COUNT
+		);
+		Checks.check(expected.equals(events), executionMode + ": expected " + expected + ", was " + events + ".");
+		Checks.passed(PipelineCheck.class, executionMode + ": every record handled before finalize, consumers finalized first");
+	}
+
+	private static Actor generator(Workflow workflow, String name){
+		Actor generator = new LoadGeneratorInputAdapter(workflow);
+		generator.setName(name);
+		generator.addProperty(new Property<String>("record-count", "" + RECORD_COUNT));
+		generator.addProperty(new Property<String>("id-field", name));
+		generator.addProperty(new Property<String>("field-count", "1"));
+		return generator;
+	}
+
+	private static void connect(Actor provider, Actor consumer){
+		provider.addConsumer(consumer);
+		consumer.addProvider(provider);
+	}
+}
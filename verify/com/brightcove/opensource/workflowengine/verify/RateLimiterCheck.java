@@ -0,0 +1,85 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.actors.LoadGeneratorInputAdapter;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudRateLimiter;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudVideoTouchAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Checks VideoCloudRateLimiter against ThrottlingWriteApi:<ul>
+ *        <li>With far more updates allowed in flight than the API takes,
+ *            throttled calls are retried until every update succeeds.</li>
+ *        <li>The concurrency limit comes down to what the API takes, so
+ *            only a fraction of calls are throttled.</li>
+ *        <li>Workflows with the same limiter settings share one limiter for
+ *            a token, and a workflow with other settings gets its own.</li>
+ *    </ul>
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class RateLimiterCheck {
+	private static final String  TOKEN              = "verify-rate-limiter-token";
+	private static final Integer RECORD_COUNT       = 500;
+	private static final Long    LATENCY            = 10l;
+	private static final Integer CAPACITY           = 8;
+	private static final Integer CONCURRENT_UPDATES = 32;
+	private static final Integer MAX_RETRIES        = 20;
+
+	/**
+	 * <p>
+	 *    Command line execution
+	 * </p>
+	 *
+	 * @param args Command line arguments (none)
+	 */
+	public static void main(String[] args){
+		ThrottlingWriteApi.reset(LATENCY, CAPACITY);
+
+		Workflow workflow = limitedWorkflow(MAX_RETRIES);
+		Actor    input    = new LoadGeneratorInputAdapter(workflow);
+		input.setName("input");
+		input.addProperty(new Property<String>("record-count", "" + RECORD_COUNT));
+		input.addProperty(new Property<String>("field-count", "1"));
+
+		VideoCloudVideoTouchAdapter touch = new VideoCloudVideoTouchAdapter(workflow);
+		touch.setName("touch");
+		touch.addProperty(new Property<String>("video-id-prop", "id"));
+		touch.addProperty(new Property<String>("write-token", TOKEN));
+		touch.addProperty(new Property<String>("write-api-class", ThrottlingWriteApi.class.getName()));
+		touch.addProperty(new Property<String>("concurrent-updates", "" + CONCURRENT_UPDATES));
+
+		input.addConsumer(touch);
+		touch.addProvider(input);
+		workflow.addActor(input);
+		workflow.addActor(touch);
+		workflow.run();
+
+		Checks.check(touch.getFailedRecords().isEmpty(), touch.getFailedRecords().size() + " update(s) failed.");
+		Checks.check(ThrottlingWriteApi.getSucceeded() == RECORD_COUNT, ThrottlingWriteApi.getSucceeded() + " of " + RECORD_COUNT + " updates succeeded.");
+		Checks.check(ThrottlingWriteApi.getThrottled() > 0, "No calls were throttled, so the limiter wasn't exercised.");
+		Checks.passed(RateLimiterCheck.class, "every update succeeded, " + ThrottlingWriteApi.getThrottled() + " throttled call(s) retried");
+
+		VideoCloudRateLimiter limiter = VideoCloudRateLimiter.forToken(new Actor(limitedWorkflow(MAX_RETRIES)), TOKEN);
+		Checks.check(limiter.getThrottleCount() == ThrottlingWriteApi.getThrottled(), "Limiter counted " + limiter.getThrottleCount() + " throttled call(s), the API " + ThrottlingWriteApi.getThrottled() + ".");
+		Checks.check(limiter.getConcurrencyLimit() <= 2 * CAPACITY, "Concurrency limit is " + limiter.getConcurrencyLimit() + ", for an API taking " + CAPACITY + " calls at once.");
+		Checks.check(ThrottlingWriteApi.getThrottled() * 2 < RECORD_COUNT, ThrottlingWriteApi.getThrottled() + " calls were throttled for " + RECORD_COUNT + " updates.");
+		Checks.passed(RateLimiterCheck.class, "concurrency limit came down to " + limiter.getConcurrencyLimit() + " for an API taking " + CAPACITY);
+
+		Checks.check(limiter == VideoCloudRateLimiter.forToken(new Actor(limitedWorkflow(MAX_RETRIES)), TOKEN), "Workflows with the same settings got different limiters.");
+		Checks.check(limiter != VideoCloudRateLimiter.forToken(new Actor(limitedWorkflow(MAX_RETRIES + 1)), TOKEN), "Workflows with different settings got the same limiter.");
+		Checks.passed(RateLimiterCheck.class, "limiters shared by token only while settings match");
+	}
+
+	private static Workflow limitedWorkflow(Integer maxRetries){
+		Workflow workflow = new Workflow();
+		workflow.setExitOnDie(false);
+		workflow.addProperty(new Property<String>("api-retry-delay", "10"));
+		workflow.addProperty(new Property<String>("api-max-retries", "" + maxRetries));
+		return workflow;
+	}
+}
@@ -0,0 +1,99 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Pass-through actor for the pipeline checks.  Counts the records it is
+ *    handed, notes any that arrive out of sequence (for each of the
+ *    sequence properties named, which must go up by one from record to
+ *    record), and adds "&lt;name&gt; finalized after &lt;count&gt;" to a
+ *    list shared with the other actors of the workflow when it's
+ *    finalized.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class RecordingActor extends Actor {
+	private List<String>      events;
+	private String[]          sequenceNames;
+	private Map<String, Long> lastSequence;
+	private long              count;
+	private long              outOfOrder;
+
+	/**
+	 * <p>
+	 *    Default constructor
+	 * </p>
+	 *
+	 * @param workflow Workflow this actor is part of
+	 * @param events List finalize() adds to (shared by every actor in the workflow)
+	 * @param sequenceNames Properties whose values must go up by one
+	 */
+	public RecordingActor(Workflow workflow, List<String> events, String... sequenceNames){
+		super(workflow);
+		this.events        = events;
+		this.sequenceNames = sequenceNames;
+		this.lastSequence  = new HashMap<String, Long>();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#handleRecord(com.brightcove.opensource.workflowengine.record.Record)
+	 */
+	public void handleRecord(Record record){
+		count++;
+		for(String sequenceName : sequenceNames){
+			Property<?> property = record.getFirstProperty(sequenceName);
+			if((property == null) || (property.getValue() == null)){
+				continue;
+			}
+
+			Long sequence = Long.parseLong("" + property.getValue());
+			Long last     = lastSequence.get(sequenceName);
+			if(((last == null) && (sequence != 0)) || ((last != null) && (sequence != (last + 1)))){
+				outOfOrder++;
+			}
+			lastSequence.put(sequenceName, sequence);
+		}
+		super.handleRecord(record);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.Actor#finalize()
+	 */
+	public void finalize(){
+		synchronized(events){
+			events.add(getName() + " finalized after " + count);
+		}
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of records handled
+	 * </p>
+	 *
+	 * @return Records handled
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of records that arrived out of sequence
+	 * </p>
+	 *
+	 * @return Records out of sequence
+	 */
+	public long getOutOfOrder(){
+		return outOfOrder;
+	}
+}
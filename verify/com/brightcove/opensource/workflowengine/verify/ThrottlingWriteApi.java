@@ -0,0 +1,128 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.brightcove.commons.catalog.objects.Video;
+import com.brightcove.mediaapi.exceptions.BrightcoveException;
+import com.brightcove.mediaapi.exceptions.MediaApiException;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi;
+
+/**
+ * <p>
+ *    Stand-in for the Media API write calls that throttles like the real
+ *    thing, for the checks - a call made while the configured number of
+ *    calls are already in flight fails at once with Media API error 213
+ *    (ConcurrentWritesExceededError), and any other call takes the
+ *    configured latency and succeeds.  Counts are kept across every
+ *    instance, as for FakeWriteApi.
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class ThrottlingWriteApi implements VideoCloudWriteApi {
+	public static final Integer THROTTLE_CODE = 213;
+
+	private static long latency   = 10;
+	private static int  capacity  = 8;
+	private static int  succeeded = 0;
+	private static int  throttled = 0;
+	private static int  inFlight  = 0;
+
+	/**
+	 * <p>
+	 *    Default constructor
+	 * </p>
+	 *
+	 * @param logger Logger (unused)
+	 */
+	public ThrottlingWriteApi(Logger logger){
+	}
+
+	/**
+	 * <p>
+	 *    Sets how calls behave, and clears the counts
+	 * </p>
+	 *
+	 * @param latency Milliseconds each successful call takes
+	 * @param capacity Calls that may be in flight before more are throttled
+	 */
+	public static synchronized void reset(long latency, int capacity){
+		ThrottlingWriteApi.latency  = latency;
+		ThrottlingWriteApi.capacity = capacity;
+		succeeded                   = 0;
+		throttled                   = 0;
+		inFlight                    = 0;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of calls that succeeded since reset()
+	 * </p>
+	 *
+	 * @return Calls that succeeded
+	 */
+	public static synchronized int getSucceeded(){
+		return succeeded;
+	}
+
+	/**
+	 * <p>
+	 *    Returns the number of calls throttled since reset()
+	 * </p>
+	 *
+	 * @return Calls throttled
+	 */
+	public static synchronized int getThrottled(){
+		return throttled;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brightcove.opensource.workflowengine.actors.VideoCloudWriteApi#updateVideo(java.lang.String, com.brightcove.commons.catalog.objects.Video)
+	 */
+	public Video updateVideo(String writeToken, Video video) throws BrightcoveException {
+		long sleep;
+		synchronized(ThrottlingWriteApi.class){
+			if(inFlight >= capacity){
+				throttled++;
+				throw throttledException();
+			}
+			inFlight++;
+			sleep = latency;
+		}
+
+		try{
+			Thread.sleep(sleep);
+		}
+		catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			synchronized(ThrottlingWriteApi.class){
+				inFlight--;
+				succeeded++;
+			}
+		}
+		return video;
+	}
+
+	private static MediaApiException throttledException() throws BrightcoveException {
+		try{
+			JSONObject error = new JSONObject();
+			error.put("code", THROTTLE_CODE);
+			error.put("name", "ConcurrentWritesExceededError");
+			error.put("message", "Too many concurrent writes.");
+
+			JSONObject response = new JSONObject();
+			response.put("result", JSONObject.NULL);
+			response.put("error", error);
+			return new MediaApiException(response);
+		}
+		catch(JSONException je){
+			throw new IllegalStateException("Couldn't build throttle response.", je);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.WorkflowException;
+import com.brightcove.opensource.workflowengine.actors.LoadGeneratorInputAdapter;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudVideoTouchAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+import com.brightcove.opensource.workflowengine.record.Record;
+
+/**
+ * <p>
+ *    Checks VideoCloudVideoTouchAdapter's concurrent-updates against
+ *    FakeWriteApi:<ul>
+ *        <li>Updates made concurrently finish several times sooner than
+ *            one at a time.</li>
+ *        <li>No more than concurrent-updates calls are ever in flight.</li>
+ *        <li>Either way, every update is made and exactly the records whose
+ *            update failed are collected.</li>
+ *        <li>Going over max-failures on an updater thread stops the
+ *            workflow.</li>
+ *    </ul>
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class TouchCheck {
+	private static final Integer RECORD_COUNT       = 200;
+	private static final Long    LATENCY            = 10l;
+	private static final Long    FAIL_EVERY         = 97l;
+	private static final Integer CONCURRENT_UPDATES = 16;
+	private static final Long    MIN_SPEEDUP        = 4l;
+
+	/**
+	 * <p>
+	 *    Command line execution
+	 * </p>
+	 *
+	 * @param args Command line arguments (none)
+	 */
+	public static void main(String[] args){
+		Set<String> expectedFailures = new HashSet<String>();
+		for(long id=0; id<RECORD_COUNT; id+=FAIL_EVERY){
+			expectedFailures.add("" + id);
+		}
+
+		long serial     = touch(1, expectedFailures);
+		long concurrent = touch(CONCURRENT_UPDATES, expectedFailures);
+		Checks.check(concurrent * MIN_SPEEDUP <= serial, "Concurrent updates took " + concurrent + " ms, one at a time took " + serial + " ms.");
+		Checks.passed(TouchCheck.class, CONCURRENT_UPDATES + " concurrent updates took " + concurrent + " ms, one at a time " + serial + " ms");
+
+		FakeWriteApi.reset(LATENCY, FAIL_EVERY);
+		Workflow                    workflow = new Workflow();
+		VideoCloudVideoTouchAdapter touch    = buildWorkflow(workflow, CONCURRENT_UPDATES);
+		workflow.addProperty(new Property<String>("max-failures", "1"));
+		try{
+			workflow.run();
+			Checks.check(false, "Workflow carried on past max-failures.");
+		}
+		catch(WorkflowException we){
+			// Expected
+		}
+		Checks.check(FakeWriteApi.getCalls() < RECORD_COUNT, "Workflow made all " + FakeWriteApi.getCalls() + " updates after going over max-failures.");
+		Checks.check(touch.getFailedRecords().size() > 1, "Workflow stopped with " + touch.getFailedRecords().size() + " failure(s).");
+		Checks.passed(TouchCheck.class, "going over max-failures on an updater thread stopped the workflow after " + FakeWriteApi.getCalls() + " update(s)");
+	}
+
+	private static long touch(Integer concurrentUpdates, Set<String> expectedFailures){
+		FakeWriteApi.reset(LATENCY, FAIL_EVERY);
+		Workflow                    workflow = new Workflow();
+		VideoCloudVideoTouchAdapter touch    = buildWorkflow(workflow, concurrentUpdates);
+
+		long start = System.currentTimeMillis();
+		workflow.run();
+		long took = System.currentTimeMillis() - start;
+
+		Checks.check(FakeWriteApi.getCalls() == RECORD_COUNT, "concurrent-updates " + concurrentUpdates + ": made " + FakeWriteApi.getCalls() + " of " + RECORD_COUNT + " updates.");
+		Checks.check(FakeWriteApi.getPeakInFlight() <= concurrentUpdates, "concurrent-updates " + concurrentUpdates + ": " + FakeWriteApi.getPeakInFlight() + " updates were in flight at once.");
+
+		Set<String> failures = new HashSet<String>();
+		for(Record record : touch.getFailedRecords()){
+			failures.add("" + record.getFirstProperty("id").getValue());
+		}
+		Checks.check(expectedFailures.equals(failures), "concurrent-updates " + concurrentUpdates + ": expected failed ids " + expectedFailures + ", collected " + failures + ".");
+		Checks.passed(TouchCheck.class, "concurrent-updates " + concurrentUpdates + ": every update made, at most " + FakeWriteApi.getPeakInFlight() + " in flight, failures collected");
+		return took;
+	}
+
+	private static VideoCloudVideoTouchAdapter buildWorkflow(Workflow workflow, Integer concurrentUpdates){
+		workflow.setExitOnDie(false);
+
+		Actor input = new LoadGeneratorInputAdapter(workflow);
+		input.setName("input");
+		input.addProperty(new Property<String>("record-count", "" + RECORD_COUNT));
+		input.addProperty(new Property<String>("field-count", "1"));
+
+		VideoCloudVideoTouchAdapter touch = new VideoCloudVideoTouchAdapter(workflow);
+		touch.setName("touch");
+		touch.addProperty(new Property<String>("video-id-prop", "id"));
+		touch.addProperty(new Property<String>("write-token", "verify-write-token"));
+		touch.addProperty(new Property<String>("write-api-class", FakeWriteApi.class.getName()));
+		touch.addProperty(new Property<String>("concurrent-updates", "" + concurrentUpdates));
+
+		input.addConsumer(touch);
+		touch.addProvider(input);
+		workflow.addActor(input);
+		workflow.addActor(touch);
+		return touch;
+	}
+}
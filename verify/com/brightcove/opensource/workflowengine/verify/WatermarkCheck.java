@@ -0,0 +1,100 @@
+package com.brightcove.opensource.workflowengine.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import com.brightcove.opensource.workflowengine.Actor;
+import com.brightcove.opensource.workflowengine.Workflow;
+import com.brightcove.opensource.workflowengine.WorkflowException;
+import com.brightcove.opensource.workflowengine.actors.VideoCloudFindModifiedInputAdapter;
+import com.brightcove.opensource.workflowengine.record.Property;
+
+/**
+ * <p>
+ *    Checks VideoCloudFindModifiedInputAdapter's watermark-file against
+ *    FakeReadApi:<ul>
+ *        <li>A workflow that dies part way through the listing (and
+ *            doesn't exit, see Workflow.setExitOnDie()) leaves the
+ *            watermark file as it was, with or without prefetch-pages.</li>
+ *        <li>A workflow that completes saves the newest modified date
+ *            read.</li>
+ *    </ul>
+ * </p>
+ *
+ * @author <a href="https://github.com/three4clavin">Sander Gates</a>
+ *
+ */
+public class WatermarkCheck {
+	private static final Integer VIDEO_COUNT = 250;
+	private static final Integer PAGE_SIZE   = 50;
+	private static final Integer FAIL_PAGE   = 2;
+	private static final Long    SAVED       = 1300000000000l;
+	private static final Long    NEWEST      = SAVED + (1000l * 60l * 60l * 24l);
+
+	/**
+	 * <p>
+	 *    Command line execution
+	 * </p>
+	 *
+	 * @param args Command line arguments (none)
+	 * @throws IOException If the watermark file can't be written or read
+	 */
+	public static void main(String[] args) throws IOException {
+		File watermarkFile = File.createTempFile("WatermarkCheck-", ".properties");
+		try{
+			String saved = "last-modified=" + SAVED + "\n";
+			FileUtils.writeStringToFile(watermarkFile, saved, "UTF-8");
+
+			FakeReadApi.reset(VIDEO_COUNT, NEWEST, FAIL_PAGE);
+			for(Integer prefetchPages : new Integer[]{ 0, 3 }){
+				List<String> events = new ArrayList<String>();
+				try{
+					buildWorkflow(watermarkFile, prefetchPages, events).run();
+					Checks.check(false, "prefetch-pages " + prefetchPages + ": workflow carried on past a failed page.");
+				}
+				catch(WorkflowException we){
+					// Expected
+				}
+				Checks.check(events.contains("sink finalized after " + (FAIL_PAGE * PAGE_SIZE)), "prefetch-pages " + prefetchPages + ": expected the sink to clean up after " + (FAIL_PAGE * PAGE_SIZE) + " videos, got " + events + ".");
+				String after = FileUtils.readFileToString(watermarkFile, "UTF-8");
+				Checks.check(saved.equals(after), "prefetch-pages " + prefetchPages + ": failed run changed the watermark file to '" + after + "'.");
+				Checks.passed(WatermarkCheck.class, "prefetch-pages " + prefetchPages + ": failed run on page " + FAIL_PAGE + " left the watermark file as it was");
+			}
+
+			FakeReadApi.reset(VIDEO_COUNT, NEWEST, -1);
+			buildWorkflow(watermarkFile, 0, new ArrayList<String>()).run();
+			String after = FileUtils.readFileToString(watermarkFile, "UTF-8");
+			Checks.check(after.contains("last-modified=" + NEWEST), "Completed run saved watermark file '" + after + "', expected last-modified=" + NEWEST + ".");
+			Checks.passed(WatermarkCheck.class, "completed run saved the newest modified date read");
+		}
+		finally{
+			watermarkFile.delete();
+		}
+	}
+
+	private static Workflow buildWorkflow(File watermarkFile, Integer prefetchPages, List<String> events){
+		Workflow workflow = new Workflow();
+		workflow.setExitOnDie(false);
+
+		Actor input = new VideoCloudFindModifiedInputAdapter(workflow);
+		input.setName("input");
+		input.addProperty(new Property<String>("read-api-token", "verify-read-token"));
+		input.addProperty(new Property<String>("read-api-class", FakeReadApi.class.getName()));
+		input.addProperty(new Property<String>("watermark-file", watermarkFile.getPath()));
+		input.addProperty(new Property<String>("page-size", "" + PAGE_SIZE));
+		input.addProperty(new Property<String>("prefetch-pages", "" + prefetchPages));
+
+		Actor sink = new RecordingActor(workflow, events);
+		sink.setName("sink");
+
+		input.addConsumer(sink);
+		sink.addProvider(input);
+		workflow.addActor(input);
+		workflow.addActor(sink);
+		return workflow;
+	}
+}